@@ -0,0 +1,57 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openxdr.XdrBuffer;
+import org.openxdr.XdrInt;
+
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AllocateBenchmark {
+
+    @Param( { "256", "8192", "65536" })
+    public int length;
+
+    @Benchmark
+    public final int allocateDirect() {
+        final ByteBuffer buf = XdrBuffer.allocateDirect(length);
+        XdrInt.encode(buf, length);
+        return buf.position();
+    }
+
+    @Benchmark
+    public final int acquireDirect() {
+        final ByteBuffer buf = XdrBuffer.acquireDirect(length);
+        XdrInt.encode(buf, length);
+        final int pos = buf.position();
+        XdrBuffer.release(buf);
+        return pos;
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openxdr.Array;
+import org.openxdr.Codec;
+import org.openxdr.XdrArray;
+import org.openxdr.XdrInt;
+import org.openxdr.XdrIntArray;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArrayBenchmark extends BufferState {
+
+    @Param( { "16", "1024", "65536" })
+    public int length;
+
+    private Codec<Array<Integer>> fixedCodec;
+    private Codec<Array<Integer>> varCodec;
+    private Array<Integer> val;
+    private List<Integer> list;
+    private int[] ints;
+    private ByteBuffer fixed;
+    private ByteBuffer var;
+
+    @Setup
+    public final void setup() throws CharacterCodingException {
+        fixedCodec = XdrArray.newCodec(XdrInt.CODEC, length);
+        varCodec = XdrArray.newVarCodec(XdrInt.CODEC);
+        final Integer[] boxed = new Integer[length];
+        ints = new int[length];
+        for (int i = 0; i < length; ++i) {
+            boxed[i] = i;
+            ints[i] = i;
+        }
+        val = new Array<Integer>(boxed);
+        list = Arrays.asList(boxed);
+        fixed = allocate(fixedCodec.size(val));
+        fixedCodec.encode(fixed, val);
+        var = allocate(varCodec.size(val));
+        varCodec.encode(var, val);
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeFixed() throws CharacterCodingException {
+        fixed.clear();
+        fixedCodec.encode(fixed, val);
+        return fixed;
+    }
+
+    @Benchmark
+    public final Array<Integer> decodeFixed() throws CharacterCodingException {
+        fixed.clear();
+        return fixedCodec.decode(fixed);
+    }
+
+    @Benchmark
+    public final int sizeFixed() {
+        return fixedCodec.size(val);
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeVar() throws CharacterCodingException {
+        var.clear();
+        varCodec.encode(var, val);
+        return var;
+    }
+
+    // The copy and sizing pass that a List needed before encodeVar took an
+    // Iterable.
+    @Benchmark
+    public final ByteBuffer encodeListCopy() throws CharacterCodingException {
+        var.clear();
+        final Array<Integer> copy = new Array<Integer>(list
+                .toArray(new Integer[list.size()]));
+        varCodec.size(copy);
+        varCodec.encode(var, copy);
+        return var;
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeList() throws CharacterCodingException {
+        var.clear();
+        XdrArray.encodeVar(var, list, XdrInt.CODEC);
+        return var;
+    }
+
+    @Benchmark
+    public final Array<Integer> decodeVar() throws CharacterCodingException {
+        var.clear();
+        return varCodec.decode(var);
+    }
+
+    @Benchmark
+    public final int sizeVar() {
+        return varCodec.size(val);
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeIntArray() {
+        fixed.clear();
+        XdrIntArray.encode(fixed, ints);
+        return fixed;
+    }
+
+    @Benchmark
+    public final int[] decodeIntArray() {
+        fixed.clear();
+        XdrIntArray.decode(fixed, ints);
+        return ints;
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeIntArrayVar() {
+        var.clear();
+        XdrIntArray.encodeVar(var, ints);
+        return var;
+    }
+
+    @Benchmark
+    public final int[] decodeIntArrayVar() {
+        var.clear();
+        return XdrIntArray.decodeVar(var);
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.benchmark;
+
+import java.nio.ByteBuffer;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openxdr.XdrBuffer;
+
+@State(Scope.Thread)
+public abstract class BufferState {
+
+    @Param( { "heap", "direct" })
+    public String buffer;
+
+    protected final ByteBuffer allocate(int capacity) {
+        if ("heap".equals(buffer))
+            return XdrBuffer.allocate(capacity);
+        if ("direct".equals(buffer))
+            return XdrBuffer.allocateDirect(capacity);
+        throw new IllegalArgumentException(buffer);
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openxdr.XdrBool;
+import org.openxdr.XdrDecoder;
+import org.openxdr.XdrDouble;
+import org.openxdr.XdrEncoder;
+import org.openxdr.XdrHyper;
+import org.openxdr.XdrInt;
+
+// A small fixed-size struct, encoded field by field with the static encoders
+// and as one aggregate with XdrEncoder and XdrDecoder.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncoderBenchmark extends BufferState {
+
+    private static final int SIZE = 4 + 8 + 4 + 4 + 8 + 4;
+
+    private int id = 42;
+    private long cookie = 0x0102030405060708L;
+    private int mode = 0644;
+    private boolean active = true;
+    private double weight = 1.5;
+    private int flags = 7;
+    private ByteBuffer buf;
+
+    @Setup
+    public final void setup() {
+        buf = allocate(SIZE);
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeFields() {
+        buf.clear();
+        XdrInt.encode(buf, id);
+        XdrHyper.encode(buf, cookie);
+        XdrInt.encode(buf, mode);
+        XdrBool.encode(buf, active);
+        XdrDouble.encode(buf, weight);
+        XdrInt.encode(buf, flags);
+        return buf;
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeAggregate() {
+        buf.clear();
+        int i = XdrEncoder.begin(buf, SIZE);
+        i = XdrEncoder.putInt(buf, i, id);
+        i = XdrEncoder.putHyper(buf, i, cookie);
+        i = XdrEncoder.putInt(buf, i, mode);
+        i = XdrEncoder.putBool(buf, i, active);
+        i = XdrEncoder.putDouble(buf, i, weight);
+        XdrEncoder.end(buf, XdrEncoder.putInt(buf, i, flags));
+        return buf;
+    }
+
+    @Benchmark
+    public final long decodeFields() {
+        buf.clear();
+        long n = XdrInt.decode(buf);
+        n += XdrHyper.decode(buf);
+        n += XdrInt.decode(buf);
+        n += XdrBool.decode(buf) ? 1 : 0;
+        n += (long) XdrDouble.decode(buf);
+        n += XdrInt.decode(buf);
+        return n;
+    }
+
+    @Benchmark
+    public final long decodeAggregate() {
+        buf.clear();
+        final int i = XdrDecoder.begin(buf, SIZE);
+        long n = XdrDecoder.getInt(buf, i);
+        n += XdrDecoder.getHyper(buf, i + 4);
+        n += XdrDecoder.getInt(buf, i + 12);
+        n += XdrDecoder.getBool(buf, i + 16) ? 1 : 0;
+        n += (long) XdrDecoder.getDouble(buf, i + 20);
+        n += XdrDecoder.getInt(buf, i + 28);
+        XdrDecoder.end(buf, i + SIZE);
+        return n;
+    }
+}
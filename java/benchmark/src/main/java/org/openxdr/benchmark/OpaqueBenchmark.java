@@ -0,0 +1,106 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openxdr.Codec;
+import org.openxdr.Opaque;
+import org.openxdr.XdrOpaque;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpaqueBenchmark extends BufferState {
+
+    @Param( { "16", "4096", "1048576" })
+    public int length;
+
+    private Codec<Opaque> fixedCodec;
+    private Opaque val;
+    private ByteBuffer fixed;
+    private ByteBuffer var;
+
+    @Setup
+    public final void setup() throws CharacterCodingException {
+        fixedCodec = XdrOpaque.newCodec(length);
+        val = new Opaque(length);
+        for (int i = 0; i < length; ++i)
+            val.getBuffer()[i] = (byte) i;
+        fixed = allocate(fixedCodec.size(val));
+        fixedCodec.encode(fixed, val);
+        var = allocate(XdrOpaque.VAR_CODEC.size(val));
+        XdrOpaque.VAR_CODEC.encode(var, val);
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeFixed() throws CharacterCodingException {
+        fixed.clear();
+        fixedCodec.encode(fixed, val);
+        return fixed;
+    }
+
+    @Benchmark
+    public final Opaque decodeFixed() throws CharacterCodingException {
+        fixed.clear();
+        return fixedCodec.decode(fixed);
+    }
+
+    @Benchmark
+    public final ByteBuffer decodeFixedSlice() {
+        fixed.clear();
+        return XdrOpaque.decode(fixed, length);
+    }
+
+    @Benchmark
+    public final int sizeFixed() {
+        return fixedCodec.size(val);
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeVar() throws CharacterCodingException {
+        var.clear();
+        XdrOpaque.VAR_CODEC.encode(var, val);
+        return var;
+    }
+
+    @Benchmark
+    public final Opaque decodeVar() throws CharacterCodingException {
+        var.clear();
+        return XdrOpaque.VAR_CODEC.decode(var);
+    }
+
+    @Benchmark
+    public final ByteBuffer decodeVarSlice() {
+        var.clear();
+        return XdrOpaque.decodeVarSlice(var);
+    }
+
+    @Benchmark
+    public final int sizeVar() {
+        return XdrOpaque.VAR_CODEC.size(val);
+    }
+}
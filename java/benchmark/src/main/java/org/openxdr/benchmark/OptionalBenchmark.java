@@ -0,0 +1,78 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openxdr.Codec;
+import org.openxdr.XdrOptional;
+import org.openxdr.XdrString;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptionalBenchmark extends BufferState {
+
+    private static final Codec<String> CODEC = XdrOptional
+            .newCodec(XdrString.VAR_CODEC);
+
+    // Zero encodes the absent case.
+    @Param( { "0", "8", "256", "16384" })
+    public int length;
+
+    private String val;
+    private ByteBuffer buf;
+
+    @Setup
+    public final void setup() throws CharacterCodingException {
+        if (0 < length) {
+            final char[] chars = new char[length];
+            Arrays.fill(chars, 'x');
+            val = new String(chars);
+        }
+        buf = allocate(CODEC.size(val));
+        CODEC.encode(buf, val);
+    }
+
+    @Benchmark
+    public final ByteBuffer encode() throws CharacterCodingException {
+        buf.clear();
+        CODEC.encode(buf, val);
+        return buf;
+    }
+
+    @Benchmark
+    public final String decode() throws CharacterCodingException {
+        buf.clear();
+        return CODEC.decode(buf);
+    }
+
+    @Benchmark
+    public final int size() {
+        return CODEC.size(val);
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openxdr.Codec;
+import org.openxdr.XdrDouble;
+import org.openxdr.XdrEnum;
+import org.openxdr.XdrHyper;
+import org.openxdr.XdrInt;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitiveBenchmark extends BufferState {
+
+    public enum Colour {
+        RED, GREEN, BLUE
+    }
+
+    private static final Colour[] COLOURS = Colour.values();
+
+    private static final Codec<Colour> COLOUR_CODEC = XdrEnum
+            .newCodec(COLOURS);
+
+    @Param( { "1", "16", "256" })
+    public int count;
+
+    private ByteBuffer ints;
+    private ByteBuffer hypers;
+    private ByteBuffer doubles;
+    private ByteBuffer enums;
+
+    @Setup
+    public final void setup() {
+        ints = allocate(count * XdrInt.SIZE);
+        hypers = allocate(count * XdrHyper.SIZE);
+        doubles = allocate(count * XdrDouble.SIZE);
+        enums = allocate(count * XdrEnum.SIZE);
+        for (int i = 0; i < count; ++i) {
+            XdrInt.encode(ints, i);
+            XdrHyper.encode(hypers, i);
+            XdrDouble.encode(doubles, i);
+            XdrEnum.encode(enums, COLOURS[i % 3]);
+        }
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeInt() {
+        ints.clear();
+        for (int i = 0; i < count; ++i)
+            XdrInt.encode(ints, i);
+        return ints;
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeIntCodec()
+            throws CharacterCodingException {
+        ints.clear();
+        for (int i = 0; i < count; ++i)
+            XdrInt.CODEC.encode(ints, i);
+        return ints;
+    }
+
+    @Benchmark
+    public final void decodeInt(Blackhole bh) {
+        ints.clear();
+        for (int i = 0; i < count; ++i)
+            bh.consume(XdrInt.decode(ints));
+    }
+
+    @Benchmark
+    public final void decodeIntCodec(Blackhole bh)
+            throws CharacterCodingException {
+        ints.clear();
+        for (int i = 0; i < count; ++i)
+            bh.consume(XdrInt.CODEC.decode(ints));
+    }
+
+    @Benchmark
+    public final int sizeInt() {
+        int n = 0;
+        for (int i = 0; i < count; ++i)
+            n += XdrInt.CODEC.size(i);
+        return n;
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeHyper() {
+        hypers.clear();
+        for (int i = 0; i < count; ++i)
+            XdrHyper.encode(hypers, i);
+        return hypers;
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeHyperCodec()
+            throws CharacterCodingException {
+        hypers.clear();
+        for (long i = 0; i < count; ++i)
+            XdrHyper.CODEC.encode(hypers, i);
+        return hypers;
+    }
+
+    @Benchmark
+    public final void decodeHyper(Blackhole bh) {
+        hypers.clear();
+        for (int i = 0; i < count; ++i)
+            bh.consume(XdrHyper.decode(hypers));
+    }
+
+    @Benchmark
+    public final void decodeHyperCodec(Blackhole bh)
+            throws CharacterCodingException {
+        hypers.clear();
+        for (int i = 0; i < count; ++i)
+            bh.consume(XdrHyper.CODEC.decode(hypers));
+    }
+
+    @Benchmark
+    public final int sizeHyper() {
+        int n = 0;
+        for (long i = 0; i < count; ++i)
+            n += XdrHyper.CODEC.size(i);
+        return n;
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeDouble() {
+        doubles.clear();
+        for (int i = 0; i < count; ++i)
+            XdrDouble.encode(doubles, i);
+        return doubles;
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeDoubleCodec()
+            throws CharacterCodingException {
+        doubles.clear();
+        for (double i = 0; i < count; ++i)
+            XdrDouble.CODEC.encode(doubles, i);
+        return doubles;
+    }
+
+    @Benchmark
+    public final void decodeDouble(Blackhole bh) {
+        doubles.clear();
+        for (int i = 0; i < count; ++i)
+            bh.consume(XdrDouble.decode(doubles));
+    }
+
+    @Benchmark
+    public final void decodeDoubleCodec(Blackhole bh)
+            throws CharacterCodingException {
+        doubles.clear();
+        for (int i = 0; i < count; ++i)
+            bh.consume(XdrDouble.CODEC.decode(doubles));
+    }
+
+    @Benchmark
+    public final int sizeDouble() {
+        int n = 0;
+        for (double i = 0; i < count; ++i)
+            n += XdrDouble.CODEC.size(i);
+        return n;
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeEnum()
+            throws CharacterCodingException {
+        enums.clear();
+        for (int i = 0; i < count; ++i)
+            COLOUR_CODEC.encode(enums, COLOURS[i % 3]);
+        return enums;
+    }
+
+    @Benchmark
+    public final void decodeEnum(Blackhole bh)
+            throws CharacterCodingException {
+        enums.clear();
+        for (int i = 0; i < count; ++i)
+            bh.consume(COLOUR_CODEC.decode(enums));
+    }
+
+    @Benchmark
+    public final int sizeEnum() {
+        int n = 0;
+        for (int i = 0; i < count; ++i)
+            n += COLOUR_CODEC.size(Colour.RED);
+        return n;
+    }
+}
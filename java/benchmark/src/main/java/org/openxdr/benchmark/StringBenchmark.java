@@ -0,0 +1,88 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openxdr.CachingCodec;
+import org.openxdr.Utf8String;
+import org.openxdr.XdrCache;
+import org.openxdr.XdrString;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringBenchmark extends BufferState {
+
+    @Param( { "8", "256", "16384" })
+    public int length;
+
+    private String val;
+    private ByteBuffer buf;
+    private CachingCodec<String> cached;
+
+    @Setup
+    public final void setup() throws CharacterCodingException {
+        final char[] chars = new char[length];
+        Arrays.fill(chars, 'x');
+        val = new String(chars);
+        buf = allocate(XdrString.size(val));
+        XdrString.encode(buf, val);
+        cached = XdrCache.newVarCodec(XdrString.VAR_CODEC);
+    }
+
+    @Benchmark
+    public final ByteBuffer encode() throws CharacterCodingException {
+        buf.clear();
+        XdrString.VAR_CODEC.encode(buf, val);
+        return buf;
+    }
+
+    @Benchmark
+    public final String decode() throws CharacterCodingException {
+        buf.clear();
+        return XdrString.VAR_CODEC.decode(buf);
+    }
+
+    // Every decode after the first is a hit.
+    @Benchmark
+    public final String decodeCached() throws CharacterCodingException {
+        buf.clear();
+        return cached.decode(buf);
+    }
+
+    @Benchmark
+    public final Utf8String decodeView() throws CharacterCodingException {
+        buf.clear();
+        return XdrString.VAR_VIEW_CODEC.decode(buf);
+    }
+
+    @Benchmark
+    public final int size() {
+        return XdrString.VAR_CODEC.size(val);
+    }
+}
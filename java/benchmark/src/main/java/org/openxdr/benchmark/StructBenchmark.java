@@ -0,0 +1,125 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openxdr.Codec;
+import org.openxdr.XdrField;
+import org.openxdr.XdrHyper;
+import org.openxdr.XdrInt;
+import org.openxdr.XdrString;
+import org.openxdr.XdrStruct;
+
+// Compares the generated struct codec with the equivalent hand-written one.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StructBenchmark extends BufferState {
+
+    public static final class Entry {
+        @XdrField(0)
+        public int id;
+        @XdrField(1)
+        public long cookie;
+        @XdrField(value = 2, maxsize = 255)
+        public String name;
+        @XdrField(3)
+        public int mode;
+    }
+
+    private static final Codec<Entry> GENERATED = XdrStruct
+            .newCodec(Entry.class);
+
+    private static final Codec<Entry> MANUAL = new Codec<Entry>() {
+        public final void encode(ByteBuffer buf, Entry val)
+                throws CharacterCodingException {
+            XdrInt.encode(buf, val.id);
+            XdrHyper.encode(buf, val.cookie);
+            XdrString.encode(buf, val.name, 255);
+            XdrInt.encode(buf, val.mode);
+        }
+
+        public final Entry decode(ByteBuffer buf)
+                throws CharacterCodingException {
+            final Entry val = new Entry();
+            val.id = XdrInt.decode(buf);
+            val.cookie = XdrHyper.decode(buf);
+            val.name = XdrString.decode(buf, 255);
+            val.mode = XdrInt.decode(buf);
+            return val;
+        }
+
+        public final int size(Entry val) {
+            return XdrInt.SIZE + XdrHyper.SIZE + XdrString.size(val.name, 255)
+                    + XdrInt.SIZE;
+        }
+    };
+
+    private Entry val;
+    private ByteBuffer buf;
+
+    @Setup
+    public final void setup() throws CharacterCodingException {
+        val = new Entry();
+        val.id = 101;
+        val.cookie = 0x0123456789abcdefL;
+        val.name = "benchmark.dat";
+        val.mode = 0644;
+        buf = allocate(MANUAL.size(val));
+        MANUAL.encode(buf, val);
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeGenerated() throws CharacterCodingException {
+        buf.clear();
+        GENERATED.encode(buf, val);
+        return buf;
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeManual() throws CharacterCodingException {
+        buf.clear();
+        MANUAL.encode(buf, val);
+        return buf;
+    }
+
+    @Benchmark
+    public final Entry decodeGenerated() throws CharacterCodingException {
+        buf.clear();
+        return GENERATED.decode(buf);
+    }
+
+    @Benchmark
+    public final Entry decodeManual() throws CharacterCodingException {
+        buf.clear();
+        return MANUAL.decode(buf);
+    }
+
+    @Benchmark
+    public final int sizeGenerated() {
+        return GENERATED.size(val);
+    }
+}
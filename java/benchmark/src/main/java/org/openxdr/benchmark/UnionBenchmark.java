@@ -0,0 +1,130 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openxdr.Codec;
+import org.openxdr.IntUnionCodec;
+import org.openxdr.IntUnionVisitor;
+import org.openxdr.Opaque;
+import org.openxdr.Union;
+import org.openxdr.XdrInt;
+import org.openxdr.XdrOpaque;
+import org.openxdr.XdrString;
+import org.openxdr.XdrUnion;
+import org.openxdr.XdrVoid;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnionBenchmark extends BufferState {
+
+    private static final Codec<Union<Integer>> CODEC = XdrUnion.newCodec(
+            XdrInt.CODEC, XdrUnion.<Integer> newCases(0, XdrInt.CODEC, 1,
+                    XdrString.VAR_CODEC, 2, XdrOpaque.VAR_CODEC),
+            XdrVoid.CODEC);
+
+    private static final IntUnionCodec TABLE_CODEC = XdrUnion.newIntCodec(
+            XdrInt.INT_CODEC, XdrUnion.<Integer> newCases(0, XdrInt.CODEC, 1,
+                    XdrString.VAR_CODEC, 2, XdrOpaque.VAR_CODEC),
+            XdrVoid.CODEC);
+
+    private static final IntUnionVisitor<Object> VISITOR = new IntUnionVisitor<Object>() {
+        public final Object visit(int type, Object value) {
+            return value;
+        }
+    };
+
+    // The size of the opaque arm; the int arm is measured alongside it.
+    @Param( { "16", "4096", "1048576" })
+    public int length;
+
+    private Union<Integer> intVal;
+    private Union<Integer> opaqueVal;
+    private ByteBuffer intBuf;
+    private ByteBuffer opaqueBuf;
+
+    @Setup
+    public final void setup() throws CharacterCodingException {
+        intVal = new Union<Integer>(0, 101);
+        opaqueVal = new Union<Integer>(2, new Opaque(length));
+        intBuf = allocate(CODEC.size(intVal));
+        CODEC.encode(intBuf, intVal);
+        opaqueBuf = allocate(CODEC.size(opaqueVal));
+        CODEC.encode(opaqueBuf, opaqueVal);
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeInt() throws CharacterCodingException {
+        intBuf.clear();
+        CODEC.encode(intBuf, intVal);
+        return intBuf;
+    }
+
+    @Benchmark
+    public final Union<Integer> decodeInt() throws CharacterCodingException {
+        intBuf.clear();
+        return CODEC.decode(intBuf);
+    }
+
+    @Benchmark
+    public final int sizeInt() {
+        return CODEC.size(intVal);
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeIntTable() throws CharacterCodingException {
+        intBuf.clear();
+        TABLE_CODEC.encode(intBuf, 0, intVal.getValue());
+        return intBuf;
+    }
+
+    @Benchmark
+    public final Object decodeIntVisitor() throws CharacterCodingException {
+        intBuf.clear();
+        return TABLE_CODEC.decode(intBuf, VISITOR);
+    }
+
+    @Benchmark
+    public final ByteBuffer encodeOpaque() throws CharacterCodingException {
+        opaqueBuf.clear();
+        CODEC.encode(opaqueBuf, opaqueVal);
+        return opaqueBuf;
+    }
+
+    @Benchmark
+    public final Union<Integer> decodeOpaque()
+            throws CharacterCodingException {
+        opaqueBuf.clear();
+        return CODEC.decode(opaqueBuf);
+    }
+
+    @Benchmark
+    public final int sizeOpaque() {
+        return CODEC.size(opaqueVal);
+    }
+}
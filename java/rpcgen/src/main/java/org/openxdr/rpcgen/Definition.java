@@ -0,0 +1,117 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.rpcgen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The definitions in a .x file. A declaration with a null type is void.
+abstract class Definition {
+    final String name;
+
+    Definition(String name) {
+        this.name = name;
+    }
+
+    static final class Decl {
+        final String name;
+        final Type type;
+
+        Decl(String name, Type type) {
+            this.name = name;
+            this.type = type;
+        }
+    }
+
+    static final class Const extends Definition {
+        final String value;
+
+        Const(String name, String value) {
+            super(name);
+            this.value = value;
+        }
+    }
+
+    static final class Enum extends Definition {
+        final List<String> names = new ArrayList<String>();
+        final List<String> values = new ArrayList<String>();
+
+        Enum(String name) {
+            super(name);
+        }
+    }
+
+    static final class Struct extends Definition {
+        final List<Decl> fields = new ArrayList<Decl>();
+
+        Struct(String name) {
+            super(name);
+        }
+    }
+
+    static final class Case {
+        final List<String> values = new ArrayList<String>();
+        Decl decl;
+    }
+
+    static final class Union extends Definition {
+        Decl discriminant;
+        final List<Case> cases = new ArrayList<Case>();
+        // Null if the union has no default arm.
+        Case def;
+
+        Union(String name) {
+            super(name);
+        }
+    }
+
+    static final class Typedef extends Definition {
+        final Decl decl;
+
+        Typedef(Decl decl) {
+            super(decl.name);
+            this.decl = decl;
+        }
+    }
+
+    static final class Procedure {
+        final String name;
+        final Type result;
+        final List<Type> args = new ArrayList<Type>();
+        String value;
+
+        Procedure(String name, Type result) {
+            this.name = name;
+            this.result = result;
+        }
+    }
+
+    static final class Version {
+        final String name;
+        String value;
+        final List<Procedure> procedures = new ArrayList<Procedure>();
+
+        Version(String name) {
+            this.name = name;
+        }
+    }
+
+    static final class Program extends Definition {
+        String value;
+        final List<Version> versions = new ArrayList<Version>();
+
+        Program(String name) {
+            super(name);
+        }
+    }
+}
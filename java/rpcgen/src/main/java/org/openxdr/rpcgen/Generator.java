@@ -0,0 +1,770 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.rpcgen;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.openxdr.rpcgen.Definition.Case;
+import org.openxdr.rpcgen.Definition.Decl;
+import org.openxdr.rpcgen.Definition.Procedure;
+import org.openxdr.rpcgen.Definition.Version;
+
+// Generates one Java class per struct, union, enum and typedef, each with
+// static encode, decode and size methods that call the openxdr primitives
+// and the other generated classes directly, plus a class holding the
+// constants and program numbers.
+final class Generator {
+    private static final Set<String> KEYWORDS = new HashSet<String>(Arrays
+            .asList("abstract", "assert", "boolean", "break", "byte", "case",
+                    "catch", "char", "class", "const", "continue", "default",
+                    "do", "double", "else", "enum", "extends", "false",
+                    "final", "finally", "float", "for", "goto", "if",
+                    "implements", "import", "instanceof", "int", "interface",
+                    "long", "native", "new", "null", "package", "private",
+                    "protected", "public", "return", "short", "static",
+                    "strictfp", "super", "switch", "synchronized", "this",
+                    "throw", "throws", "transient", "true", "try", "void",
+                    "volatile", "while"));
+
+    private final String pkg;
+    private final String source;
+    private final Map<String, Definition> types = new HashMap<String, Definition>();
+    private final Map<String, Long> constants = new HashMap<String, Long>();
+    // Defined on first use if the source does not define it.
+    private Definition.Typedef netobj;
+    // The structs whose minimum size is being computed.
+    private final Set<String> sizing = new HashSet<String>();
+
+    // The class being generated.
+    private final Set<String> imports = new TreeSet<String>();
+    private final StringBuilder out = new StringBuilder();
+    private int indent;
+    private int locals;
+
+    private static String id(String name) {
+        return KEYWORDS.contains(name) ? name + "_" : name;
+    }
+
+    // Fields are renamed where they would hide a class of the same name from
+    // the static methods that refer to it.
+    private String field(String name) {
+        return types.containsKey(name) ? id(name) + "_" : id(name);
+    }
+
+    private static String boxed(String javaType) {
+        for (final Type.Kind kind : Type.Kind.values())
+            if (kind.javaType.equals(javaType))
+                return kind.boxedType;
+        return javaType;
+    }
+
+    private static String newArray(String elemType, String len) {
+        final int i = elemType.indexOf('[');
+        if (i < 0)
+            return "new " + elemType + "[" + len + "]";
+        return "new " + elemType.substring(0, i) + "[" + len + "]"
+                + elemType.substring(i);
+    }
+
+    private static String bulkCodec(Type.Kind kind) {
+        switch (kind) {
+        case INT:
+            return "XdrIntArray";
+        case HYPER:
+            return "XdrHyperArray";
+        case FLOAT:
+            return "XdrFloatArray";
+        case DOUBLE:
+            return "XdrDoubleArray";
+        case BOOL:
+            return "XdrBoolArray";
+        default:
+            return null;
+        }
+    }
+
+    private static int elemSize(Type.Kind kind) {
+        return Type.Kind.HYPER == kind || Type.Kind.UHYPER == kind
+                || Type.Kind.DOUBLE == kind ? 8 : 4;
+    }
+
+    private long resolve(String value) {
+        // Sums, as in "%#define MAXNAMELEN LM_MAXSTRLEN+1".
+        final int op = Math.max(value.lastIndexOf('+'), value
+                .lastIndexOf('-'));
+        if (0 < op) {
+            final long lhs = resolve(value.substring(0, op));
+            final long rhs = resolve(value.substring(op + 1));
+            return '+' == value.charAt(op) ? lhs + rhs : lhs - rhs;
+        }
+        final Long val = constants.get(value);
+        if (null != val)
+            return val;
+        try {
+            return Long.decode(value);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("unknown constant '" + value
+                    + "'");
+        }
+    }
+
+    private int resolveSize(String value) {
+        if (null == value)
+            return Integer.MAX_VALUE;
+        final long n = resolve(value);
+        if (n < 0 || Integer.MAX_VALUE < n)
+            throw new IllegalArgumentException("bad size '" + value + "'");
+        return (int) n;
+    }
+
+    // An unbounded size needs no check, as no Java array can exceed it.
+    private boolean bounded(String value) {
+        return Integer.MAX_VALUE != resolveSize(value);
+    }
+
+    private String max(String value) {
+        final int n = resolveSize(value);
+        return Integer.MAX_VALUE == n ? "Integer.MAX_VALUE" : String
+                .valueOf(n);
+    }
+
+    private Definition lookup(String name) {
+        Definition def = types.get(name);
+        if (null == def && "netobj".equals(name)) {
+            // The counted opaque of the ONC RPC library, which .x files such
+            // as nlm_prot.x use without defining.
+            netobj = new Definition.Typedef(new Decl(name, new Type.Opaque(
+                    false, "1024")));
+            types.put(name, netobj);
+            def = netobj;
+        }
+        if (null == def)
+            throw new IllegalArgumentException("unknown type '" + name + "'");
+        return def;
+    }
+
+    // Follows typedefs down to the type they name.
+    private Type resolve(Type type) {
+        while (type instanceof Type.Named) {
+            final Definition def = lookup(((Type.Named) type).name);
+            if (!(def instanceof Definition.Typedef))
+                break;
+            type = ((Definition.Typedef) def).decl.type;
+        }
+        return type;
+    }
+
+    // The fewest bytes that a value of the type can encode to.
+    private int minSize(Type type) {
+        type = resolve(type);
+        if (type instanceof Type.Basic)
+            return elemSize(((Type.Basic) type).kind);
+        if (type instanceof Type.Opaque && ((Type.Opaque) type).fixed)
+            return resolveSize(((Type.Opaque) type).size) + 3 & ~3;
+        if (type instanceof Type.Array && ((Type.Array) type).fixed) {
+            final Type.Array array = (Type.Array) type;
+            final long n = (long) resolveSize(array.size)
+                    * minSize(array.elem);
+            return (int) Math.min(Integer.MAX_VALUE, n);
+        }
+        if (type instanceof Type.Named) {
+            final Definition def = lookup(((Type.Named) type).name);
+            if (def instanceof Definition.Struct) {
+                if (!sizing.add(def.name))
+                    throw new IllegalArgumentException("recursive type '"
+                            + def.name + "'");
+                long n = 0;
+                for (final Decl field : ((Definition.Struct) def).fields)
+                    n += minSize(field.type);
+                sizing.remove(def.name);
+                return (int) Math.min(Integer.MAX_VALUE, n);
+            }
+        }
+        return 4; // Lengths, discriminants, enums and optional flags.
+    }
+
+    private String javaType(Type type) {
+        if (type instanceof Type.Basic)
+            return ((Type.Basic) type).kind.javaType;
+        if (type instanceof Type.Str)
+            return "String";
+        if (type instanceof Type.Opaque)
+            return "byte[]";
+        if (type instanceof Type.Named) {
+            final Definition def = lookup(((Type.Named) type).name);
+            if (def instanceof Definition.Typedef)
+                return javaType(((Definition.Typedef) def).decl.type);
+            return id(def.name);
+        }
+        if (type instanceof Type.Array)
+            return javaType(((Type.Array) type).elem) + "[]";
+        return boxed(javaType(((Type.Optional) type).elem));
+    }
+
+    private String use(String cls) {
+        imports.add("org.openxdr." + cls);
+        return cls;
+    }
+
+    private String local(String prefix) {
+        return prefix + locals++;
+    }
+
+    private void println(String line) {
+        if (0 < line.length())
+            for (int i = 0; i < indent; ++i)
+                out.append("    ");
+        out.append(line).append('\n');
+    }
+
+    private void open(String line) {
+        println(line + " {");
+        ++indent;
+    }
+
+    private void close(String line) {
+        --indent;
+        println(line);
+    }
+
+    private void checkLength(String expr, int n) {
+        open("if (" + expr + ".length != " + n + ")");
+        println("throw new IllegalArgumentException();");
+        close("}");
+    }
+
+    private void encode(Type type, String expr) {
+        if (type instanceof Type.Basic)
+            println(use(((Type.Basic) type).kind.codec) + ".encode(buf, "
+                    + expr + ");");
+        else if (type instanceof Type.Str)
+            println(use("XdrString") + ".encode(buf, " + expr + ", "
+                    + max(((Type.Str) type).max) + ");");
+        else if (type instanceof Type.Opaque) {
+            final Type.Opaque opaque = (Type.Opaque) type;
+            if (opaque.fixed) {
+                checkLength(expr, resolveSize(opaque.size));
+                println(use("XdrOpaque") + ".encode(buf, " + expr + ");");
+            } else
+                println(use("XdrOpaque") + ".encodeVar(buf, " + expr + ", "
+                        + max(opaque.size) + ");");
+        } else if (type instanceof Type.Named)
+            println(id(((Type.Named) type).name) + ".encode(buf, " + expr
+                    + ");");
+        else if (type instanceof Type.Array) {
+            final Type.Array array = (Type.Array) type;
+            final Type elem = resolve(array.elem);
+            final String bulk = elem instanceof Type.Basic ? bulkCodec(((Type.Basic) elem).kind)
+                    : null;
+            if (array.fixed)
+                checkLength(expr, resolveSize(array.size));
+            if (null != bulk) {
+                println(use(bulk) + (array.fixed ? ".encode(buf, " + expr
+                        : ".encodeVar(buf, " + expr + ", " + max(array.size))
+                        + ");");
+                return;
+            }
+            if (!array.fixed) {
+                if (bounded(array.size)) {
+                    open("if (" + max(array.size) + " < " + expr
+                            + ".length)");
+                    println("throw new IllegalArgumentException();");
+                    close("}");
+                }
+                println(use("XdrInt") + ".encode(buf, " + expr + ".length);");
+            }
+            final String v = local("v");
+            open("for (final " + javaType(array.elem) + " " + v + " : "
+                    + expr + ")");
+            encode(array.elem, v);
+            close("}");
+        } else {
+            final Type.Optional optional = (Type.Optional) type;
+            open("if (null != " + expr + ")");
+            println(use("XdrBool") + ".encode(buf, true);");
+            encode(optional.elem, expr);
+            close("} else");
+            println("    XdrBool.encode(buf, false);");
+        }
+    }
+
+    private void decode(Type type, String target) {
+        if (type instanceof Type.Basic)
+            println(target + " = " + use(((Type.Basic) type).kind.codec)
+                    + ".decode(buf);");
+        else if (type instanceof Type.Str)
+            println(target + " = " + use("XdrString") + ".decode(buf, "
+                    + max(((Type.Str) type).max) + ");");
+        else if (type instanceof Type.Opaque) {
+            final Type.Opaque opaque = (Type.Opaque) type;
+            if (opaque.fixed) {
+                println(target + " = new byte[" + resolveSize(opaque.size)
+                        + "];");
+                println(use("XdrOpaque") + ".decode(buf, " + target + ");");
+            } else
+                println(target + " = " + use("XdrOpaque") + ".decodeVar(buf, "
+                        + max(opaque.size) + ");");
+        } else if (type instanceof Type.Named)
+            println(target + " = " + id(((Type.Named) type).name)
+                    + ".decode(buf);");
+        else if (type instanceof Type.Array) {
+            final Type.Array array = (Type.Array) type;
+            final Type elem = resolve(array.elem);
+            final String bulk = elem instanceof Type.Basic ? bulkCodec(((Type.Basic) elem).kind)
+                    : null;
+            final String elemType = javaType(array.elem);
+            if (null != bulk) {
+                if (array.fixed) {
+                    println(target + " = "
+                            + newArray(elemType, max(array.size)) + ";");
+                    println(use(bulk) + ".decode(buf, " + target + ");");
+                } else
+                    println(target + " = " + use(bulk) + ".decodeVar(buf, "
+                            + max(array.size) + ");");
+                return;
+            }
+            final String len;
+            if (array.fixed)
+                len = max(array.size);
+            else {
+                len = local("n");
+                println("final int " + len + " = " + use("XdrInt")
+                        + ".decode(buf);");
+                // Each element takes at least min bytes, so a count that
+                // the buffer cannot hold is rejected before allocating.
+                final int min = minSize(array.elem);
+                open("if (" + len + " < 0"
+                        + (bounded(array.size) ? " || " + max(array.size)
+                                + " < " + len : "")
+                        + (0 < min ? " || buf.remaining() / " + min + " < "
+                                + len : "") + ")");
+                println("throw new IllegalArgumentException();");
+                close("}");
+            }
+            println(target + " = " + newArray(elemType, len) + ";");
+            final String i = local("i");
+            open("for (int " + i + " = 0; " + i + " < " + len + "; ++" + i
+                    + ")");
+            decode(array.elem, target + "[" + i + "]");
+            close("}");
+        } else {
+            final Type.Optional optional = (Type.Optional) type;
+            open("if (" + use("XdrBool") + ".decode(buf))");
+            decode(optional.elem, target);
+            close("} else");
+            println("    " + target + " = null;");
+        }
+    }
+
+    private void size(Type type, String expr) {
+        if (type instanceof Type.Basic)
+            println("size += " + use(((Type.Basic) type).kind.codec)
+                    + ".SIZE;");
+        else if (type instanceof Type.Str)
+            println("size += " + use("XdrString") + ".size(" + expr + ", "
+                    + max(((Type.Str) type).max) + ");");
+        else if (type instanceof Type.Opaque) {
+            final Type.Opaque opaque = (Type.Opaque) type;
+            if (opaque.fixed)
+                println("size += " + (resolveSize(opaque.size) + 3 & ~3)
+                        + ";");
+            else
+                println("size += " + use("XdrOpaque") + ".sizeVar(" + expr
+                        + ", " + max(opaque.size) + ");");
+        } else if (type instanceof Type.Named)
+            println("size += " + id(((Type.Named) type).name) + ".size("
+                    + expr + ");");
+        else if (type instanceof Type.Array) {
+            final Type.Array array = (Type.Array) type;
+            final Type elem = resolve(array.elem);
+            final String bulk = elem instanceof Type.Basic ? bulkCodec(((Type.Basic) elem).kind)
+                    : null;
+            if (null != bulk) {
+                if (array.fixed)
+                    println("size += "
+                            + resolveSize(array.size)
+                            * elemSize(((Type.Basic) elem).kind) + ";");
+                else
+                    println("size += " + use(bulk) + ".sizeVar(" + expr
+                            + ", " + max(array.size) + ");");
+                return;
+            }
+            if (!array.fixed)
+                println("size += " + use("XdrInt") + ".SIZE;");
+            final String v = local("v");
+            open("for (final " + javaType(array.elem) + " " + v + " : "
+                    + expr + ")");
+            size(array.elem, v);
+            close("}");
+        } else {
+            final Type.Optional optional = (Type.Optional) type;
+            println("size += " + use("XdrBool") + ".SIZE;");
+            open("if (null != " + expr + ")");
+            size(optional.elem, expr);
+            close("}");
+        }
+    }
+
+    private void codec(String name, String javaType) {
+        final String type = boxed(javaType);
+        println("");
+        open("public static final " + use("Codec") + "<" + type
+                + "> CODEC = new Codec<" + type + ">()");
+        open("public final void encode(ByteBuffer buf, " + type
+                + " val) throws CharacterCodingException");
+        println(name + ".encode(buf, val);");
+        close("}");
+        println("");
+        open("public final " + type
+                + " decode(ByteBuffer buf) throws CharacterCodingException");
+        println("return " + name + ".decode(buf);");
+        close("}");
+        println("");
+        open("public final int size(" + type + " val)");
+        println("return " + name + ".size(val);");
+        close("}");
+        close("};");
+    }
+
+    private void begin() {
+        imports.clear();
+        out.setLength(0);
+        indent = 0;
+        locals = 0;
+        imports.add("java.nio.ByteBuffer");
+        imports.add("java.nio.charset.CharacterCodingException");
+    }
+
+    private String end() {
+        close("}");
+        final StringBuilder sb = new StringBuilder();
+        sb.append("// Generated by openxdr-rpcgen from ").append(source)
+                .append(". Do not edit.\n");
+        if (0 < pkg.length())
+            sb.append("package ").append(pkg).append(";\n");
+        sb.append('\n');
+        String group = null;
+        for (final String imp : imports) {
+            final String prefix = imp.substring(0, imp.indexOf('.'));
+            if (null != group && !group.equals(prefix))
+                sb.append('\n');
+            group = prefix;
+            sb.append("import ").append(imp).append(";\n");
+        }
+        sb.append('\n');
+        return sb.append(out).toString();
+    }
+
+    private String struct(Definition.Struct def) {
+        final String name = id(def.name);
+        begin();
+        open("public final class " + name);
+        for (final Decl field : def.fields)
+            println("public " + javaType(field.type) + " " + field(field.name)
+                    + ";");
+        println("");
+        open("public static void encode(ByteBuffer buf, " + name
+                + " val) throws CharacterCodingException");
+        for (final Decl field : def.fields)
+            encode(field.type, "val." + field(field.name));
+        close("}");
+        println("");
+        open("public static " + name
+                + " decode(ByteBuffer buf) throws CharacterCodingException");
+        println("final " + name + " val = new " + name + "();");
+        for (final Decl field : def.fields)
+            decode(field.type, "val." + field(field.name));
+        println("return val;");
+        close("}");
+        println("");
+        open("public static int size(" + name + " val)");
+        println("int size = 0;");
+        for (final Decl field : def.fields)
+            size(field.type, "val." + field(field.name));
+        println("return size;");
+        close("}");
+        codec(name, name);
+        return end();
+    }
+
+    private String enumeration(Definition.Enum def) {
+        final String name = id(def.name);
+        begin();
+        open("public enum " + name);
+        for (int i = 0; i < def.names.size(); ++i)
+            println(id(def.names.get(i)) + "("
+                    + (int) resolve(def.values.get(i))
+                    + (i + 1 < def.names.size() ? ")," : ");"));
+        println("");
+        println("public final int value;");
+        println("");
+        open("private " + name + "(int value)");
+        println("this.value = value;");
+        close("}");
+        println("");
+        open("public static void encode(ByteBuffer buf, " + name + " val)");
+        println(use("XdrInt") + ".encode(buf, val.value);");
+        close("}");
+        println("");
+        open("public static " + name + " decode(ByteBuffer buf)");
+        println("switch (XdrInt.decode(buf)) {");
+        final Set<Integer> seen = new HashSet<Integer>();
+        for (int i = 0; i < def.names.size(); ++i) {
+            final int value = (int) resolve(def.values.get(i));
+            if (seen.add(value)) {
+                println("case " + value + ":");
+                println("    return " + id(def.names.get(i)) + ";");
+            }
+        }
+        println("default:");
+        println("    throw new IllegalArgumentException();");
+        println("}");
+        close("}");
+        println("");
+        open("public static int size(" + name + " val)");
+        println("return XdrInt.SIZE;");
+        close("}");
+        codec(name, name);
+        return end();
+    }
+
+    private String label(Type disc, String value) {
+        if (disc instanceof Type.Named) {
+            final Definition.Enum def = (Definition.Enum) lookup(((Type.Named) disc).name);
+            if (def.names.contains(value))
+                return id(value);
+            final long n = resolve(value);
+            for (int i = 0; i < def.names.size(); ++i)
+                if (n == resolve(def.values.get(i)))
+                    return id(def.names.get(i));
+            throw new IllegalArgumentException("bad case '" + value + "'");
+        }
+        return String.valueOf((int) resolve(value));
+    }
+
+    private interface Arm {
+        void apply(Type type, String expr);
+    }
+
+    private void cases(Definition.Union def, String sw, Arm arm) {
+        final Type disc = resolve(def.discriminant.type);
+        println("switch (" + sw + ") {");
+        for (final Case c : def.cases) {
+            for (final String value : c.values)
+                println("case " + label(disc, value) + ":");
+            ++indent;
+            if (null != c.decl.type)
+                arm.apply(c.decl.type, "val." + field(c.decl.name));
+            println("break;");
+            --indent;
+        }
+        println("default:");
+        ++indent;
+        if (null == def.def)
+            println("throw new IllegalArgumentException();");
+        else {
+            if (null != def.def.decl.type)
+                arm.apply(def.def.decl.type, "val." + field(def.def.decl.name));
+            println("break;");
+        }
+        --indent;
+        println("}");
+    }
+
+    private String union(final Definition.Union def) {
+        final String name = id(def.name);
+        final Type disc = resolve(def.discriminant.type);
+        if (!(disc instanceof Type.Basic && Type.Kind.HYPER != ((Type.Basic) disc).kind)
+                && !(disc instanceof Type.Named))
+            throw new IllegalArgumentException("bad discriminant for '"
+                    + def.name + "'");
+        final String discName = "val." + field(def.discriminant.name);
+        final boolean bool = disc instanceof Type.Basic
+                && Type.Kind.BOOL == ((Type.Basic) disc).kind;
+        final String sw = bool ? discName + " ? 1 : 0" : discName;
+        begin();
+        open("public final class " + name);
+        println("public " + javaType(def.discriminant.type) + " "
+                + field(def.discriminant.name) + ";");
+        final Map<String, String> fields = new LinkedHashMap<String, String>();
+        for (final Case c : def.cases)
+            addField(fields, c.decl);
+        if (null != def.def)
+            addField(fields, def.def.decl);
+        for (final Map.Entry<String, String> field : fields.entrySet())
+            println("public " + field.getValue() + " " + field.getKey() + ";");
+        println("");
+        open("public static void encode(ByteBuffer buf, " + name
+                + " val) throws CharacterCodingException");
+        encode(def.discriminant.type, discName);
+        cases(def, sw, new Arm() {
+            public final void apply(Type type, String expr) {
+                encode(type, expr);
+            }
+        });
+        close("}");
+        println("");
+        open("public static " + name
+                + " decode(ByteBuffer buf) throws CharacterCodingException");
+        println("final " + name + " val = new " + name + "();");
+        decode(def.discriminant.type, discName);
+        cases(def, sw, new Arm() {
+            public final void apply(Type type, String expr) {
+                decode(type, expr);
+            }
+        });
+        println("return val;");
+        close("}");
+        println("");
+        open("public static int size(" + name + " val)");
+        println("int size = 0;");
+        size(def.discriminant.type, discName);
+        cases(def, sw, new Arm() {
+            public final void apply(Type type, String expr) {
+                size(type, expr);
+            }
+        });
+        println("return size;");
+        close("}");
+        codec(name, name);
+        return end();
+    }
+
+    private void addField(Map<String, String> fields, Decl decl) {
+        if (null == decl.type)
+            return;
+        final String type = javaType(decl.type);
+        final String prev = fields.put(field(decl.name), type);
+        if (null != prev && !prev.equals(type))
+            throw new IllegalArgumentException("conflicting arms named '"
+                    + decl.name + "'");
+    }
+
+    private String typedef(Definition.Typedef def) {
+        final String name = id(def.name);
+        final Type type = def.decl.type;
+        final String javaType = javaType(type);
+        begin();
+        open("public final class " + name);
+        println("");
+        open("private " + name + "()");
+        close("}");
+        println("");
+        open("public static void encode(ByteBuffer buf, " + javaType
+                + " val) throws CharacterCodingException");
+        encode(type, "val");
+        close("}");
+        println("");
+        open("public static " + javaType
+                + " decode(ByteBuffer buf) throws CharacterCodingException");
+        println(javaType + " val;");
+        decode(type, "val");
+        println("return val;");
+        close("}");
+        println("");
+        open("public static int size(" + javaType + " val)");
+        println("int size = 0;");
+        size(type, "val");
+        println("return size;");
+        close("}");
+        codec(name, javaType);
+        return end();
+    }
+
+    // Procedures keep their names across versions, so a name is emitted
+    // once, and only if every definition of it agrees.
+    private void constant(Map<String, Long> seen, String name, String value) {
+        final long n = resolve(value);
+        final Long prev = seen.put(name, n);
+        if (null != prev) {
+            if (n != prev)
+                throw new IllegalArgumentException("conflicting values for '"
+                        + name + "'");
+            return;
+        }
+        println("public static final int " + id(name) + " = " + (int) n
+                + ";");
+    }
+
+    private String constants(String name, List<Definition> defs) {
+        begin();
+        imports.clear();
+        open("public final class " + name);
+        println("");
+        open("private " + name + "()");
+        close("}");
+        println("");
+        final Map<String, Long> seen = new HashMap<String, Long>();
+        for (final Definition def : defs)
+            if (def instanceof Definition.Const)
+                constant(seen, def.name, ((Definition.Const) def).value);
+            else if (def instanceof Definition.Program) {
+                final Definition.Program prog = (Definition.Program) def;
+                constant(seen, prog.name, prog.value);
+                for (final Version vers : prog.versions) {
+                    constant(seen, vers.name, vers.value);
+                    for (final Procedure proc : vers.procedures)
+                        constant(seen, proc.name, proc.value);
+                }
+            }
+        return end();
+    }
+
+    Generator(String pkg, String source) {
+        this.pkg = pkg;
+        this.source = source;
+        constants.put("TRUE", 1L);
+        constants.put("FALSE", 0L);
+    }
+
+    // Returns the source of each generated class keyed by class name.
+    final Map<String, String> generate(String constantsClass,
+            List<Definition> defs) {
+        for (final Definition def : defs)
+            if (def instanceof Definition.Const)
+                constants.put(def.name, resolve(((Definition.Const) def).value));
+            else if (def instanceof Definition.Enum) {
+                final Definition.Enum e = (Definition.Enum) def;
+                types.put(def.name, def);
+                for (int i = 0; i < e.names.size(); ++i)
+                    constants.put(e.names.get(i), resolve(e.values.get(i)));
+            } else if (!(def instanceof Definition.Program))
+                types.put(def.name, def);
+        final Map<String, String> classes = new LinkedHashMap<String, String>();
+        boolean hasConstants = false;
+        for (final Definition def : defs)
+            if (def instanceof Definition.Struct)
+                classes.put(id(def.name), struct((Definition.Struct) def));
+            else if (def instanceof Definition.Union)
+                classes.put(id(def.name), union((Definition.Union) def));
+            else if (def instanceof Definition.Enum)
+                classes.put(id(def.name),
+                        enumeration((Definition.Enum) def));
+            else if (def instanceof Definition.Typedef)
+                classes.put(id(def.name), typedef((Definition.Typedef) def));
+            else
+                hasConstants = true;
+        if (null != netobj)
+            classes.put(netobj.name, typedef(netobj));
+        if (hasConstants)
+            classes.put(constantsClass, constants(constantsClass, defs));
+        return classes;
+    }
+}
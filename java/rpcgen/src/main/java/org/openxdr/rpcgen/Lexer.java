@@ -0,0 +1,183 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.rpcgen;
+
+import java.text.ParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+final class Lexer {
+    enum Token {
+        IDENT, NUMBER, PUNCT, EOF
+    }
+
+    private static final Pattern DEFINE = Pattern
+            .compile("%\\s*#\\s*define\\s+(\\w+)\\s+"
+                    + "(-?\\w+(\\s*[-+]\\s*\\w+)*)\\s*");
+    private static final Pattern OPERATOR = Pattern.compile("\\s*[-+]\\s*");
+
+    private final String src;
+    // The "%#define" lines that .x files use for bounds: those defining a
+    // number, or a sum of numbers and the names of earlier such lines.
+    private final Map<String, String> defines = new LinkedHashMap<String, String>();
+    private int pos;
+    private int line = 1;
+    private Token token;
+    private String text;
+
+    private char peek(int i) {
+        return pos + i < src.length() ? src.charAt(pos + i) : '\0';
+    }
+
+    private boolean atLineStart() {
+        for (int i = pos - 1; 0 <= i; --i) {
+            final char c = src.charAt(i);
+            if ('\n' == c)
+                return true;
+            if (!Character.isWhitespace(c))
+                return false;
+        }
+        return true;
+    }
+
+    private void skipLine() {
+        while (pos < src.length() && '\n' != src.charAt(pos))
+            ++pos;
+    }
+
+    private void skipPassThrough() {
+        final int start = pos;
+        skipLine();
+        final Matcher m = DEFINE.matcher(src.substring(start, pos));
+        if (!m.matches())
+            return;
+        final String value = m.group(2);
+        for (final String operand : OPERATOR.split(value))
+            if (0 < operand.length() && !Character.isDigit(operand.charAt(0))
+                    && !defines.containsKey(operand))
+                return;
+        defines.put(m.group(1), value.replaceAll("\\s", ""));
+    }
+
+    // Skips whitespace, comments, and the "%" pass-through and "#"
+    // preprocessor lines that rpcgen copies to its C output.
+    private void skip() throws ParseException {
+        for (;;) {
+            final char c = peek(0);
+            if ('\n' == c) {
+                ++line;
+                ++pos;
+            } else if (Character.isWhitespace(c))
+                ++pos;
+            else if ('/' == c && '*' == peek(1)) {
+                final int end = src.indexOf("*/", pos + 2);
+                if (end < 0)
+                    throw error("unterminated comment");
+                for (int i = pos; i < end; ++i)
+                    if ('\n' == src.charAt(i))
+                        ++line;
+                pos = end + 2;
+            } else if ('/' == c && '/' == peek(1))
+                skipLine();
+            else if ('%' == c && atLineStart())
+                skipPassThrough();
+            else if ('#' == c && atLineStart())
+                skipLine();
+            else
+                break;
+        }
+    }
+
+    Lexer(String src) throws ParseException {
+        this.src = src;
+        next();
+    }
+
+    final ParseException error(String msg) {
+        return new ParseException("line " + line + ": " + msg, pos);
+    }
+
+    final void next() throws ParseException {
+        skip();
+        final int start = pos;
+        if (src.length() <= pos) {
+            token = Token.EOF;
+            text = "";
+            return;
+        }
+        final char c = src.charAt(pos);
+        if (Character.isLetter(c) || '_' == c) {
+            while (Character.isLetterOrDigit(peek(0)) || '_' == peek(0))
+                ++pos;
+            token = Token.IDENT;
+        } else if (Character.isDigit(c)
+                || ('-' == c && Character.isDigit(peek(1)))) {
+            ++pos;
+            while (Character.isLetterOrDigit(peek(0)))
+                ++pos;
+            token = Token.NUMBER;
+        } else if (0 <= "{}[]<>()*;,:=".indexOf(c)) {
+            ++pos;
+            token = Token.PUNCT;
+        } else
+            throw error("unexpected character '" + c + "'");
+        text = src.substring(start, pos);
+    }
+
+    final Map<String, String> getDefines() {
+        return defines;
+    }
+
+    final Token getToken() {
+        return token;
+    }
+
+    final String getText() {
+        return text;
+    }
+
+    final boolean is(String s) {
+        return Token.EOF != token && text.equals(s);
+    }
+
+    final boolean accept(String s) throws ParseException {
+        if (!is(s))
+            return false;
+        next();
+        return true;
+    }
+
+    final void expect(String s) throws ParseException {
+        if (!accept(s))
+            throw error("expected '" + s + "' but found '" + text + "'");
+    }
+
+    final String ident() throws ParseException {
+        if (Token.IDENT != token)
+            throw error("expected identifier but found '" + text + "'");
+        final String s = text;
+        next();
+        return s;
+    }
+
+    // A number or the name of a constant.
+    final String value() throws ParseException {
+        if (Token.IDENT != token && Token.NUMBER != token)
+            throw error("expected value but found '" + text + "'");
+        final String s = text;
+        next();
+        return s;
+    }
+}
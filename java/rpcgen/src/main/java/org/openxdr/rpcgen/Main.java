@@ -0,0 +1,142 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.rpcgen;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Usage: rpcgen [-d outdir] [-p package] [-c constants] file.x...
+public final class Main {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static String read(File file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] buf = new byte[(int) file.length()];
+            int off = 0;
+            while (off < buf.length) {
+                final int n = in.read(buf, off, buf.length - off);
+                if (n < 0)
+                    break;
+                off += n;
+            }
+            return new String(buf, 0, off, UTF8);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void write(File file, String src) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(src.getBytes(UTF8));
+        } finally {
+            out.close();
+        }
+    }
+
+    // Turns "nfs_prot.x" into "NfsProt".
+    static String camel(String name) {
+        final int dot = name.lastIndexOf('.');
+        if (0 < dot)
+            name = name.substring(0, dot);
+        final StringBuilder sb = new StringBuilder();
+        boolean upper = true;
+        for (int i = 0; i < name.length(); ++i) {
+            final char ch = name.charAt(i);
+            if (!Character.isJavaIdentifierPart(ch) || '_' == ch)
+                upper = true;
+            else if (upper) {
+                sb.append(Character.toUpperCase(ch));
+                upper = false;
+            } else
+                sb.append(ch);
+        }
+        return sb.toString();
+    }
+
+    public static Map<String, String> generate(String pkg, String constants,
+            String source, String src) throws ParseException {
+        final List<Definition> defs = Parser.parse(src);
+        try {
+            return new Generator(pkg, source).generate(constants, defs);
+        } catch (final IllegalArgumentException e) {
+            // Unresolved names and the like are errors in the source too.
+            throw new ParseException(e.getMessage(), 0);
+        }
+    }
+
+    public static void generate(File outdir, String pkg, String constants,
+            File file) throws IOException, ParseException {
+        if (null == constants)
+            constants = camel(file.getName()) + "Constants";
+        final Map<String, String> classes = generate(pkg, constants, file
+                .getName(), read(file));
+        final File dir = new File(outdir, pkg.replace('.', File.separatorChar));
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("cannot create " + dir);
+        for (final Map.Entry<String, String> entry : classes.entrySet())
+            write(new File(dir, entry.getKey() + ".java"), entry.getValue());
+    }
+
+    private static void usage() {
+        System.err
+                .println("usage: rpcgen [-d outdir] [-p package] [-c constants] file.x...");
+        System.exit(2);
+    }
+
+    public static void main(String[] args) {
+        File outdir = new File(".");
+        String pkg = "";
+        String constants = null;
+        final List<File> files = new ArrayList<File>();
+        for (int i = 0; i < args.length; ++i) {
+            final String arg = args[i];
+            if (arg.startsWith("-")) {
+                if (i + 1 == args.length)
+                    usage();
+                if ("-d".equals(arg))
+                    outdir = new File(args[++i]);
+                else if ("-p".equals(arg))
+                    pkg = args[++i];
+                else if ("-c".equals(arg))
+                    constants = args[++i];
+                else
+                    usage();
+            } else
+                files.add(new File(arg));
+        }
+        if (files.isEmpty())
+            usage();
+        for (final File file : files) {
+            try {
+                generate(outdir, pkg, constants, file);
+            } catch (final ParseException e) {
+                System.err.println(file + ": " + e.getMessage());
+                System.exit(1);
+            } catch (final IOException e) {
+                System.err.println(file + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.rpcgen;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.openxdr.rpcgen.Definition.Case;
+import org.openxdr.rpcgen.Definition.Decl;
+import org.openxdr.rpcgen.Definition.Procedure;
+import org.openxdr.rpcgen.Definition.Version;
+
+// A recursive-descent parser for the XDR language of RFC 4506 section 6,
+// with the program definitions of RFC 5531 section 12.
+final class Parser {
+    private final Lexer lexer;
+
+    private Parser(String src) throws ParseException {
+        lexer = new Lexer(src);
+    }
+
+    // Returns null for void.
+    private Type typeSpecifier() throws ParseException {
+        if (lexer.accept("unsigned")) {
+            if (lexer.accept("hyper"))
+                return new Type.Basic(Type.Kind.UHYPER);
+            if (!lexer.accept("int"))
+                lexer.accept("long");
+            return new Type.Basic(Type.Kind.UINT);
+        }
+        if (lexer.accept("int") || lexer.accept("long"))
+            return new Type.Basic(Type.Kind.INT);
+        if (lexer.accept("hyper"))
+            return new Type.Basic(Type.Kind.HYPER);
+        if (lexer.accept("float"))
+            return new Type.Basic(Type.Kind.FLOAT);
+        if (lexer.accept("double"))
+            return new Type.Basic(Type.Kind.DOUBLE);
+        if (lexer.accept("bool"))
+            return new Type.Basic(Type.Kind.BOOL);
+        if (lexer.accept("void"))
+            return null;
+        if (lexer.is("quadruple"))
+            throw lexer.error("unsupported type '" + lexer.getText() + "'");
+        // The C style "struct name", naming a type defined elsewhere.
+        if (lexer.accept("enum") || lexer.accept("struct")
+                || lexer.accept("union")) {
+            if (lexer.is("{"))
+                throw lexer.error("unsupported anonymous type");
+        }
+        return new Type.Named(lexer.ident());
+    }
+
+    // The optional size between angle brackets, or null if there is none.
+    private String maxsize() throws ParseException {
+        lexer.expect("<");
+        String max = null;
+        if (!lexer.is(">"))
+            max = lexer.value();
+        lexer.expect(">");
+        return max;
+    }
+
+    private Decl declaration() throws ParseException {
+        if (lexer.accept("opaque")) {
+            final String name = lexer.ident();
+            if (lexer.accept("[")) {
+                final String size = lexer.value();
+                lexer.expect("]");
+                return new Decl(name, new Type.Opaque(true, size));
+            }
+            return new Decl(name, new Type.Opaque(false, maxsize()));
+        }
+        if (lexer.accept("string")) {
+            final String name = lexer.ident();
+            return new Decl(name, new Type.Str(maxsize()));
+        }
+        final Type type = typeSpecifier();
+        if (null == type)
+            return new Decl(null, null);
+        if (lexer.accept("*"))
+            return new Decl(lexer.ident(), new Type.Optional(type));
+        final String name = lexer.ident();
+        if (lexer.accept("[")) {
+            final String size = lexer.value();
+            lexer.expect("]");
+            return new Decl(name, new Type.Array(type, true, size));
+        }
+        if (lexer.is("<"))
+            return new Decl(name, new Type.Array(type, false, maxsize()));
+        return new Decl(name, type);
+    }
+
+    private Definition.Enum enumBody(String name) throws ParseException {
+        final Definition.Enum def = new Definition.Enum(name);
+        lexer.expect("{");
+        do {
+            def.names.add(lexer.ident());
+            lexer.expect("=");
+            def.values.add(lexer.value());
+        } while (lexer.accept(","));
+        lexer.expect("}");
+        return def;
+    }
+
+    private Definition.Struct structBody(String name) throws ParseException {
+        final Definition.Struct def = new Definition.Struct(name);
+        lexer.expect("{");
+        do {
+            final Decl decl = declaration();
+            if (null != decl.type)
+                def.fields.add(decl);
+            lexer.expect(";");
+        } while (!lexer.accept("}"));
+        return def;
+    }
+
+    private Definition.Union unionBody(String name) throws ParseException {
+        final Definition.Union def = new Definition.Union(name);
+        lexer.expect("switch");
+        lexer.expect("(");
+        def.discriminant = declaration();
+        lexer.expect(")");
+        lexer.expect("{");
+        while (lexer.is("case")) {
+            final Case arm = new Case();
+            while (lexer.accept("case")) {
+                arm.values.add(lexer.value());
+                lexer.expect(":");
+            }
+            arm.decl = declaration();
+            lexer.expect(";");
+            def.cases.add(arm);
+        }
+        if (lexer.accept("default")) {
+            lexer.expect(":");
+            def.def = new Case();
+            def.def.decl = declaration();
+            lexer.expect(";");
+        }
+        lexer.expect("}");
+        return def;
+    }
+
+    private Definition.Program program() throws ParseException {
+        final Definition.Program def = new Definition.Program(lexer.ident());
+        lexer.expect("{");
+        do {
+            lexer.expect("version");
+            final Version version = new Version(lexer.ident());
+            lexer.expect("{");
+            do {
+                final Type result = typeSpecifier();
+                final Procedure proc = new Procedure(lexer.ident(), result);
+                lexer.expect("(");
+                do {
+                    final Type arg = typeSpecifier();
+                    if (null != arg)
+                        proc.args.add(arg);
+                } while (lexer.accept(","));
+                lexer.expect(")");
+                lexer.expect("=");
+                proc.value = lexer.value();
+                lexer.expect(";");
+                version.procedures.add(proc);
+            } while (!lexer.accept("}"));
+            lexer.expect("=");
+            version.value = lexer.value();
+            lexer.expect(";");
+            def.versions.add(version);
+        } while (!lexer.accept("}"));
+        lexer.expect("=");
+        def.value = lexer.value();
+        return def;
+    }
+
+    private Definition definition() throws ParseException {
+        final Definition def;
+        if (lexer.accept("typedef")) {
+            final Decl decl = declaration();
+            if (null == decl.type)
+                throw lexer.error("void typedef");
+            def = new Definition.Typedef(decl);
+        } else if (lexer.accept("enum"))
+            def = enumBody(lexer.ident());
+        else if (lexer.accept("struct"))
+            def = structBody(lexer.ident());
+        else if (lexer.accept("union"))
+            def = unionBody(lexer.ident());
+        else if (lexer.accept("const")) {
+            final String name = lexer.ident();
+            lexer.expect("=");
+            def = new Definition.Const(name, lexer.value());
+        } else if (lexer.accept("program"))
+            def = program();
+        else
+            throw lexer.error("unexpected '" + lexer.getText() + "'");
+        lexer.expect(";");
+        return def;
+    }
+
+    static List<Definition> parse(String src) throws ParseException {
+        final Parser parser = new Parser(src);
+        final List<Definition> defs = new ArrayList<Definition>();
+        while (Lexer.Token.EOF != parser.lexer.getToken())
+            defs.add(parser.definition());
+        // Defined ahead of the definitions that may refer to them.
+        int i = 0;
+        for (final Map.Entry<String, String> define : parser.lexer
+                .getDefines().entrySet())
+            defs.add(i++, new Definition.Const(define.getKey(), define
+                    .getValue()));
+        return defs;
+    }
+}
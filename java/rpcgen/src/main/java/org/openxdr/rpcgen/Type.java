@@ -0,0 +1,89 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.rpcgen;
+
+// The type of an XDR declaration. Sizes are kept as written, either a number
+// or the name of a constant, and resolved by the generator.
+abstract class Type {
+
+    enum Kind {
+        INT("int", "Integer", "XdrInt"), UINT("int", "Integer", "XdrUInt"), HYPER(
+                "long", "Long", "XdrHyper"), UHYPER("long", "Long", "XdrUHyper"), FLOAT(
+                "float", "Float", "XdrFloat"), DOUBLE("double", "Double",
+                "XdrDouble"), BOOL("boolean", "Boolean", "XdrBool");
+
+        final String javaType;
+        final String boxedType;
+        final String codec;
+
+        Kind(String javaType, String boxedType, String codec) {
+            this.javaType = javaType;
+            this.boxedType = boxedType;
+            this.codec = codec;
+        }
+    }
+
+    static final class Basic extends Type {
+        final Kind kind;
+
+        Basic(Kind kind) {
+            this.kind = kind;
+        }
+    }
+
+    static final class Str extends Type {
+        final String max;
+
+        Str(String max) {
+            this.max = max;
+        }
+    }
+
+    static final class Opaque extends Type {
+        final boolean fixed;
+        final String size;
+
+        Opaque(boolean fixed, String size) {
+            this.fixed = fixed;
+            this.size = size;
+        }
+    }
+
+    static final class Named extends Type {
+        final String name;
+
+        Named(String name) {
+            this.name = name;
+        }
+    }
+
+    static final class Array extends Type {
+        final Type elem;
+        final boolean fixed;
+        final String size;
+
+        Array(Type elem, boolean fixed, String size) {
+            this.elem = elem;
+            this.fixed = fixed;
+            this.size = size;
+        }
+    }
+
+    static final class Optional extends Type {
+        final Type elem;
+
+        Optional(Type elem) {
+            this.elem = elem;
+        }
+    }
+}
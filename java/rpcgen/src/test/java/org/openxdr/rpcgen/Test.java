@@ -0,0 +1,252 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.rpcgen;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import junit.framework.TestCase;
+
+import org.openxdr.Codec;
+
+public final class Test extends TestCase {
+
+    private static String resource(String name) throws IOException {
+        final InputStream in = Test.class.getResourceAsStream("/" + name);
+        try {
+            final StringBuilder sb = new StringBuilder();
+            final byte[] buf = new byte[4096];
+            int n;
+            while (0 < (n = in.read(buf)))
+                sb.append(new String(buf, 0, n, "UTF-8"));
+            return sb.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void delete(File file) {
+        final File[] children = file.listFiles();
+        if (null != children)
+            for (final File child : children)
+                delete(child);
+        file.delete();
+    }
+
+    // Writes the classes to the package directory and compiles them into
+    // dir, returning a loader for them.
+    private static ClassLoader compile(File dir, String pkg,
+            Map<String, String> classes) throws Exception {
+        final File pkgDir = new File(dir, pkg.replace('.', File.separatorChar));
+        assertTrue(pkgDir.mkdirs());
+        final List<String> args = new ArrayList<String>();
+        args.add("-classpath");
+        args.add(new File(Codec.class.getProtectionDomain().getCodeSource()
+                .getLocation().toURI()).getPath());
+        args.add("-d");
+        args.add(dir.getPath());
+        for (final Map.Entry<String, String> entry : classes.entrySet()) {
+            final File file = new File(pkgDir, entry.getKey() + ".java");
+            final java.io.Writer out = new java.io.OutputStreamWriter(
+                    new java.io.FileOutputStream(file), "UTF-8");
+            out.write(entry.getValue());
+            out.close();
+            args.add(file.getPath());
+        }
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, null, null, args
+                .toArray(new String[args.size()])));
+        return new URLClassLoader(new URL[] { dir.toURI().toURL() },
+                Test.class.getClassLoader());
+    }
+
+    private static File tempDir() throws IOException {
+        final File dir = File.createTempFile("rpcgen", "");
+        dir.delete();
+        return dir;
+    }
+
+    private static Object newInstance(ClassLoader loader, String name)
+            throws Exception {
+        return loader.loadClass(name).getConstructor().newInstance();
+    }
+
+    private static void set(Object obj, String name, Object val)
+            throws Exception {
+        obj.getClass().getField(name).set(obj, val);
+    }
+
+    private static Object get(Object obj, String name) throws Exception {
+        return obj.getClass().getField(name).get(obj);
+    }
+
+    public final void testCamel() {
+        assertEquals("NfsProt", Main.camel("nfs_prot.x"));
+        assertEquals("Sample", Main.camel("sample.x"));
+    }
+
+    public final void testParseError() throws IOException {
+        try {
+            Main.generate("", "C", "bad.x", "struct foo { int; };");
+            fail();
+        } catch (final ParseException e) {
+        }
+        try {
+            Main.generate("", "C", "bad.x", "struct foo { bar b; };");
+            fail();
+        } catch (final ParseException e) {
+            assertEquals("unknown type 'bar'", e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public final void testRoundTrip() throws Exception {
+        final Map<String, String> classes = Main.generate("sample", "Sample",
+                "sample.x", resource("sample.x"));
+        assertTrue(classes.containsKey("status"));
+        assertTrue(classes.containsKey("Sample"));
+
+        final File dir = tempDir();
+        try {
+            final ClassLoader loader = compile(dir, "sample", classes);
+            final Class<?> constants = loader.loadClass("sample.Sample");
+            assertEquals(16, constants.getField("MAXNAME").getInt(null));
+            assertEquals(0x20000099, constants.getField("SAMPLE_PROG")
+                    .getInt(null));
+            assertEquals(1, constants.getField("LIST").getInt(null));
+
+            final Class<?> status = loader.loadClass("sample.status");
+            final Object ok = status.getField("OK").get(null);
+
+            final Object second = newInstance(loader, "sample.entry");
+            set(second, "file", "b");
+            set(second, "counts", new int[0]);
+            set(second, "aliases", new String[0]);
+            final Object first = newInstance(loader, "sample.entry");
+            set(first, "file", "a");
+            set(first, "cookie", Long.MAX_VALUE);
+            set(first, "counts", new int[] { 1, 2, 3 });
+            set(first, "aliases", new String[] { "x", "yz" });
+            set(first, "next", second);
+
+            final Object res = newInstance(loader, "sample.result");
+            set(res, "stat", ok);
+            set(res, "head", first);
+            final Object extra = newInstance(loader, "sample.maybe");
+            set(extra, "present", true);
+            set(extra, "value", 1.5);
+
+            final Object packet = newInstance(loader, "sample.packet");
+            set(packet, "h", new byte[8]);
+            set(packet, "data", new byte[] { 1, 2, 3, 4, 5 });
+            set(packet, "scale", new float[] { 0.5f, 2f });
+            set(packet, "res", res);
+            set(packet, "extra", extra);
+
+            final Field field = packet.getClass().getField("CODEC");
+            final Codec<Object> codec = (Codec<Object>) field.get(null);
+            final int size = codec.size(packet);
+            final ByteBuffer buf = ByteBuffer.allocate(size);
+            codec.encode(buf, packet);
+            assertEquals(size, buf.position());
+            buf.flip();
+            final Object copy = codec.decode(buf);
+            assertFalse(buf.hasRemaining());
+
+            final Object copyRes = get(copy, "res");
+            assertSame(ok, get(copyRes, "stat"));
+            final Object head = get(copyRes, "head");
+            assertEquals("a", get(head, "file"));
+            assertEquals(Long.MAX_VALUE, get(head, "cookie"));
+            assertEquals(3, ((int[]) get(head, "counts")).length);
+            assertEquals("yz", ((String[]) get(head, "aliases"))[1]);
+            assertEquals("b", get(get(head, "next"), "file"));
+            assertNull(get(get(head, "next"), "next"));
+            assertEquals(1.5, get(get(copy, "extra"), "value"));
+            assertEquals(5, ((byte[]) get(copy, "data")).length);
+
+            final Method encode = loader.loadClass("sample.name").getMethod(
+                    "encode", ByteBuffer.class, String.class);
+            try {
+                encode.invoke(null, ByteBuffer.allocate(64),
+                        "a name longer than sixteen");
+                fail();
+            } catch (final java.lang.reflect.InvocationTargetException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+
+            // A count that the buffer cannot hold is refused before the
+            // array is allocated.
+            final Method decode = loader.loadClass("sample.handles")
+                    .getMethod("decode", ByteBuffer.class);
+            final ByteBuffer huge = ByteBuffer.allocate(12);
+            huge.putInt(0, Integer.MAX_VALUE);
+            try {
+                decode.invoke(null, huge);
+                fail();
+            } catch (final java.lang.reflect.InvocationTargetException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+            huge.putInt(0, 1).rewind();
+            assertEquals(1, ((byte[][]) decode.invoke(null, huge)).length);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    // The .x files shipped with the ONC RPC library, which use procedures
+    // repeated across versions, "struct name" types, netobj, "%#define"
+    // bounds, and fields named after their own types.
+    public final void testRpcsvc() throws Exception {
+        final String[] names = { "rstat", "nfs_prot", "nlm_prot", "sm_inter" };
+        final File dir = tempDir();
+        try {
+            final ClassLoader[] loaders = new ClassLoader[names.length];
+            for (int i = 0; i < names.length; ++i) {
+                final String pkg = "rpcsvc." + names[i];
+                final String constants = Main.camel(names[i]) + "Constants";
+                loaders[i] = compile(dir, pkg, Main.generate(pkg, constants,
+                        names[i] + ".x", resource(names[i] + ".x")));
+            }
+
+            final Class<?> rstat = loaders[0]
+                    .loadClass("rpcsvc.rstat.RstatConstants");
+            assertEquals(3, rstat.getField("RSTATVERS_TIME").getInt(null));
+            assertEquals(1, rstat.getField("RSTATPROC_STATS").getInt(null));
+
+            final Object res = newInstance(loaders[1],
+                    "rpcsvc.nfs_prot.diropres");
+            assertNull(get(res, "diropres_"));
+
+            final Class<?> nlm = loaders[2]
+                    .loadClass("rpcsvc.nlm_prot.NlmProtConstants");
+            assertEquals(1025, nlm.getField("MAXNAMELEN").getInt(null));
+            loaders[2].loadClass("rpcsvc.nlm_prot.netobj");
+        } finally {
+            delete(dir);
+        }
+    }
+}
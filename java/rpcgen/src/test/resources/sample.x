@@ -0,0 +1,55 @@
+/*
+ * Exercises each construct the generator supports.
+ */
+const MAXNAME = 16;
+const MAXDATA = 64;
+
+enum status {
+    OK = 0,
+    PERM = 1,
+    NOENT = 2,
+    IO = 5
+};
+
+typedef string name<MAXNAME>;
+typedef opaque handle[8];
+typedef handle handles<>;
+
+struct entry {
+    name file;
+    unsigned hyper cookie;
+    int counts<>;
+    name aliases<4>;
+    entry *next;
+};
+
+union result switch (status stat) {
+case OK:
+    entry *head;
+case NOENT:
+case IO:
+    void;
+default:
+    int code;
+};
+
+union maybe switch (bool present) {
+case TRUE:
+    double value;
+case FALSE:
+    void;
+};
+
+struct packet {
+    handle h;
+    opaque data<MAXDATA>;
+    float scale[2];
+    result res;
+    maybe extra;
+};
+
+program SAMPLE_PROG {
+    version SAMPLE_VERS {
+        result LIST(name) = 1;
+    } = 2;
+} = 0x20000099;
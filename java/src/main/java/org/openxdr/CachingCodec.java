@@ -0,0 +1,248 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+// Decorates a codec with a bounded cache of decoded values, keyed by their
+// encoded bytes. A value already in the cache is found by hashing and
+// comparing the bytes in place, so a hit allocates nothing, and repeated
+// values share one heap copy. The cache is split into segments, each with
+// its own lock and CLOCK eviction. Decoded values are shared, so they must
+// not be modified.
+public final class CachingCodec<T> implements SizedCodec<T> {
+    private static final class Segment<T> {
+        // Encoded bytes of each entry, as big-endian words.
+        final int[][] keys;
+        final Object[] values;
+        final int[] hashes;
+        final boolean[] refs;
+        // Open-addressed with linear probing: entry index + 1, or 0 if empty.
+        final int[] table;
+        final int mask;
+        int size;
+        int hand;
+
+        Segment(int capacity) {
+            keys = new int[capacity][];
+            values = new Object[capacity];
+            hashes = new int[capacity];
+            refs = new boolean[capacity];
+            table = new int[Integer.highestOneBit(capacity) << 2];
+            mask = table.length - 1;
+        }
+
+        private boolean matches(int e, int hash, ByteBuffer buf, int pos,
+                int len) {
+            if (hash != hashes[e])
+                return false;
+            final int[] key = keys[e];
+            if (key.length != len >> 2)
+                return false;
+            for (int i = 0; i < key.length; ++i)
+                if (key[i] != buf.getInt(pos + (i << 2)))
+                    return false;
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        final synchronized T get(int hash, ByteBuffer buf, int pos, int len) {
+            int i = hash & mask;
+            for (int e; 0 != (e = table[i]); i = i + 1 & mask)
+                if (matches(e - 1, hash, buf, pos, len)) {
+                    refs[e - 1] = true;
+                    return (T) values[e - 1];
+                }
+            return null;
+        }
+
+        // Removes the entry's slot, shifting back any later entries in its
+        // probe sequence.
+        private void unlink(int e) {
+            int i = hashes[e] & mask;
+            while (e + 1 != table[i])
+                i = i + 1 & mask;
+            for (int j = i + 1 & mask; 0 != table[j]; j = j + 1 & mask) {
+                final int k = hashes[table[j] - 1] & mask;
+                if (i < j ? k <= i || j < k : k <= i && j < k) {
+                    table[i] = table[j];
+                    i = j;
+                }
+            }
+            table[i] = 0;
+        }
+
+        // Adds the value unless another thread got there first, returning
+        // whichever is cached. Entries start unreferenced, so values seen only
+        // once are the first to be evicted.
+        @SuppressWarnings("unchecked")
+        final synchronized T put(int hash, int[] key, T val,
+                LongAdder evictions) {
+            int i = hash & mask;
+            for (int e; 0 != (e = table[i]); i = i + 1 & mask)
+                if (hash == hashes[e - 1] && Arrays.equals(key, keys[e - 1]))
+                    return (T) values[e - 1];
+            int e;
+            if (size < keys.length)
+                e = size++;
+            else {
+                while (refs[hand]) {
+                    refs[hand] = false;
+                    hand = (hand + 1) % keys.length;
+                }
+                e = hand;
+                hand = (hand + 1) % keys.length;
+                unlink(e);
+                evictions.increment();
+                // The probe sequence may have shifted into the free slot.
+                i = hash & mask;
+                while (0 != table[i])
+                    i = i + 1 & mask;
+            }
+            keys[e] = key;
+            values[e] = val;
+            hashes[e] = hash;
+            refs[e] = false;
+            table[i] = e + 1;
+            return val;
+        }
+
+        final synchronized void clear() {
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+            Arrays.fill(table, 0);
+            size = 0;
+            hand = 0;
+        }
+    }
+
+    private final Codec<T> codec;
+    private final int fixedSize;
+    private final int maxKeySize;
+    private final Segment<T>[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static int hash(ByteBuffer buf, int pos, int len) {
+        int h = len;
+        for (int i = 0; i < len; i += 4)
+            h = 31 * h + buf.getInt(pos + i);
+        // Spread into the high bits, which select the segment.
+        h *= 0x9e3779b9;
+        return h ^ h >>> 16;
+    }
+
+    // Returns the number of bytes in the encoded value at pos, or -1 if it
+    // should not be cached.
+    private int extent(ByteBuffer buf, int pos) {
+        final int avail = buf.limit() - pos;
+        int len = fixedSize;
+        if (len < 0) {
+            if (avail < XdrInt.SIZE)
+                return -1;
+            final int n = buf.getInt(pos);
+            if (n < 0 || maxKeySize < n)
+                return -1;
+            len = XdrInt.SIZE + Utility.aligned(n);
+        }
+        return len <= maxKeySize && len <= avail ? len : -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Segment<T>[] newSegments(int n) {
+        return (Segment<T>[]) new Segment<?>[n];
+    }
+
+    // A fixedSize of -1 means values are variable-length opaques or strings,
+    // prefixed by their length.
+    CachingCodec(Codec<T> codec, int fixedSize, int capacity, int maxKeySize) {
+        if (capacity <= 0 || maxKeySize < 0
+                || -1 != fixedSize && (fixedSize <= 0 || 0 != fixedSize % 4))
+            throw new IllegalArgumentException();
+        this.codec = codec;
+        this.fixedSize = fixedSize;
+        this.maxKeySize = maxKeySize;
+        // At least eight entries per segment, and at most sixteen segments.
+        int n = 1;
+        while (n < 16 && 16 * n <= capacity)
+            n <<= 1;
+        segments = CachingCodec.<T> newSegments(n);
+        for (int i = 0; i < n; ++i)
+            segments[i] = new Segment<T>((capacity + n - 1) / n);
+    }
+
+    public final void encode(ByteBuffer buf, T val)
+            throws CharacterCodingException {
+        codec.encode(buf, val);
+    }
+
+    public final T decode(ByteBuffer buf) throws CharacterCodingException {
+        final int pos = buf.position();
+        final int len = extent(buf, pos);
+        if (len < 0)
+            return codec.decode(buf);
+        final int hash = hash(buf, pos, len);
+        final Segment<T> seg = segments[hash >>> 24 & segments.length - 1];
+        final T hit = seg.get(hash, buf, pos, len);
+        if (null != hit) {
+            hits.increment();
+            buf.position(pos + len);
+            return hit;
+        }
+        misses.increment();
+        final T val = codec.decode(buf);
+        if (pos + len != buf.position())
+            return val; // Not the extent expected.
+        final int[] key = new int[len >> 2];
+        for (int i = 0; i < key.length; ++i)
+            key[i] = buf.getInt(pos + (i << 2));
+        return seg.put(hash, key, val, evictions);
+    }
+
+    public final int size(T val) {
+        return codec.size(val);
+    }
+
+    public final int getFixedSize() {
+        return Utility.fixedSize(codec);
+    }
+
+    public final int getMaxSize() {
+        return Utility.maxSize(codec);
+    }
+
+    public final void clear() {
+        for (final Segment<T> seg : segments)
+            seg.clear();
+    }
+
+    public final long getHitCount() {
+        return hits.sum();
+    }
+
+    public final long getMissCount() {
+        return misses.sum();
+    }
+
+    public final long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public final Codec<T> getCodec() {
+        return codec;
+    }
+}
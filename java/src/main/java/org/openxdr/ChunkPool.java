@@ -0,0 +1,85 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class ChunkPool {
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+    public static final int DEFAULT_MAX_CHUNKS = 1024;
+
+    private final int chunkSize;
+    private final int maxChunks;
+    private final boolean direct;
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicInteger freeCount = new AtomicInteger();
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? XdrBuffer.allocateDirect(capacity) : XdrBuffer
+                .allocate(capacity);
+    }
+
+    public ChunkPool(int chunkSize, int maxChunks, boolean direct) {
+        // Chunks must hold whole XDR units so that padding stays aligned.
+        if (chunkSize <= 0 || 0 != chunkSize % 4 || maxChunks < 0)
+            throw new IllegalArgumentException();
+        this.chunkSize = chunkSize;
+        this.maxChunks = maxChunks;
+        this.direct = direct;
+    }
+
+    public ChunkPool(int chunkSize, boolean direct) {
+        this(chunkSize, DEFAULT_MAX_CHUNKS, direct);
+    }
+
+    public ChunkPool() {
+        this(DEFAULT_CHUNK_SIZE, false);
+    }
+
+    public final ByteBuffer acquire() {
+        final ByteBuffer buf = free.poll();
+        if (null == buf)
+            return allocate(chunkSize);
+        freeCount.decrementAndGet();
+        buf.clear();
+        return buf;
+    }
+
+    // Values larger than a chunk are given a dedicated buffer of their own,
+    // which is not returned to the pool on release.
+    public final ByteBuffer acquire(int capacity) {
+        return capacity <= chunkSize ? acquire() : allocate(capacity);
+    }
+
+    public final void release(ByteBuffer buf) {
+        if (buf.capacity() != chunkSize || buf.isDirect() != direct
+                || buf.isReadOnly())
+            return;
+        if (maxChunks < freeCount.incrementAndGet()) {
+            freeCount.decrementAndGet();
+            return;
+        }
+        free.offer(buf);
+    }
+
+    public final int getChunkSize() {
+        return chunkSize;
+    }
+
+    public final boolean isDirect() {
+        return direct;
+    }
+}
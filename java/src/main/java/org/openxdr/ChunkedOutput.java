@@ -0,0 +1,290 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public final class ChunkedOutput {
+    // Opaques shorter than this are copied rather than referenced.
+    public static final int DEFAULT_REF_THRESHOLD = 1024;
+
+    private static final ByteBuffer ZEROS = ByteBuffer.wrap(new byte[3])
+            .asReadOnlyBuffer();
+
+    private final ChunkPool pool;
+    private final int refThreshold;
+    // Pooled chunks, released on clear.
+    private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+    // Completed segments of output, in order: runs of chunk bytes
+    // interleaved with referenced buffers and padding.
+    private final List<ByteBuffer> parts = new ArrayList<ByteBuffer>();
+    private ByteBuffer chunk;
+    // Start of the current chunk's bytes not yet in parts.
+    private int mark;
+    // Bytes held by parts.
+    private int sealed;
+
+    private static ByteBuffer view(ByteBuffer buf, int start, int end) {
+        final ByteBuffer view = buf.duplicate();
+        view.limit(end);
+        view.position(start);
+        return view;
+    }
+
+    // Moves the current chunk's pending bytes into parts.
+    private void seal() {
+        final int pos = chunk.position();
+        if (mark < pos) {
+            parts.add(view(chunk, mark, pos));
+            sealed += pos - mark;
+            mark = pos;
+        }
+    }
+
+    private void append(ByteBuffer next) {
+        if (null != chunk) {
+            if (0 == chunk.position()) {
+                chunks.remove(chunks.size() - 1);
+                pool.release(chunk);
+            } else
+                seal();
+        }
+        chunks.add(next);
+        chunk = next;
+        mark = 0;
+    }
+
+    public ChunkedOutput(ChunkPool pool, int refThreshold) {
+        this.pool = pool;
+        this.refThreshold = refThreshold;
+    }
+
+    public ChunkedOutput(ChunkPool pool) {
+        this(pool, DEFAULT_REF_THRESHOLD);
+    }
+
+    public ChunkedOutput() {
+        this(new ChunkPool());
+    }
+
+    private <T> boolean tryEncode(Codec<T> codec, T val)
+            throws CharacterCodingException {
+        final int pos = chunk.position();
+        boolean done = false;
+        try {
+            codec.encode(chunk, val);
+            done = true;
+        } catch (final BufferOverflowException e) {
+        } finally {
+            if (!done)
+                chunk.position(pos); // Rollback.
+        }
+        return done;
+    }
+
+    // Encodes the value into the current chunk without sizing it first. A
+    // value that does not fit is rolled back and encoded again into a fresh
+    // chunk, so no value ever straddles two chunks; one larger than a chunk
+    // goes to a dedicated buffer, doubled until it fits. A codec of fixed
+    // size goes straight to a chunk that can hold it.
+    public final <T> void encode(Codec<T> codec, T val)
+            throws CharacterCodingException {
+        final int fixed = codec instanceof SizedCodec<?>
+                ? ((SizedCodec<?>) codec).getFixedSize() : -1;
+        if (null != chunk && fixed <= chunk.remaining()
+                && tryEncode(codec, val))
+            return;
+        append(pool.acquire(fixed));
+        while (!tryEncode(codec, val))
+            append(pool.acquire(Utility.saturate(2L * chunk.capacity())));
+    }
+
+    // Restores the output to an earlier size, releasing the chunks acquired
+    // since.
+    private void rollback(int nchunks, int nparts, int pos, int mark) {
+        while (nchunks < chunks.size())
+            pool.release(chunks.remove(chunks.size() - 1));
+        while (nparts < parts.size())
+            sealed -= parts.remove(parts.size() - 1).remaining();
+        if (0 == nchunks) {
+            chunk = null;
+            this.mark = 0;
+        } else {
+            chunk = chunks.get(nchunks - 1);
+            chunk.position(pos);
+            this.mark = mark;
+        }
+    }
+
+    // Encodes a variable-length array from the iterator in one pass,
+    // backpatching the count once the elements are written. If maxsize is
+    // exceeded or an element fails to encode, the output is rolled back to
+    // where the array began.
+    public final <T> void encodeVar(Iterator<? extends T> it, Codec<T> codec,
+            int maxsize) throws CharacterCodingException {
+        final int nchunks = chunks.size();
+        final int nparts = parts.size();
+        final int pos = null == chunk ? 0 : chunk.position();
+        final int start = mark;
+        boolean done = false;
+        try {
+            final ByteBuffer head = reserve(XdrInt.SIZE);
+            final int at = head.position();
+            XdrInt.encode(head, 0);
+            int len = 0;
+            for (; it.hasNext(); ++len) {
+                if (maxsize == len)
+                    throw new IllegalArgumentException();
+                encode(codec, it.next());
+            }
+            head.putInt(at, len);
+            done = true;
+        } finally {
+            if (!done)
+                rollback(nchunks, nparts, pos, start);
+        }
+    }
+
+    public final <T> void encodeVar(Iterable<? extends T> val, Codec<T> codec,
+            int maxsize) throws CharacterCodingException {
+        encodeVar(val.iterator(), codec, maxsize);
+    }
+
+    public final <T> void encodeVar(Iterable<? extends T> val, Codec<T> codec)
+            throws CharacterCodingException {
+        encodeVar(val.iterator(), codec, Integer.MAX_VALUE);
+    }
+
+    // Returns the current chunk with at least len bytes remaining, for use
+    // with the static encoders.
+    public final ByteBuffer reserve(int len) {
+        if (null == chunk || chunk.remaining() < len)
+            append(pool.acquire(len));
+        return chunk;
+    }
+
+    // Encodes the remaining bytes of val as a fixed-length opaque. Unless
+    // val is shorter than the reference threshold, it becomes a segment of
+    // its own rather than being copied, so it must not change until the
+    // output has been written; padding comes from a shared zero buffer.
+    public final void encodeRef(ByteBuffer val) {
+        final int len = val.remaining();
+        if (len < refThreshold) {
+            Utility.encodeAlign(reserve(Utility.aligned(len)), val);
+            return;
+        }
+        if (null != chunk)
+            seal();
+        parts.add(val.slice());
+        sealed += len;
+        final int pad = Utility.aligned(len) - len;
+        if (0 < pad) {
+            parts.add(view(ZEROS, 0, pad));
+            sealed += pad;
+        }
+    }
+
+    // Encodes val as a variable-length opaque, its length in the current
+    // chunk and its bytes by reference as for encodeRef.
+    public final void encodeVarRef(ByteBuffer val, int maxsize) {
+        final int len = val.remaining();
+        if (maxsize < len)
+            throw new IllegalArgumentException();
+        XdrInt.encode(reserve(XdrInt.SIZE), len);
+        encodeRef(val);
+    }
+
+    public final void encodeVarRef(ByteBuffer val) {
+        encodeVarRef(val, Integer.MAX_VALUE);
+    }
+
+    public final void encodeVarRef(Opaque val, int maxsize) {
+        encodeVarRef(ByteBuffer.wrap(val.getBuffer(), val.getOffset(), val
+                .getLength()), maxsize);
+    }
+
+    public final void encodeVarRef(Opaque val) {
+        encodeVarRef(val, Integer.MAX_VALUE);
+    }
+
+    public final int size() {
+        return null == chunk ? sealed : sealed + chunk.position() - mark;
+    }
+
+    public final boolean isEmpty() {
+        return 0 == size();
+    }
+
+    // Returns views of the encoded bytes, for a gathering write: one per
+    // chunk, plus one per referenced buffer and its padding. The views are
+    // valid until the output is cleared.
+    public final ByteBuffer[] toBuffers() {
+        final List<ByteBuffer> bufs = new ArrayList<ByteBuffer>(
+                parts.size() + 1);
+        for (final ByteBuffer part : parts)
+            bufs.add(part.duplicate());
+        if (null != chunk && mark < chunk.position())
+            bufs.add(view(chunk, mark, chunk.position()));
+        return bufs.toArray(new ByteBuffer[bufs.size()]);
+    }
+
+    // Writes all of the encoded bytes to the channel, returning the count.
+    // The channel must be blocking, as the write is retried until done.
+    public final long writeTo(GatheringByteChannel channel) throws IOException {
+        Utility.checkBlocking(channel);
+        final ByteBuffer[] bufs = toBuffers();
+        long n = 0;
+        for (int i = 0; i < bufs.length;) {
+            n += channel.write(bufs, i, bufs.length - i);
+            while (i < bufs.length && !bufs[i].hasRemaining())
+                ++i;
+        }
+        return n;
+    }
+
+    // Returns the encoded bytes as one contiguous buffer, copying only when
+    // they span more than one segment.
+    public final ByteBuffer toBuffer() {
+        final ByteBuffer[] bufs = toBuffers();
+        if (1 == bufs.length)
+            return bufs[0];
+        final int size = size();
+        final ByteBuffer buf = pool.isDirect() ? XdrBuffer
+                .allocateDirect(size) : XdrBuffer.allocate(size);
+        for (final ByteBuffer src : bufs)
+            buf.put(src);
+        buf.flip();
+        return buf;
+    }
+
+    public final void clear() {
+        for (final ByteBuffer buf : chunks)
+            pool.release(buf);
+        chunks.clear();
+        parts.clear();
+        chunk = null;
+        mark = 0;
+        sealed = 0;
+    }
+
+    public final ChunkPool getPool() {
+        return pool;
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.Map;
+
+// A union with an enum discriminant. Arms are held in an array indexed by
+// ordinal.
+public final class EnumUnionCodec<T extends Enum<T>> implements
+        Codec<Union<T>> {
+    private final Codec<T> sel;
+    private final Codec<?>[] cases;
+    private final Codec<?> def;
+
+    @SuppressWarnings("unchecked")
+    private Codec<Object> getCodec(T type) {
+        final int i = type.ordinal();
+        Codec<?> codec = i < cases.length ? cases[i] : null;
+        if (null == codec) {
+            if (null == def)
+                throw new IllegalArgumentException();
+            codec = def;
+        }
+        return (Codec<Object>) codec;
+    }
+
+    EnumUnionCodec(Codec<T> sel, Map<T, Codec<?>> cases, Codec<?> def) {
+        int n = 0;
+        for (final T type : cases.keySet())
+            n = Math.max(n, type.ordinal() + 1);
+        this.sel = sel;
+        this.cases = new Codec<?>[n];
+        for (final Map.Entry<T, Codec<?>> entry : cases.entrySet())
+            this.cases[entry.getKey().ordinal()] = entry.getValue();
+        this.def = def;
+    }
+
+    public final void encode(ByteBuffer buf, T type, Object value)
+            throws CharacterCodingException {
+        final Codec<Object> codec = getCodec(type);
+        sel.encode(buf, type);
+        codec.encode(buf, value);
+    }
+
+    // Hands the decoded arm to the visitor instead of wrapping it in a Union.
+    public final <R> R decode(ByteBuffer buf, UnionVisitor<T, R> visitor)
+            throws CharacterCodingException {
+        final T type = sel.decode(buf);
+        return visitor.visit(type, getCodec(type).decode(buf));
+    }
+
+    public final int size(T type, Object value) {
+        return sel.size(type) + getCodec(type).size(value);
+    }
+
+    public final void encode(ByteBuffer buf, Union<T> val)
+            throws CharacterCodingException {
+        encode(buf, val.getType(), val.getValue());
+    }
+
+    public final Union<T> decode(ByteBuffer buf)
+            throws CharacterCodingException {
+        final T type = sel.decode(buf);
+        return new Union<T>(type, getCodec(type).decode(buf));
+    }
+
+    public final int size(Union<T> val) {
+        return size(val.getType(), val.getValue());
+    }
+}
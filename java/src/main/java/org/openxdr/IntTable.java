@@ -0,0 +1,86 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+// Maps int keys to values in constant time. Keys that span a narrow range
+// are looked up directly in an array; sparse keys use an open-addressed hash
+// table.
+final class IntTable<V> {
+    private final int min;
+    private final Object[] dense;
+    private final int[] keys;
+    private final Object[] vals;
+    private final int mask;
+
+    private static int hash(int key) {
+        final int h = key * 0x9e3779b9;
+        return h ^ h >>> 16;
+    }
+
+    IntTable(int[] keys, V[] vals) {
+        if (keys.length != vals.length)
+            throw new IllegalArgumentException();
+        int lo = Integer.MAX_VALUE;
+        int hi = Integer.MIN_VALUE;
+        for (final int key : keys) {
+            lo = Math.min(lo, key);
+            hi = Math.max(hi, key);
+        }
+        final long spread = (long) hi - lo + 1;
+        if (spread <= 4L * keys.length + 16) {
+            min = lo;
+            dense = new Object[keys.length == 0 ? 0 : (int) spread];
+            for (int i = 0; i < keys.length; ++i) {
+                if (null == vals[i] || null != dense[keys[i] - lo])
+                    throw new IllegalArgumentException();
+                dense[keys[i] - lo] = vals[i];
+            }
+            this.keys = null;
+            this.vals = null;
+            mask = 0;
+        } else {
+            min = 0;
+            dense = null;
+            final int capacity = Integer.highestOneBit(keys.length) << 2;
+            this.keys = new int[capacity];
+            this.vals = new Object[capacity];
+            mask = capacity - 1;
+            for (int i = 0; i < keys.length; ++i) {
+                if (null == vals[i])
+                    throw new IllegalArgumentException();
+                int j = hash(keys[i]) & mask;
+                while (null != this.vals[j]) {
+                    if (this.keys[j] == keys[i])
+                        throw new IllegalArgumentException();
+                    j = j + 1 & mask;
+                }
+                this.keys[j] = keys[i];
+                this.vals[j] = vals[i];
+            }
+        }
+    }
+
+    // Returns null if the key is not mapped.
+    @SuppressWarnings("unchecked")
+    final V get(int key) {
+        if (null != dense) {
+            final int i = key - min;
+            return 0 <= i && i < dense.length ? (V) dense[i] : null;
+        }
+        for (int j = hash(key) & mask;; j = j + 1 & mask) {
+            final Object val = vals[j];
+            if (null == val || keys[j] == key)
+                return (V) val;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.Map;
+
+// A union with an int discriminant. Arms are dispatched through a table
+// built once at construction, and the discriminant is never boxed.
+public final class IntUnionCodec implements Codec<Union<Integer>> {
+    private final IntCodec sel;
+    private final IntTable<Codec<?>> cases;
+    private final Codec<?> def;
+
+    @SuppressWarnings("unchecked")
+    private Codec<Object> getCodec(int type) {
+        Codec<?> codec = cases.get(type);
+        if (null == codec) {
+            if (null == def)
+                throw new IllegalArgumentException();
+            codec = def;
+        }
+        return (Codec<Object>) codec;
+    }
+
+    IntUnionCodec(IntCodec sel, Map<Integer, Codec<?>> cases, Codec<?> def) {
+        final int[] types = new int[cases.size()];
+        final Codec<?>[] codecs = new Codec<?>[cases.size()];
+        int i = 0;
+        for (final Map.Entry<Integer, Codec<?>> entry : cases.entrySet()) {
+            types[i] = entry.getKey();
+            codecs[i] = entry.getValue();
+            ++i;
+        }
+        this.sel = sel;
+        this.cases = new IntTable<Codec<?>>(types, codecs);
+        this.def = def;
+    }
+
+    public final void encode(ByteBuffer buf, int type, Object value)
+            throws CharacterCodingException {
+        final Codec<Object> codec = getCodec(type);
+        sel.encode(buf, type);
+        codec.encode(buf, value);
+    }
+
+    // Hands the decoded arm to the visitor instead of wrapping it in a Union.
+    public final <R> R decode(ByteBuffer buf, IntUnionVisitor<R> visitor)
+            throws CharacterCodingException {
+        final int type = sel.decode(buf);
+        return visitor.visit(type, getCodec(type).decode(buf));
+    }
+
+    public final int size(int type, Object value) {
+        return sel.size(type) + getCodec(type).size(value);
+    }
+
+    public final void encode(ByteBuffer buf, Union<Integer> val)
+            throws CharacterCodingException {
+        encode(buf, val.getType(), val.getValue());
+    }
+
+    public final Union<Integer> decode(ByteBuffer buf)
+            throws CharacterCodingException {
+        final int type = sel.decode(buf);
+        return new Union<Integer>(type, getCodec(type).decode(buf));
+    }
+
+    public final int size(Union<Integer> val) {
+        return size(val.getType(), val.getValue());
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+// Decodes a file of consecutive XDR values through a memory-mapped window,
+// which is remapped as reading crosses its end. A value that straddles the
+// end of the window is decoded again from a window starting at its first
+// byte, so files of any size are read without copying to the heap.
+public final class MappedReader {
+    public static final int DEFAULT_WINDOW = 1 << 26;
+
+    private final FileChannel channel;
+    private final long size;
+    private int window;
+    // File offset of the window's first byte.
+    private long base;
+    private ByteBuffer buf;
+
+    private void map(long pos) throws IOException {
+        final int len = (int) Math.min(window, size - pos);
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+        buf.order(ByteOrder.BIG_ENDIAN);
+        base = pos;
+    }
+
+    public MappedReader(FileChannel channel, int window) throws IOException {
+        if (window <= 0)
+            throw new IllegalArgumentException();
+        this.channel = channel;
+        this.size = channel.size();
+        this.window = window;
+        map(0);
+    }
+
+    public MappedReader(FileChannel channel) throws IOException {
+        this(channel, DEFAULT_WINDOW);
+    }
+
+    public final <T> T read(Codec<T> codec) throws IOException {
+        final long pos = position();
+        for (;;) {
+            try {
+                return codec.decode(buf);
+            } catch (final BufferUnderflowException e) {
+                buf.position((int) (pos - base)); // Rollback.
+                if (size == base + buf.limit())
+                    throw new EOFException();
+                // Grow the window if the value does not fit in a whole one.
+                if (pos == base) {
+                    if (Integer.MAX_VALUE == window)
+                        throw new StreamCorruptedException("value exceeds "
+                                + window + " bytes");
+                    window = (int) Math.min(2L * window, Integer.MAX_VALUE);
+                }
+                map(pos);
+            }
+        }
+    }
+
+    public final boolean hasRemaining() {
+        return position() < size;
+    }
+
+    public final long position() {
+        return base + buf.position();
+    }
+
+    public final void seek(long pos) throws IOException {
+        if (pos < 0 || size < pos)
+            throw new IllegalArgumentException();
+        if (base <= pos && pos <= base + buf.limit())
+            buf.position((int) (pos - base));
+        else
+            map(pos);
+    }
+
+    public final long size() {
+        return size;
+    }
+
+    public final FileChannel getChannel() {
+        return channel;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Encodes consecutive XDR values into a file through a memory-mapped window.
+// Mapping beyond the end of the file extends it, so on flush the file is
+// trimmed back to its size when the writer was opened or the end of the
+// bytes written, whichever is greater.
+public final class MappedWriter {
+    public static final int DEFAULT_WINDOW = MappedReader.DEFAULT_WINDOW;
+
+    private final FileChannel channel;
+    private final int window;
+    // File offset of the window's first byte.
+    private long base;
+    private MappedByteBuffer buf;
+    // The file size that flush keeps.
+    private long extent;
+
+    private void map(long pos, int len) throws IOException {
+        buf = channel.map(FileChannel.MapMode.READ_WRITE, pos, Math.max(
+                window, len));
+        buf.order(ByteOrder.BIG_ENDIAN);
+        base = pos;
+    }
+
+    // The channel must be open for reading and writing. Writing starts at
+    // the given file offset.
+    public MappedWriter(FileChannel channel, long pos, int window)
+            throws IOException {
+        if (pos < 0 || window <= 0)
+            throw new IllegalArgumentException();
+        this.channel = channel;
+        this.window = window;
+        this.base = pos;
+        this.extent = channel.size();
+    }
+
+    public MappedWriter(FileChannel channel, int window) throws IOException {
+        this(channel, channel.size(), window);
+    }
+
+    public MappedWriter(FileChannel channel) throws IOException {
+        this(channel, DEFAULT_WINDOW);
+    }
+
+    // Encodes the value into the current window. A value that does not fit
+    // is rolled back and encoded again into a window starting at its first
+    // byte.
+    public final <T> void write(Codec<T> codec, T val) throws IOException {
+        final long pos = position();
+        if (null != buf) {
+            try {
+                codec.encode(buf, val);
+                return;
+            } catch (final BufferOverflowException e) {
+                buf.position((int) (pos - base)); // Rollback.
+            }
+        }
+        map(pos, codec.size(val));
+        codec.encode(buf, val);
+    }
+
+    public final long position() {
+        return null == buf ? base : base + buf.position();
+    }
+
+    // Forces the bytes written to storage and trims any extension made by
+    // mapping past them. The window is dropped, as it may now extend past
+    // the end of the file.
+    public final void flush() throws IOException {
+        if (null != buf) {
+            buf.force();
+            base = position();
+            buf = null;
+        }
+        extent = Math.max(extent, base);
+        if (extent < channel.size())
+            channel.truncate(extent);
+    }
+
+    public final FileChannel getChannel() {
+        return channel;
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+
+// Decodes a value from bytes that arrive in arbitrary pieces, such as reads
+// from a non-blocking channel. Each call consumes what it can and keeps its
+// place, including inside nested values, so no byte is decoded twice.
+public interface PartialDecoder<T> {
+    // Returns true once the value is complete; false means that buf was
+    // exhausted and more bytes are needed. A complete decoder consumes
+    // nothing further until it is reset.
+    boolean decode(ByteBuffer buf) throws CharacterCodingException;
+
+    T getValue();
+
+    void reset();
+}
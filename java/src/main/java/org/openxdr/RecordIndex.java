@@ -0,0 +1,110 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.function.ToIntFunction;
+
+// A memory-mapped index of the values in a file read by MappedReader. The
+// index file holds the stride and value count, followed by the offset of
+// every stride-th value, all in XDR.
+public final class RecordIndex {
+    static final int HEADER = XdrInt.SIZE + XdrHyper.SIZE;
+
+    private final int stride;
+    private final long count;
+    private final int entries;
+    private final ByteBuffer buf;
+
+    static long entries(long count, int stride) {
+        return (count + stride - 1) / stride;
+    }
+
+    private long entry(int i) {
+        return buf.getLong(HEADER + XdrHyper.SIZE * i);
+    }
+
+    public RecordIndex(FileChannel channel) throws IOException {
+        final long size = channel.size();
+        if (size < HEADER)
+            throw new StreamCorruptedException("truncated index");
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        buf.order(ByteOrder.BIG_ENDIAN);
+        stride = buf.getInt(0);
+        count = buf.getLong(XdrInt.SIZE);
+        if (stride <= 0 || count < 0
+                || size < HEADER + XdrHyper.SIZE * entries(count, stride))
+            throw new StreamCorruptedException("invalid index");
+        entries = (int) entries(count, stride);
+    }
+
+    // Positions the reader at value n, decoding at most stride - 1 values
+    // from the nearest indexed one.
+    public final <T> void seek(MappedReader reader, Codec<T> codec, long n)
+            throws IOException {
+        if (n < 0 || count <= n)
+            throw new IndexOutOfBoundsException();
+        reader.seek(entry((int) (n / stride)));
+        for (long i = n % stride; 0 < i; --i)
+            reader.read(codec);
+    }
+
+    // Returns the number of the first value for which order is not negative,
+    // or the count if there is none, and positions the reader at it. The
+    // values must be sorted with respect to order, which typically compares
+    // a key field of each value with the one sought.
+    public final <T> long search(MappedReader reader, Codec<T> codec,
+            ToIntFunction<? super T> order) throws IOException {
+        if (0 == count)
+            return 0;
+        // Binary search for the first indexed value not ordered before.
+        int lo = 0, hi = entries;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            reader.seek(entry(mid));
+            if (order.applyAsInt(reader.read(codec)) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        // Then scan forward from the indexed value preceding it.
+        final int from = 0 == lo ? 0 : lo - 1;
+        reader.seek(entry(from));
+        for (long n = (long) from * stride; n < count; ++n) {
+            final long pos = reader.position();
+            if (0 <= order.applyAsInt(reader.read(codec))) {
+                reader.seek(pos);
+                return n;
+            }
+        }
+        return count;
+    }
+
+    public final long offset(long n) {
+        if (n < 0 || count <= n || 0 != n % stride)
+            throw new IndexOutOfBoundsException();
+        return entry((int) (n / stride));
+    }
+
+    public final long getCount() {
+        return count;
+    }
+
+    public final int getStride() {
+        return stride;
+    }
+}
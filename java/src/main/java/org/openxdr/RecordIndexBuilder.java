@@ -0,0 +1,108 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Builds a RecordIndex incrementally as values are appended. An existing
+// index is extended rather than replaced, so appending may resume after the
+// index has been flushed and reopened.
+public final class RecordIndexBuilder {
+    public static final int DEFAULT_STRIDE = 64;
+
+    private static final int WINDOW = 1 << 16;
+
+    private final FileChannel channel;
+    private final int stride;
+    private final ByteBuffer header;
+    private final MappedWriter writer;
+    private long count;
+
+    // The channel must be open for reading and writing.
+    public RecordIndexBuilder(FileChannel channel, int stride)
+            throws IOException {
+        if (stride <= 0)
+            throw new IllegalArgumentException();
+        this.channel = channel;
+        this.stride = stride;
+        this.header = XdrBuffer.allocate(RecordIndex.HEADER);
+        if (0 < channel.size()) {
+            while (header.hasRemaining())
+                if (channel.read(header, header.position()) < 0)
+                    throw new EOFException();
+            header.flip();
+            if (stride != XdrInt.decode(header))
+                throw new StreamCorruptedException("index stride differs");
+            count = XdrHyper.decode(header);
+        }
+        this.writer = new MappedWriter(channel, RecordIndex.HEADER
+                + XdrHyper.SIZE * RecordIndex.entries(count, stride), WINDOW);
+    }
+
+    public RecordIndexBuilder(FileChannel channel) throws IOException {
+        this(channel, DEFAULT_STRIDE);
+    }
+
+    // Indexes a value starting at the given file offset. Values must be added
+    // in order.
+    public final void add(long offset) throws IOException {
+        if (0 == count % stride)
+            writer.write(XdrHyper.CODEC, offset);
+        ++count;
+    }
+
+    public final <T> void write(MappedWriter out, Codec<T> codec, T val)
+            throws IOException {
+        final long pos = out.position();
+        out.write(codec, val);
+        add(pos);
+    }
+
+    // Writes the header and forces the index to storage.
+    public final void flush() throws IOException {
+        writer.flush();
+        header.clear();
+        XdrInt.encode(header, stride);
+        XdrHyper.encode(header, count);
+        header.flip();
+        while (header.hasRemaining())
+            channel.write(header, header.position());
+        channel.force(false);
+    }
+
+    public final long getCount() {
+        return count;
+    }
+
+    public final int getStride() {
+        return stride;
+    }
+
+    // Replaces the index with one of the values from the reader's position
+    // to the end of its file, using the codec to find their boundaries.
+    public static <T> void build(MappedReader reader, Codec<T> codec,
+            FileChannel index, int stride) throws IOException {
+        index.truncate(0);
+        final RecordIndexBuilder builder = new RecordIndexBuilder(index,
+                stride);
+        while (reader.hasRemaining()) {
+            builder.add(reader.position());
+            reader.read(codec);
+        }
+        builder.flush();
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import static org.openxdr.RecordWriter.HEADER;
+import static org.openxdr.RecordWriter.LAST_FRAG;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+// Reads record-marked records from a channel, which must be blocking.
+public final class RecordReader {
+    public static final int DEFAULT_CAPACITY = RecordWriter.DEFAULT_CAPACITY;
+    // Records are bounded by default, so that a peer cannot force a huge
+    // allocation with a single header.
+    public static final int DEFAULT_MAX_RECORD = 1 << 20;
+
+    private final ReadableByteChannel channel;
+    private final int maxsize;
+    private final ByteBuffer header;
+    private ByteBuffer buf;
+
+    // Returns false if the channel reached end-of-stream before any bytes
+    // were read.
+    private static boolean readFully(ReadableByteChannel channel,
+            ByteBuffer dst) throws IOException {
+        final int start = dst.position();
+        while (dst.hasRemaining())
+            if (channel.read(dst) < 0) {
+                if (dst.position() == start)
+                    return false;
+                throw new EOFException();
+            }
+        return true;
+    }
+
+    private void reserve(int len) throws IOException {
+        final int pos = buf.position();
+        if (maxsize - pos < len)
+            throw new StreamCorruptedException("record exceeds " + maxsize
+                    + " bytes");
+        if (buf.capacity() - pos < len) {
+            final int capacity = (int) Math.min(Math.max((long) pos + len,
+                    2L * buf.capacity()), maxsize);
+            final ByteBuffer tmp = XdrBuffer.allocateDirect(capacity);
+            buf.flip();
+            tmp.put(buf);
+            buf = tmp;
+        }
+    }
+
+    public RecordReader(ReadableByteChannel channel, int maxsize, int capacity) {
+        if (maxsize < 0 || capacity < 0)
+            throw new IllegalArgumentException();
+        Utility.checkBlocking(channel);
+        this.channel = channel;
+        this.maxsize = maxsize;
+        this.header = XdrBuffer.allocate(HEADER);
+        this.buf = XdrBuffer.allocateDirect(Math.min(capacity, maxsize));
+    }
+
+    public RecordReader(ReadableByteChannel channel, int maxsize) {
+        this(channel, maxsize, DEFAULT_CAPACITY);
+    }
+
+    public RecordReader(ReadableByteChannel channel) {
+        this(channel, DEFAULT_MAX_RECORD);
+    }
+
+    // Reassembles the next record and returns a buffer positioned at its
+    // first byte, or null at end-of-stream. The buffer is reused by the next
+    // call.
+    public final ByteBuffer readRecord() throws IOException {
+        buf.clear();
+        boolean first = true;
+        boolean last;
+        do {
+            header.clear();
+            if (!readFully(channel, header)) {
+                if (first)
+                    return null;
+                throw new EOFException();
+            }
+            header.flip();
+            final int mark = XdrInt.decode(header);
+            last = 0 != (mark & LAST_FRAG);
+            final int len = mark & ~LAST_FRAG;
+            reserve(len);
+            buf.limit(buf.position() + len);
+            if (!readFully(channel, buf))
+                throw new EOFException();
+            buf.limit(buf.capacity());
+            first = false;
+        } while (!last);
+        buf.flip();
+        return buf;
+    }
+
+    public final <T> T read(Codec<T> codec) throws IOException {
+        final ByteBuffer rec = readRecord();
+        if (null == rec)
+            throw new EOFException();
+        return codec.decode(rec);
+    }
+
+    public final ReadableByteChannel getChannel() {
+        return channel;
+    }
+
+    public final int getMaxSize() {
+        return maxsize;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+// Writes record-marked records to a channel, which must be blocking.
+public final class RecordWriter {
+    public static final int LAST_FRAG = 0x80000000;
+    public static final int HEADER = XdrInt.SIZE;
+
+    public static final int DEFAULT_FRAGMENT_SIZE = Integer.MAX_VALUE;
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private final WritableByteChannel channel;
+    private final int fragmentSize;
+    private final ByteBuffer header;
+    private ByteBuffer buf;
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer src)
+            throws IOException {
+        while (src.hasRemaining())
+            channel.write(src);
+    }
+
+    private void grow(int capacity) {
+        buf = XdrBuffer.allocateDirect(Math.max(capacity, Utility
+                .saturate(2L * buf.capacity())));
+    }
+
+    // The encoded record starts HEADER bytes into the buffer. Each fragment
+    // header is placed in the four bytes preceding its payload: for the first
+    // fragment this is the reserved space, and for later fragments it is the
+    // tail of a fragment that has already been written to the channel.
+    private void writeFragments() throws IOException {
+        final int end = buf.position();
+        int pos = HEADER;
+        do {
+            final int len = Math.min(fragmentSize, end - pos);
+            final boolean last = pos + len == end;
+            buf.putInt(pos - HEADER, last ? LAST_FRAG | len : len);
+            buf.limit(pos + len);
+            buf.position(pos - HEADER);
+            writeFully(channel, buf);
+            pos += len;
+        } while (pos < end);
+    }
+
+    public RecordWriter(WritableByteChannel channel, int fragmentSize,
+            int capacity) {
+        if (fragmentSize <= 0 || capacity < HEADER)
+            throw new IllegalArgumentException();
+        Utility.checkBlocking(channel);
+        this.channel = channel;
+        this.fragmentSize = fragmentSize;
+        this.header = XdrBuffer.allocate(HEADER);
+        this.buf = XdrBuffer.allocateDirect(capacity);
+    }
+
+    public RecordWriter(WritableByteChannel channel, int fragmentSize) {
+        this(channel, fragmentSize, DEFAULT_CAPACITY);
+    }
+
+    public RecordWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_FRAGMENT_SIZE);
+    }
+
+    public final <T> void write(Codec<T> codec, T val) throws IOException {
+        buf.clear();
+        buf.position(HEADER);
+        try {
+            codec.encode(buf, val);
+        } catch (final BufferOverflowException e) {
+            grow(HEADER + codec.size(val));
+            buf.position(HEADER);
+            codec.encode(buf, val);
+        }
+        writeFragments();
+    }
+
+    // Writes a record that has already been encoded, from the source's
+    // position to its limit.
+    public final void write(ByteBuffer src) throws IOException {
+        final int end = src.limit();
+        try {
+            do {
+                final int len = Math.min(fragmentSize, end - src.position());
+                final boolean last = src.position() + len == end;
+                header.clear();
+                header.putInt(last ? LAST_FRAG | len : len);
+                header.flip();
+                writeFully(channel, header);
+                src.limit(src.position() + len);
+                writeFully(channel, src);
+                src.limit(end);
+            } while (src.position() < end);
+        } finally {
+            src.limit(end);
+        }
+    }
+
+    public final WritableByteChannel getChannel() {
+        return channel;
+    }
+
+    public final int getFragmentSize() {
+        return fragmentSize;
+    }
+}
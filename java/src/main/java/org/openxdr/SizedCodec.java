@@ -0,0 +1,23 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+// A codec that knows bounds on its encoded size, letting combinators size
+// aggregates arithmetically and check for space once per aggregate.
+public interface SizedCodec<T> extends Codec<T> {
+    // The size of every encoded value, or -1 if sizes vary.
+    int getFixedSize();
+
+    // An upper bound on the encoded size, or Integer.MAX_VALUE if unbounded.
+    int getMaxSize();
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+
+public final class Utf8String implements Slice, Comparable<Utf8String> {
+    private final byte[] buf;
+    private final int offset;
+    private final int len;
+    private int hash;
+    private String str;
+
+    public Utf8String(byte[] buf, int offset, int len) {
+        this.buf = buf;
+        this.offset = offset;
+        this.len = len;
+    }
+
+    public Utf8String(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    public Utf8String(String str) {
+        this(str.getBytes(UTF_8));
+        this.str = str;
+    }
+
+    public final byte[] getBuffer() {
+        return buf;
+    }
+
+    public final int getOffset() {
+        return offset;
+    }
+
+    public final int getLength() {
+        return len;
+    }
+
+    // Unsigned byte order, which for UTF-8 matches code point order.
+    public final int compareTo(Utf8String rhs) {
+        final int n = Math.min(len, rhs.len);
+        for (int i = 0; i < n; ++i) {
+            final int cmp = (buf[offset + i] & 0xff)
+                    - (rhs.buf[rhs.offset + i] & 0xff);
+            if (0 != cmp)
+                return cmp;
+        }
+        return len - rhs.len;
+    }
+
+    @Override
+    public final boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof Utf8String))
+            return false;
+        final Utf8String rhs = (Utf8String) obj;
+        if (len != rhs.len)
+            return false;
+        for (int i = 0; i < len; ++i)
+            if (buf[offset + i] != rhs.buf[rhs.offset + i])
+                return false;
+        return true;
+    }
+
+    @Override
+    public final int hashCode() {
+        int h = hash;
+        if (0 == h) {
+            h = 1;
+            final int j = offset + len;
+            for (int i = offset; i < j; ++i)
+                h = 31 * h + buf[i];
+            hash = h;
+        }
+        return h;
+    }
+
+    // Decodes strictly, as XdrString.decode does, rather than replacing
+    // malformed input.
+    public final String decode() throws CharacterCodingException {
+        String s = str;
+        if (null == s) {
+            s = Utility.decodeUtf8(ByteBuffer.wrap(buf), offset, len);
+            str = s;
+        }
+        return s;
+    }
+
+    @Override
+    public final String toString() {
+        try {
+            return decode();
+        } catch (final CharacterCodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
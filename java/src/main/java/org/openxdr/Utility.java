@@ -15,45 +15,177 @@ package org.openxdr;
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
-import java.nio.charset.CharsetEncoder;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectableChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.MalformedInputException;
 
 final class Utility {
     private static final int[] ALIGN = { 0, 3, 2, 1 };
     private static final byte[] PADDING = { 0, 0, 0 };
 
-    private static final class CharsetCodec {
-        final CharsetEncoder encoder;
-        final CharsetDecoder decoder;
+    private Utility() {
+    }
 
-        CharsetCodec(String charsetName) {
-            final Charset charset = Charset.forName(charsetName);
-            encoder = charset.newEncoder();
-            decoder = charset.newDecoder();
-        }
+    static int aligned(int n) {
+        return n + ALIGN[n % 4];
     }
 
-    private static final ThreadLocal<CharsetCodec> UTF8 = new ThreadLocal<CharsetCodec>() {
-        @Override
-        protected final CharsetCodec initialValue() {
-            return new CharsetCodec("UTF-8");
-        }
-    };
+    // Loops that read or write until done would spin on a channel that
+    // transfers no bytes, so only blocking channels are accepted.
+    static void checkBlocking(Channel channel) {
+        if (channel instanceof SelectableChannel
+                && !((SelectableChannel) channel).isBlocking())
+            throw new IllegalArgumentException("channel is non-blocking");
+    }
 
-    private Utility() {
+    static int saturate(long n) {
+        return (int) Math.min(n, Integer.MAX_VALUE);
     }
 
-    static int aligned(int n) {
-        return n + ALIGN[n % 4];
+    // An encoded size, rejected if it cannot be held in an int.
+    static int checkedSize(long n) {
+        if (Integer.MAX_VALUE < n)
+            throw new IllegalArgumentException();
+        return (int) n;
+    }
+
+    // Upper bound on a variable-length opaque or string of maxsize bytes.
+    static int maxVarSize(int maxsize) {
+        return saturate(XdrInt.SIZE + ((long) maxsize + 3 & ~3L));
+    }
+
+    static int fixedSize(Codec<?> codec) {
+        return codec instanceof SizedCodec<?> ? ((SizedCodec<?>) codec)
+                .getFixedSize() : -1;
+    }
+
+    static int maxSize(Codec<?> codec) {
+        return codec instanceof SizedCodec<?> ? ((SizedCodec<?>) codec)
+                .getMaxSize() : Integer.MAX_VALUE;
     }
 
-    static CharsetEncoder getUtf8Encoder() {
-        return UTF8.get().encoder;
+    private static void put(ByteBuffer buf, byte[] arr, int i, int b) {
+        if (null != arr)
+            arr[i] = (byte) b;
+        else
+            buf.put(i, (byte) b);
     }
 
-    static CharsetDecoder getUtf8Decoder() {
-        return UTF8.get().decoder;
+    private static int get(ByteBuffer buf, byte[] arr, int i) {
+        return (null != arr ? arr[i] : buf.get(i)) & 0xff;
+    }
+
+    // Encodes chars from index i as UTF-8, without any encoder state, and
+    // leaves the buffer positioned after them. On failure the buffer is
+    // rolled back to start: an unpaired surrogate is malformed input, as it
+    // is for the UTF-8 CharsetEncoder.
+    static void encodeUtf8(ByteBuffer buf, CharSequence val, int i, int start)
+            throws CharacterCodingException {
+        final byte[] arr = buf.hasArray() ? buf.array() : null;
+        final int offset = null != arr ? buf.arrayOffset() : 0;
+        final int chars = val.length();
+        final int limit = buf.limit() + offset;
+        int pos = buf.position() + offset;
+        for (; i < chars; ++i) {
+            final char c = val.charAt(i);
+            if (c < 0x80) {
+                if (limit <= pos)
+                    break;
+                put(buf, arr, pos++, c);
+            } else if (c < 0x800) {
+                if (limit - pos < 2)
+                    break;
+                put(buf, arr, pos++, 0xc0 | c >> 6);
+                put(buf, arr, pos++, 0x80 | c & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                if (!Character.isHighSurrogate(c) || chars <= i + 1
+                        || !Character.isLowSurrogate(val.charAt(i + 1))) {
+                    buf.position(start);
+                    throw new MalformedInputException(1);
+                }
+                if (limit - pos < 4)
+                    break;
+                final int cp = Character.toCodePoint(c, val.charAt(++i));
+                put(buf, arr, pos++, 0xf0 | cp >> 18);
+                put(buf, arr, pos++, 0x80 | cp >> 12 & 0x3f);
+                put(buf, arr, pos++, 0x80 | cp >> 6 & 0x3f);
+                put(buf, arr, pos++, 0x80 | cp & 0x3f);
+            } else {
+                if (limit - pos < 3)
+                    break;
+                put(buf, arr, pos++, 0xe0 | c >> 12);
+                put(buf, arr, pos++, 0x80 | c >> 6 & 0x3f);
+                put(buf, arr, pos++, 0x80 | c & 0x3f);
+            }
+        }
+        if (i < chars) {
+            buf.position(start);
+            throw new BufferOverflowException();
+        }
+        buf.position(pos - offset);
+    }
+
+    // Decodes len bytes of UTF-8 at the absolute position, without any
+    // decoder state or change to the buffer's position. Malformed input,
+    // including overlong forms, encoded surrogates and truncated sequences,
+    // is rejected as it is by the UTF-8 CharsetDecoder.
+    static String decodeUtf8(ByteBuffer buf, int pos, int len)
+            throws CharacterCodingException {
+        final byte[] arr = buf.hasArray() ? buf.array() : null;
+        final int offset = (null != arr ? buf.arrayOffset() : 0) + pos;
+        final int end = offset + len;
+        // UTF-8 never decodes to more chars than it has bytes.
+        final char[] val = new char[len];
+        int n = 0;
+        for (int i = offset; i < end;) {
+            final int b0 = get(buf, arr, i);
+            if (b0 < 0x80) {
+                val[n++] = (char) b0;
+                ++i;
+                continue;
+            }
+            // Lead byte, sequence length and bounds of the second byte.
+            final int need;
+            int lo = 0x80, hi = 0xbf;
+            if (b0 < 0xc2)
+                throw new MalformedInputException(1);
+            else if (b0 < 0xe0)
+                need = 2;
+            else if (b0 < 0xf0) {
+                need = 3;
+                if (0xe0 == b0)
+                    lo = 0xa0;
+                else if (0xed == b0)
+                    hi = 0x9f;
+            } else if (b0 < 0xf5) {
+                need = 4;
+                if (0xf0 == b0)
+                    lo = 0x90;
+                else if (0xf4 == b0)
+                    hi = 0x8f;
+            } else
+                throw new MalformedInputException(1);
+            if (end - i < need)
+                throw new MalformedInputException(end - i);
+            final int b1 = get(buf, arr, i + 1);
+            if (b1 < lo || hi < b1)
+                throw new MalformedInputException(1);
+            int cp = (b0 & 0x3f >> need - 1) << 6 | b1 & 0x3f;
+            for (int j = 2; j < need; ++j) {
+                final int b = get(buf, arr, i + j);
+                if (0x80 != (b & 0xc0))
+                    throw new MalformedInputException(j);
+                cp = cp << 6 | b & 0x3f;
+            }
+            if (4 == need) {
+                val[n++] = Character.highSurrogate(cp);
+                val[n++] = Character.lowSurrogate(cp);
+            } else
+                val[n++] = (char) cp;
+            i += need;
+        }
+        return new String(val, 0, n);
     }
 
     static void encodeAlign(ByteBuffer buf) {
@@ -84,6 +216,11 @@ final class Utility {
         encodeAlign(buf);
     }
 
+    static void encodeAlign(ByteBuffer buf, ByteBuffer val) {
+        buf.put(val.duplicate());
+        encodeAlign(buf);
+    }
+
     static void decodeAlign(ByteBuffer buf) {
         final int pos = buf.position();
         final int newPos = aligned(pos);
@@ -105,4 +242,19 @@ final class Utility {
             decodeAlign(buf);
         }
     }
+
+    // Returns a read-only view of the next len bytes and skips the padding
+    // that follows them.
+    static ByteBuffer sliceAlign(ByteBuffer buf, int len) {
+        if (len < 0)
+            throw new IllegalArgumentException();
+        final int pos = buf.position();
+        final int newPos = aligned(pos + len);
+        if (buf.limit() < newPos)
+            throw new BufferUnderflowException();
+        final ByteBuffer view = buf.asReadOnlyBuffer();
+        view.limit(pos + len);
+        buf.position(newPos); // Aligned.
+        return view.slice();
+    }
 }
@@ -12,16 +12,30 @@
  */
 package org.openxdr;
 
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.CharacterCodingException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public final class XdrArray {
 
     private XdrArray() {
     }
 
+    // Elements of a fixed size are checked for space once for the whole
+    // array, and sized without visiting them.
     public static <T> void encode(ByteBuffer buf, T[] val, int offset, int len,
             Codec<T> codec) throws CharacterCodingException {
+        final int fixed = Utility.fixedSize(codec);
+        if (0 <= fixed && buf.remaining() < (long) len * fixed)
+            throw new BufferOverflowException();
         final int j = offset + len;
         for (int i = offset; i < j; ++i)
             codec.encode(buf, val[i]);
@@ -34,6 +48,9 @@ public final class XdrArray {
 
     public static <T> void decode(ByteBuffer buf, T[] val, int offset, int len,
             Codec<T> codec) throws CharacterCodingException {
+        final int fixed = Utility.fixedSize(codec);
+        if (0 <= fixed && buf.remaining() < (long) len * fixed)
+            throw new BufferUnderflowException();
         final int j = offset + len;
         for (int i = offset; i < j; ++i)
             val[i] = codec.decode(buf);
@@ -45,20 +62,28 @@ public final class XdrArray {
     }
 
     public static <T> int size(T[] val, int offset, int len, Codec<T> codec) {
-        int n = 0;
+        final int fixed = Utility.fixedSize(codec);
+        if (0 <= fixed)
+            return Utility.checkedSize((long) len * fixed);
+        long n = 0;
         final int j = offset + len;
         for (int i = offset; i < j; ++i)
             n += codec.size(val[i]);
-        return n;
+        return Utility.checkedSize(n);
     }
 
     public static <T> int size(T[] val, Codec<T> codec) {
         return size(val, 0, val.length, codec);
     }
 
-    public static <T> Codec<Array<T>> newCodec(final Codec<T> codec,
+    public static <T> SizedCodec<Array<T>> newCodec(final Codec<T> codec,
             final int size) {
-        return new Codec<Array<T>>() {
+        final int fixed = Utility.fixedSize(codec);
+        final int fixedSize = fixed < 0 ? -1 : Utility.saturate((long) size
+                * fixed);
+        final int maxSize = Utility.saturate((long) size
+                * Utility.maxSize(codec));
+        return new SizedCodec<Array<T>>() {
             public final void encode(ByteBuffer buf, Array<T> val)
                     throws CharacterCodingException {
                 if (val.getLength() != size)
@@ -81,6 +106,14 @@ public final class XdrArray {
                 return XdrArray.size(val.getBuffer(), val.getOffset(), val
                         .getLength(), codec);
             }
+
+            public final int getFixedSize() {
+                return fixedSize;
+            }
+
+            public final int getMaxSize() {
+                return maxSize;
+            }
         };
     }
 
@@ -108,6 +141,55 @@ public final class XdrArray {
         encodeVar(buf, val, codec, Integer.MAX_VALUE);
     }
 
+    // Encodes elements as the iterator yields them, reserving the count and
+    // backpatching it at the end, so the sequence need not be copied or sized
+    // first. The buffer is rolled back if an element fails to encode or
+    // maxsize is exceeded.
+    public static <T> void encodeVar(ByteBuffer buf, Iterator<? extends T> it,
+            Codec<T> codec, int maxsize) throws CharacterCodingException {
+        final int start = buf.position();
+        XdrInt.encode(buf, 0);
+        int len = 0;
+        boolean done = false;
+        try {
+            for (; it.hasNext(); ++len) {
+                if (maxsize == len)
+                    throw new IllegalArgumentException();
+                codec.encode(buf, it.next());
+            }
+            done = true;
+        } finally {
+            if (!done)
+                buf.position(start);
+        }
+        buf.putInt(start, len);
+    }
+
+    public static <T> void encodeVar(ByteBuffer buf, Iterator<? extends T> it,
+            Codec<T> codec) throws CharacterCodingException {
+        encodeVar(buf, it, codec, Integer.MAX_VALUE);
+    }
+
+    public static <T> void encodeVar(ByteBuffer buf, Iterable<? extends T> val,
+            Codec<T> codec, int maxsize) throws CharacterCodingException {
+        encodeVar(buf, val.iterator(), codec, maxsize);
+    }
+
+    public static <T> void encodeVar(ByteBuffer buf, Iterable<? extends T> val,
+            Codec<T> codec) throws CharacterCodingException {
+        encodeVar(buf, val.iterator(), codec, Integer.MAX_VALUE);
+    }
+
+    public static <T> void encodeVar(ByteBuffer buf, Stream<? extends T> val,
+            Codec<T> codec, int maxsize) throws CharacterCodingException {
+        encodeVar(buf, val.iterator(), codec, maxsize);
+    }
+
+    public static <T> void encodeVar(ByteBuffer buf, Stream<? extends T> val,
+            Codec<T> codec) throws CharacterCodingException {
+        encodeVar(buf, val.iterator(), codec, Integer.MAX_VALUE);
+    }
+
     @SuppressWarnings("unchecked")
     public static <T> T[] decodeVar(ByteBuffer buf, Codec<T> codec, int maxsize)
             throws CharacterCodingException {
@@ -124,11 +206,101 @@ public final class XdrArray {
         return decodeVar(buf, codec, Integer.MAX_VALUE);
     }
 
+    private static int decodeCount(ByteBuffer buf, int fixed, int maxsize) {
+        final int len = XdrInt.decode(buf);
+        if (len < 0 || maxsize < len)
+            throw new IllegalArgumentException();
+        // Reject a count that cannot fit before decoding any element.
+        if (0 <= fixed && buf.remaining() < (long) len * fixed)
+            throw new BufferUnderflowException();
+        return len;
+    }
+
+    private static void checkAlign(ByteBuffer buf, int start) {
+        if (0 != (buf.position() - start) % 4)
+            throw new IllegalArgumentException();
+    }
+
+    // Decodes elements one at a time into the consumer, so that only one need
+    // be live at once, and returns the count.
+    public static <T> int decodeVar(ByteBuffer buf, Codec<T> codec,
+            int maxsize, Consumer<? super T> consumer)
+            throws CharacterCodingException {
+        final int len = decodeCount(buf, Utility.fixedSize(codec), maxsize);
+        final int start = buf.position();
+        for (int i = 0; i < len; ++i) {
+            consumer.accept(codec.decode(buf));
+            checkAlign(buf, start);
+        }
+        return len;
+    }
+
+    public static <T> int decodeVar(ByteBuffer buf, Codec<T> codec,
+            Consumer<? super T> consumer) throws CharacterCodingException {
+        return decodeVar(buf, codec, Integer.MAX_VALUE, consumer);
+    }
+
+    private static <T> Iterator<T> newIterator(final ByteBuffer buf,
+            final Codec<T> codec, final int len) {
+        final int start = buf.position();
+        return new Iterator<T>() {
+            private int i;
+
+            public final boolean hasNext() {
+                return i < len;
+            }
+
+            public final T next() {
+                if (len <= i)
+                    throw new NoSuchElementException();
+                final T val;
+                try {
+                    val = codec.decode(buf);
+                } catch (final CharacterCodingException e) {
+                    throw new IllegalArgumentException(e);
+                }
+                checkAlign(buf, start);
+                ++i;
+                return val;
+            }
+
+            public final void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    // Reads the count now and each element as it is requested, advancing the
+    // buffer as it goes; the buffer must not be used for anything else until
+    // the iteration is complete. Malformed characters are reported as
+    // IllegalArgumentException.
+    public static <T> Iterator<T> iterateVar(ByteBuffer buf, Codec<T> codec,
+            int maxsize) {
+        return newIterator(buf, codec, decodeCount(buf, Utility
+                .fixedSize(codec), maxsize));
+    }
+
+    public static <T> Iterator<T> iterateVar(ByteBuffer buf, Codec<T> codec) {
+        return iterateVar(buf, codec, Integer.MAX_VALUE);
+    }
+
+    public static <T> Stream<T> streamVar(ByteBuffer buf, Codec<T> codec,
+            int maxsize) {
+        final int len = decodeCount(buf, Utility.fixedSize(codec), maxsize);
+        return StreamSupport.stream(Spliterators.spliterator(newIterator(buf,
+                codec, len), len, Spliterator.ORDERED), false);
+    }
+
+    public static <T> Stream<T> streamVar(ByteBuffer buf, Codec<T> codec) {
+        return streamVar(buf, codec, Integer.MAX_VALUE);
+    }
+
     public static <T> int sizeVar(T[] val, int offset, int len, Codec<T> codec,
             int maxsize) {
         if (maxsize < len)
             throw new IllegalArgumentException();
-        return XdrInt.SIZE + XdrArray.size(val, offset, len, codec);
+        return Utility.checkedSize(XdrInt.SIZE
+                + (long) XdrArray.size(val, offset, len, codec));
     }
 
     public static <T> int sizeVar(T[] val, int offset, int len, Codec<T> codec) {
@@ -143,9 +315,11 @@ public final class XdrArray {
         return sizeVar(val, codec, Integer.MAX_VALUE);
     }
 
-    public static <T> Codec<Array<T>> newVarCodec(final Codec<T> codec,
+    public static <T> SizedCodec<Array<T>> newVarCodec(final Codec<T> codec,
             final int maxsize) {
-        return new Codec<Array<T>>() {
+        final int maxSize = Utility.saturate(XdrInt.SIZE + (long) maxsize
+                * Utility.maxSize(codec));
+        return new SizedCodec<Array<T>>() {
             public final void encode(ByteBuffer buf, Array<T> val)
                     throws CharacterCodingException {
                 XdrArray.encodeVar(buf, val.getBuffer(), val.getOffset(), val
@@ -161,10 +335,314 @@ public final class XdrArray {
                 return XdrArray.sizeVar(val.getBuffer(), val.getOffset(), val
                         .getLength(), codec, maxsize);
             }
+
+            public final int getFixedSize() {
+                return -1;
+            }
+
+            public final int getMaxSize() {
+                return maxSize;
+            }
         };
     }
 
-    public static <T> Codec<Array<T>> newVarCodec(final Codec<T> codec) {
+    public static <T> SizedCodec<Array<T>> newVarCodec(final Codec<T> codec) {
         return newVarCodec(codec, Integer.MAX_VALUE);
     }
+
+    // Arrays of primitives are encoded in bulk by the Xdr*Array codecs when
+    // the element codec is the plain one. Any other element codec, such as
+    // XdrUInt.INT_CODEC, which checks its values, is applied to each element
+    // in turn.
+
+    private static void checkLength(int len, int size, boolean var) {
+        if (var ? size < len : size != len)
+            throw new IllegalArgumentException();
+    }
+
+    private static int decodeLength(ByteBuffer buf, int size, boolean var) {
+        final int len = var ? XdrInt.decode(buf) : size;
+        if (len < 0 || size < len)
+            throw new IllegalArgumentException();
+        // Every XDR primitive takes at least four bytes, so a corrupt length
+        // cannot cause a huge allocation.
+        if (buf.remaining() / XdrInt.SIZE < len)
+            throw new BufferUnderflowException();
+        return len;
+    }
+
+    private static SizedCodec<int[]> newLoopCodec(final IntCodec codec,
+            final int size, final boolean var) {
+        return new SizedCodec<int[]>() {
+            public final void encode(ByteBuffer buf, int[] val) {
+                checkLength(val.length, size, var);
+                if (var)
+                    XdrInt.encode(buf, val.length);
+                for (final int v : val)
+                    codec.encode(buf, v);
+            }
+
+            public final int[] decode(ByteBuffer buf) {
+                final int[] val = new int[decodeLength(buf, size, var)];
+                for (int i = 0; i < val.length; ++i)
+                    val[i] = codec.decode(buf);
+                return val;
+            }
+
+            public final int size(int[] val) {
+                checkLength(val.length, size, var);
+                long n = var ? XdrInt.SIZE : 0;
+                for (final int v : val)
+                    n += codec.size(v);
+                return Utility.checkedSize(n);
+            }
+
+            public final int getFixedSize() {
+                return -1;
+            }
+
+            public final int getMaxSize() {
+                return Integer.MAX_VALUE;
+            }
+        };
+    }
+
+    public static SizedCodec<int[]> newCodec(IntCodec codec, int size) {
+        if (XdrInt.INT_CODEC == codec)
+            return XdrIntArray.newCodec(size);
+        return newLoopCodec(codec, size, false);
+    }
+
+    public static SizedCodec<int[]> newVarCodec(IntCodec codec,
+            int maxsize) {
+        if (XdrInt.INT_CODEC == codec)
+            return XdrIntArray.newVarCodec(maxsize);
+        return newLoopCodec(codec, maxsize, true);
+    }
+
+    public static SizedCodec<int[]> newVarCodec(IntCodec codec) {
+        if (XdrInt.INT_CODEC == codec)
+            return XdrIntArray.VAR_CODEC;
+        return newLoopCodec(codec, Integer.MAX_VALUE, true);
+    }
+
+    private static SizedCodec<long[]> newLoopCodec(final LongCodec codec,
+            final int size, final boolean var) {
+        return new SizedCodec<long[]>() {
+            public final void encode(ByteBuffer buf, long[] val) {
+                checkLength(val.length, size, var);
+                if (var)
+                    XdrInt.encode(buf, val.length);
+                for (final long v : val)
+                    codec.encode(buf, v);
+            }
+
+            public final long[] decode(ByteBuffer buf) {
+                final long[] val = new long[decodeLength(buf, size, var)];
+                for (int i = 0; i < val.length; ++i)
+                    val[i] = codec.decode(buf);
+                return val;
+            }
+
+            public final int size(long[] val) {
+                checkLength(val.length, size, var);
+                long n = var ? XdrInt.SIZE : 0;
+                for (final long v : val)
+                    n += codec.size(v);
+                return Utility.checkedSize(n);
+            }
+
+            public final int getFixedSize() {
+                return -1;
+            }
+
+            public final int getMaxSize() {
+                return Integer.MAX_VALUE;
+            }
+        };
+    }
+
+    public static SizedCodec<long[]> newCodec(LongCodec codec, int size) {
+        if (XdrHyper.LONG_CODEC == codec)
+            return XdrHyperArray.newCodec(size);
+        return newLoopCodec(codec, size, false);
+    }
+
+    public static SizedCodec<long[]> newVarCodec(LongCodec codec,
+            int maxsize) {
+        if (XdrHyper.LONG_CODEC == codec)
+            return XdrHyperArray.newVarCodec(maxsize);
+        return newLoopCodec(codec, maxsize, true);
+    }
+
+    public static SizedCodec<long[]> newVarCodec(LongCodec codec) {
+        if (XdrHyper.LONG_CODEC == codec)
+            return XdrHyperArray.VAR_CODEC;
+        return newLoopCodec(codec, Integer.MAX_VALUE, true);
+    }
+
+    private static SizedCodec<float[]> newLoopCodec(final FloatCodec codec,
+            final int size, final boolean var) {
+        return new SizedCodec<float[]>() {
+            public final void encode(ByteBuffer buf, float[] val) {
+                checkLength(val.length, size, var);
+                if (var)
+                    XdrInt.encode(buf, val.length);
+                for (final float v : val)
+                    codec.encode(buf, v);
+            }
+
+            public final float[] decode(ByteBuffer buf) {
+                final float[] val = new float[decodeLength(buf, size, var)];
+                for (int i = 0; i < val.length; ++i)
+                    val[i] = codec.decode(buf);
+                return val;
+            }
+
+            public final int size(float[] val) {
+                checkLength(val.length, size, var);
+                long n = var ? XdrInt.SIZE : 0;
+                for (final float v : val)
+                    n += codec.size(v);
+                return Utility.checkedSize(n);
+            }
+
+            public final int getFixedSize() {
+                return -1;
+            }
+
+            public final int getMaxSize() {
+                return Integer.MAX_VALUE;
+            }
+        };
+    }
+
+    public static SizedCodec<float[]> newCodec(FloatCodec codec, int size) {
+        if (XdrFloat.FLOAT_CODEC == codec)
+            return XdrFloatArray.newCodec(size);
+        return newLoopCodec(codec, size, false);
+    }
+
+    public static SizedCodec<float[]> newVarCodec(FloatCodec codec,
+            int maxsize) {
+        if (XdrFloat.FLOAT_CODEC == codec)
+            return XdrFloatArray.newVarCodec(maxsize);
+        return newLoopCodec(codec, maxsize, true);
+    }
+
+    public static SizedCodec<float[]> newVarCodec(FloatCodec codec) {
+        if (XdrFloat.FLOAT_CODEC == codec)
+            return XdrFloatArray.VAR_CODEC;
+        return newLoopCodec(codec, Integer.MAX_VALUE, true);
+    }
+
+    private static SizedCodec<double[]> newLoopCodec(final DoubleCodec codec,
+            final int size, final boolean var) {
+        return new SizedCodec<double[]>() {
+            public final void encode(ByteBuffer buf, double[] val) {
+                checkLength(val.length, size, var);
+                if (var)
+                    XdrInt.encode(buf, val.length);
+                for (final double v : val)
+                    codec.encode(buf, v);
+            }
+
+            public final double[] decode(ByteBuffer buf) {
+                final double[] val = new double[decodeLength(buf, size, var)];
+                for (int i = 0; i < val.length; ++i)
+                    val[i] = codec.decode(buf);
+                return val;
+            }
+
+            public final int size(double[] val) {
+                checkLength(val.length, size, var);
+                long n = var ? XdrInt.SIZE : 0;
+                for (final double v : val)
+                    n += codec.size(v);
+                return Utility.checkedSize(n);
+            }
+
+            public final int getFixedSize() {
+                return -1;
+            }
+
+            public final int getMaxSize() {
+                return Integer.MAX_VALUE;
+            }
+        };
+    }
+
+    public static SizedCodec<double[]> newCodec(DoubleCodec codec, int size) {
+        if (XdrDouble.DOUBLE_CODEC == codec)
+            return XdrDoubleArray.newCodec(size);
+        return newLoopCodec(codec, size, false);
+    }
+
+    public static SizedCodec<double[]> newVarCodec(DoubleCodec codec,
+            int maxsize) {
+        if (XdrDouble.DOUBLE_CODEC == codec)
+            return XdrDoubleArray.newVarCodec(maxsize);
+        return newLoopCodec(codec, maxsize, true);
+    }
+
+    public static SizedCodec<double[]> newVarCodec(DoubleCodec codec) {
+        if (XdrDouble.DOUBLE_CODEC == codec)
+            return XdrDoubleArray.VAR_CODEC;
+        return newLoopCodec(codec, Integer.MAX_VALUE, true);
+    }
+
+    private static SizedCodec<boolean[]> newLoopCodec(final BooleanCodec codec,
+            final int size, final boolean var) {
+        return new SizedCodec<boolean[]>() {
+            public final void encode(ByteBuffer buf, boolean[] val) {
+                checkLength(val.length, size, var);
+                if (var)
+                    XdrInt.encode(buf, val.length);
+                for (final boolean v : val)
+                    codec.encode(buf, v);
+            }
+
+            public final boolean[] decode(ByteBuffer buf) {
+                final boolean[] val = new boolean[decodeLength(buf, size, var)];
+                for (int i = 0; i < val.length; ++i)
+                    val[i] = codec.decode(buf);
+                return val;
+            }
+
+            public final int size(boolean[] val) {
+                checkLength(val.length, size, var);
+                long n = var ? XdrInt.SIZE : 0;
+                for (final boolean v : val)
+                    n += codec.size(v);
+                return Utility.checkedSize(n);
+            }
+
+            public final int getFixedSize() {
+                return -1;
+            }
+
+            public final int getMaxSize() {
+                return Integer.MAX_VALUE;
+            }
+        };
+    }
+
+    public static SizedCodec<boolean[]> newCodec(BooleanCodec codec, int size) {
+        if (XdrBool.BOOLEAN_CODEC == codec)
+            return XdrBoolArray.newCodec(size);
+        return newLoopCodec(codec, size, false);
+    }
+
+    public static SizedCodec<boolean[]> newVarCodec(BooleanCodec codec,
+            int maxsize) {
+        if (XdrBool.BOOLEAN_CODEC == codec)
+            return XdrBoolArray.newVarCodec(maxsize);
+        return newLoopCodec(codec, maxsize, true);
+    }
+
+    public static SizedCodec<boolean[]> newVarCodec(BooleanCodec codec) {
+        if (XdrBool.BOOLEAN_CODEC == codec)
+            return XdrBoolArray.VAR_CODEC;
+        return newLoopCodec(codec, Integer.MAX_VALUE, true);
+    }
 }
@@ -29,7 +29,7 @@ public final class XdrBool {
 
     public static final int SIZE = XdrInt.SIZE;
 
-    public static final Codec<Boolean> CODEC = new Codec<Boolean>() {
+    public static final SizedCodec<Boolean> CODEC = new SizedCodec<Boolean>() {
         public final void encode(ByteBuffer buf, Boolean val) {
             XdrBool.encode(buf, val);
         }
@@ -41,5 +41,27 @@ public final class XdrBool {
         public final int size(Boolean val) {
             return SIZE;
         }
+
+        public final int getFixedSize() {
+            return SIZE;
+        }
+
+        public final int getMaxSize() {
+            return SIZE;
+        }
+    };
+
+    public static final BooleanCodec BOOLEAN_CODEC = new BooleanCodec() {
+        public final void encode(ByteBuffer buf, boolean val) {
+            XdrBool.encode(buf, val);
+        }
+
+        public final boolean decode(ByteBuffer buf) {
+            return XdrBool.decode(buf);
+        }
+
+        public final int size(boolean val) {
+            return SIZE;
+        }
     };
 }
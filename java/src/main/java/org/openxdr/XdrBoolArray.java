@@ -0,0 +1,168 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public final class XdrBoolArray {
+
+    private XdrBoolArray() {
+    }
+
+    // One bounds check for the whole array, followed by absolute puts.
+    public static void encode(ByteBuffer buf, boolean[] val, int offset, int len) {
+        assert ByteOrder.BIG_ENDIAN == buf.order();
+        if (buf.remaining() / XdrBool.SIZE < len)
+            throw new BufferOverflowException();
+        final int pos = buf.position();
+        for (int i = 0; i < len; ++i)
+            buf.putInt(pos + i * XdrBool.SIZE, val[offset + i] ? 1 : 0);
+        buf.position(pos + len * XdrBool.SIZE);
+    }
+
+    public static void encode(ByteBuffer buf, boolean[] val) {
+        encode(buf, val, 0, val.length);
+    }
+
+    public static void decode(ByteBuffer buf, boolean[] val, int offset, int len) {
+        assert ByteOrder.BIG_ENDIAN == buf.order();
+        if (buf.remaining() / XdrBool.SIZE < len)
+            throw new BufferUnderflowException();
+        final int pos = buf.position();
+        for (int i = 0; i < len; ++i)
+            val[offset + i] = 0 != buf.getInt(pos + i * XdrBool.SIZE);
+        buf.position(pos + len * XdrBool.SIZE);
+    }
+
+    public static void decode(ByteBuffer buf, boolean[] val) {
+        decode(buf, val, 0, val.length);
+    }
+
+    public static int size(boolean[] val, int offset, int len) {
+        return Utility.checkedSize((long) len * XdrBool.SIZE);
+    }
+
+    public static int size(boolean[] val) {
+        return size(val, 0, val.length);
+    }
+
+    public static SizedCodec<boolean[]> newCodec(final int size) {
+        return new SizedCodec<boolean[]>() {
+            public final void encode(ByteBuffer buf, boolean[] val) {
+                if (val.length != size)
+                    throw new IllegalArgumentException();
+                XdrBoolArray.encode(buf, val);
+            }
+
+            public final boolean[] decode(ByteBuffer buf) {
+                final boolean[] val = new boolean[size];
+                XdrBoolArray.decode(buf, val);
+                return val;
+            }
+
+            public final int size(boolean[] val) {
+                if (val.length != size)
+                    throw new IllegalArgumentException();
+                return XdrBoolArray.size(val);
+            }
+
+            public final int getFixedSize() {
+                return Utility.saturate((long) size * XdrBool.SIZE);
+            }
+
+            public final int getMaxSize() {
+                return Utility.saturate((long) size * XdrBool.SIZE);
+            }
+        };
+    }
+
+    public static void encodeVar(ByteBuffer buf, boolean[] val, int offset,
+            int len, int maxsize) {
+        if (maxsize < len)
+            throw new IllegalArgumentException();
+        if ((buf.remaining() - XdrInt.SIZE) / XdrBool.SIZE < len)
+            throw new BufferOverflowException();
+        XdrInt.encode(buf, len);
+        XdrBoolArray.encode(buf, val, offset, len);
+    }
+
+    public static void encodeVar(ByteBuffer buf, boolean[] val, int maxsize) {
+        encodeVar(buf, val, 0, val.length, maxsize);
+    }
+
+    public static void encodeVar(ByteBuffer buf, boolean[] val) {
+        encodeVar(buf, val, Integer.MAX_VALUE);
+    }
+
+    public static boolean[] decodeVar(ByteBuffer buf, int maxsize) {
+        final int len = XdrInt.decode(buf);
+        if (len < 0 || maxsize < len)
+            throw new IllegalArgumentException();
+        // Checked before allocating, so a corrupt length cannot cause a huge
+        // allocation.
+        if (buf.remaining() / XdrBool.SIZE < len)
+            throw new BufferUnderflowException();
+        final boolean[] dst = new boolean[len];
+        XdrBoolArray.decode(buf, dst, 0, len);
+        return dst;
+    }
+
+    public static boolean[] decodeVar(ByteBuffer buf) {
+        return decodeVar(buf, Integer.MAX_VALUE);
+    }
+
+    public static int sizeVar(boolean[] val, int offset, int len, int maxsize) {
+        if (maxsize < len)
+            throw new IllegalArgumentException();
+        return Utility.checkedSize(XdrInt.SIZE + (long) len
+                * XdrBool.SIZE);
+    }
+
+    public static int sizeVar(boolean[] val, int maxsize) {
+        return sizeVar(val, 0, val.length, maxsize);
+    }
+
+    public static int sizeVar(boolean[] val) {
+        return sizeVar(val, Integer.MAX_VALUE);
+    }
+
+    public static SizedCodec<boolean[]> newVarCodec(final int maxsize) {
+        return new SizedCodec<boolean[]>() {
+            public final void encode(ByteBuffer buf, boolean[] val) {
+                XdrBoolArray.encodeVar(buf, val, maxsize);
+            }
+
+            public final boolean[] decode(ByteBuffer buf) {
+                return XdrBoolArray.decodeVar(buf, maxsize);
+            }
+
+            public final int size(boolean[] val) {
+                return XdrBoolArray.sizeVar(val, maxsize);
+            }
+
+            public final int getFixedSize() {
+                return -1;
+            }
+
+            public final int getMaxSize() {
+                return Utility.saturate(XdrInt.SIZE + (long) maxsize
+                        * XdrBool.SIZE);
+            }
+        };
+    }
+
+    public static final SizedCodec<boolean[]> VAR_CODEC = newVarCodec(Integer.MAX_VALUE);
+}
@@ -16,6 +16,8 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 public final class XdrBuffer {
+    private static final XdrBufferPool POOL = new XdrBufferPool();
+
     private XdrBuffer() {
     }
 
@@ -42,4 +44,18 @@ public final class XdrBuffer {
         buf.order(ByteOrder.BIG_ENDIAN);
         return buf;
     }
+
+    // Returns a direct buffer from a shared pool, to be handed back with
+    // release() once it is no longer used.
+    public static ByteBuffer acquireDirect(int capacity) {
+        return POOL.acquire(capacity);
+    }
+
+    public static void release(ByteBuffer buf) {
+        POOL.release(buf);
+    }
+
+    public static XdrBufferPool getPool() {
+        return POOL;
+    }
 }
@@ -0,0 +1,302 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Pools direct buffers in power-of-two size classes. Each thread keeps a
+// small cache per class in front of a shared lock-free queue per class, and
+// empty classes are refilled by slicing a slab from a single direct
+// allocation. Buffers must be handed back with release(); the counters show
+// how many are still outstanding, so that leaks can be detected. The pool
+// knows each buffer it has handed out, so a buffer it does not own is never
+// pooled or counted, and releasing one twice is an error.
+//
+// The pool holds a buffer strongly only while it is idle in the shared
+// queue or in a thread's cache. A buffer that is never released, or that is
+// cached by a thread that has since died, is reclaimed by the collector.
+public final class XdrBufferPool {
+    public static final int MIN_CLASS_SIZE = 64;
+    public static final int DEFAULT_MAX_CLASS_SIZE = 1 << 20;
+    public static final int DEFAULT_CACHE_SIZE = 16;
+    public static final int DEFAULT_MAX_SHARED = 256;
+
+    private static final int MIN_SHIFT = 6;
+    private static final int SLAB_SIZE = 1 << 16;
+    private static final int MIN_TABLE = 64;
+
+    // A buffer created by the pool, and whether it is currently handed out.
+    private static final class Tag extends WeakReference<ByteBuffer> {
+        final int hash;
+        // The size class, or -1 for a buffer larger than every class.
+        final int sizeClass;
+        final AtomicBoolean lent = new AtomicBoolean();
+        // The buffer while it is in the shared queue.
+        ByteBuffer held;
+
+        Tag(ByteBuffer buf, int sizeClass) {
+            super(buf);
+            this.hash = hash(buf);
+            this.sizeClass = sizeClass;
+        }
+    }
+
+    private static final class SizeClass {
+        final int size;
+        final Queue<Tag> free = new ConcurrentLinkedQueue<Tag>();
+        final AtomicInteger freeCount = new AtomicInteger();
+
+        SizeClass(int size) {
+            this.size = size;
+        }
+    }
+
+    private static final class Cache {
+        final ByteBuffer[][] bufs;
+        final Tag[][] tags;
+        final int[] counts;
+
+        Cache(int classes, int cacheSize) {
+            bufs = new ByteBuffer[classes][cacheSize];
+            tags = new Tag[classes][cacheSize];
+            counts = new int[classes];
+        }
+
+        final boolean push(int i, ByteBuffer buf, Tag tag) {
+            final int n = counts[i];
+            if (bufs[i].length == n)
+                return false;
+            bufs[i][n] = buf;
+            tags[i][n] = tag;
+            counts[i] = n + 1;
+            return true;
+        }
+    }
+
+    private final int maxClassSize;
+    private final int maxShared;
+    private final SizeClass[] classes;
+    private final ThreadLocal<Cache> caches;
+    // The tags of the pool's buffers, open-addressed by identity hash. Read
+    // without locking; added to under the lock, when a slab is sliced or a
+    // large buffer allocated. Tags whose buffers have been collected are
+    // dropped when the table is rebuilt.
+    private volatile AtomicReferenceArray<Tag> table = new AtomicReferenceArray<Tag>(
+            MIN_TABLE);
+    private int tagCount;
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+
+    private static int sizeClass(int capacity) {
+        return capacity <= MIN_CLASS_SIZE ? 0 : 32 - MIN_SHIFT
+                - Integer.numberOfLeadingZeros(capacity - 1);
+    }
+
+    private static int hash(ByteBuffer buf) {
+        final int h = System.identityHashCode(buf);
+        return h ^ h >>> 16;
+    }
+
+    private static void put(AtomicReferenceArray<Tag> table, Tag tag) {
+        final int mask = table.length() - 1;
+        int i = tag.hash & mask;
+        // Slots of collected buffers are reused; empty slots end the probe.
+        for (Tag t; null != (t = table.get(i)) && null != t.get();)
+            i = i + 1 & mask;
+        table.set(i, tag);
+    }
+
+    private synchronized void addTags(Tag[] add) {
+        AtomicReferenceArray<Tag> table = this.table;
+        if (table.length() < 2 * (tagCount + add.length)) {
+            int live = add.length;
+            for (int i = 0; i < table.length(); ++i) {
+                final Tag t = table.get(i);
+                if (null != t && null != t.get())
+                    ++live;
+            }
+            int n = MIN_TABLE;
+            while (n < 4 * live)
+                n <<= 1;
+            final AtomicReferenceArray<Tag> next = new AtomicReferenceArray<Tag>(
+                    n);
+            tagCount = 0;
+            for (int i = 0; i < table.length(); ++i) {
+                final Tag t = table.get(i);
+                if (null != t && null != t.get()) {
+                    put(next, t);
+                    ++tagCount;
+                }
+            }
+            this.table = table = next;
+        }
+        for (final Tag tag : add)
+            put(table, tag);
+        tagCount += add.length;
+    }
+
+    private Tag tagOf(ByteBuffer buf) {
+        final AtomicReferenceArray<Tag> table = this.table;
+        final int mask = table.length() - 1;
+        for (int i = hash(buf) & mask;; i = i + 1 & mask) {
+            final Tag tag = table.get(i);
+            if (null == tag)
+                return null;
+            if (buf == tag.get())
+                return tag;
+        }
+    }
+
+    // Allocates a slab for the class, returning the tag of its first buffer
+    // and sharing the rest.
+    private Tag refill(int c) {
+        final SizeClass sc = classes[c];
+        final int n = Math.max(1, SLAB_SIZE / sc.size);
+        final ByteBuffer slab = ByteBuffer.allocateDirect(n * sc.size);
+        allocated.add(n * sc.size);
+        final Tag[] add = new Tag[n];
+        for (int i = 0; i < n; ++i) {
+            slab.limit((i + 1) * sc.size);
+            slab.position(i * sc.size);
+            final ByteBuffer buf = slab.slice();
+            add[i] = new Tag(buf, c);
+            add[i].held = buf;
+        }
+        addTags(add);
+        for (int i = 1; i < n; ++i) {
+            sc.freeCount.incrementAndGet();
+            sc.free.offer(add[i]);
+        }
+        return add[0];
+    }
+
+    public XdrBufferPool(int maxClassSize, final int cacheSize, int maxShared) {
+        if (maxClassSize < MIN_CLASS_SIZE
+                || 0 != (maxClassSize & maxClassSize - 1) || cacheSize < 0
+                || maxShared < 0)
+            throw new IllegalArgumentException();
+        this.maxClassSize = maxClassSize;
+        this.maxShared = maxShared;
+        this.classes = new SizeClass[sizeClass(maxClassSize) + 1];
+        for (int i = 0; i < classes.length; ++i)
+            classes[i] = new SizeClass(MIN_CLASS_SIZE << i);
+        this.caches = new ThreadLocal<Cache>() {
+            @Override
+            protected final Cache initialValue() {
+                return new Cache(classes.length, cacheSize);
+            }
+        };
+    }
+
+    public XdrBufferPool() {
+        this(DEFAULT_MAX_CLASS_SIZE, DEFAULT_CACHE_SIZE, DEFAULT_MAX_SHARED);
+    }
+
+    // Returns a big-endian direct buffer with a limit of capacity. Requests
+    // larger than the largest class are allocated directly.
+    public final ByteBuffer acquire(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException();
+        acquired.increment();
+        if (maxClassSize < capacity) {
+            allocated.add(capacity);
+            final ByteBuffer buf = XdrBuffer.allocateDirect(capacity);
+            final Tag tag = new Tag(buf, -1);
+            tag.lent.set(true);
+            addTags(new Tag[] { tag });
+            return buf;
+        }
+        final int i = sizeClass(capacity);
+        final Cache cache = caches.get();
+        final int n = cache.counts[i];
+        final ByteBuffer buf;
+        final Tag tag;
+        if (0 < n) {
+            buf = cache.bufs[i][n - 1];
+            tag = cache.tags[i][n - 1];
+            cache.bufs[i][n - 1] = null;
+            cache.tags[i][n - 1] = null;
+            cache.counts[i] = n - 1;
+        } else {
+            final SizeClass sc = classes[i];
+            Tag t = sc.free.poll();
+            if (null == t)
+                t = refill(i);
+            else
+                sc.freeCount.decrementAndGet();
+            tag = t;
+            buf = t.held;
+            t.held = null;
+        }
+        tag.lent.set(true);
+        buf.clear();
+        buf.limit(capacity);
+        buf.order(ByteOrder.BIG_ENDIAN);
+        return buf;
+    }
+
+    // Buffers that were not acquired from this pool, including views of ones
+    // that were, are ignored. Releasing a buffer that is not handed out, as
+    // by releasing it twice, throws IllegalStateException.
+    public final void release(ByteBuffer buf) {
+        final Tag tag = tagOf(buf);
+        if (null == tag)
+            return;
+        if (!tag.lent.compareAndSet(true, false))
+            throw new IllegalStateException();
+        released.increment();
+        final int i = tag.sizeClass;
+        if (i < 0 || caches.get().push(i, buf, tag))
+            return;
+        final SizeClass sc = classes[i];
+        if (maxShared < sc.freeCount.incrementAndGet()) {
+            // Dropped, to be collected with the rest of its slab.
+            sc.freeCount.decrementAndGet();
+            return;
+        }
+        tag.held = buf;
+        sc.free.offer(tag);
+    }
+
+    public final long getAcquiredCount() {
+        return acquired.sum();
+    }
+
+    public final long getReleasedCount() {
+        return released.sum();
+    }
+
+    // Buffers acquired but not yet released. A count that keeps growing under
+    // a steady load indicates a leak.
+    public final long getOutstandingCount() {
+        return acquired.sum() - released.sum();
+    }
+
+    // Bytes of direct memory allocated by the pool since it was created.
+    public final long getAllocatedBytes() {
+        return allocated.sum();
+    }
+
+    public final int getMaxClassSize() {
+        return maxClassSize;
+    }
+}
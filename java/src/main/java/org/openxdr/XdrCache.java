@@ -0,0 +1,48 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+public final class XdrCache {
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_MAX_KEY_SIZE = 256;
+
+    private XdrCache() {
+    }
+
+    // Caches a variable-length opaque or string codec, such as
+    // XdrString.VAR_CODEC. Encodings longer than maxKeySize bytes are decoded
+    // without the cache.
+    public static <T> CachingCodec<T> newVarCodec(Codec<T> codec,
+            int capacity, int maxKeySize) {
+        return new CachingCodec<T>(codec, -1, capacity, maxKeySize);
+    }
+
+    public static <T> CachingCodec<T> newVarCodec(Codec<T> codec) {
+        return newVarCodec(codec, DEFAULT_CAPACITY, DEFAULT_MAX_KEY_SIZE);
+    }
+
+    // Caches a codec whose values all have the same encoded size, such as a
+    // fixed-length opaque or a small struct.
+    public static <T> CachingCodec<T> newFixedCodec(SizedCodec<T> codec,
+            int capacity) {
+        final int size = codec.getFixedSize();
+        if (size < 0)
+            throw new IllegalArgumentException();
+        return new CachingCodec<T>(codec, size, capacity, Math.max(size,
+                DEFAULT_MAX_KEY_SIZE));
+    }
+
+    public static <T> CachingCodec<T> newFixedCodec(SizedCodec<T> codec) {
+        return newFixedCodec(codec, DEFAULT_CAPACITY);
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Decodes the fields of a fixed-layout aggregate with absolute gets, as
+// XdrEncoder encodes them. Each get reads at an index; the index of the next
+// field is the index plus the size of this one.
+public final class XdrDecoder {
+
+    private XdrDecoder() {
+    }
+
+    public static int begin(ByteBuffer buf, int len) {
+        assert ByteOrder.BIG_ENDIAN == buf.order();
+        final int pos = buf.position();
+        if (buf.limit() - pos < len)
+            throw new BufferUnderflowException();
+        return pos;
+    }
+
+    public static void end(ByteBuffer buf, int i) {
+        buf.position(i);
+    }
+
+    public static int getInt(ByteBuffer buf, int i) {
+        return buf.getInt(i);
+    }
+
+    public static long getHyper(ByteBuffer buf, int i) {
+        return buf.getLong(i);
+    }
+
+    public static boolean getBool(ByteBuffer buf, int i) {
+        return 0 != buf.getInt(i);
+    }
+
+    public static float getFloat(ByteBuffer buf, int i) {
+        return buf.getFloat(i);
+    }
+
+    public static double getDouble(ByteBuffer buf, int i) {
+        return buf.getDouble(i);
+    }
+
+    // Reads the bytes and returns the index following their padding. The
+    // bulk get is relative, so this moves the position.
+    public static int getOpaque(ByteBuffer buf, int i, byte[] val, int off,
+            int len) {
+        buf.position(i);
+        buf.get(val, off, len);
+        return i + Utility.aligned(len);
+    }
+
+    public static int getOpaque(ByteBuffer buf, int i, byte[] val) {
+        return getOpaque(buf, i, val, 0, val.length);
+    }
+}
@@ -32,7 +32,7 @@ public final class XdrDouble {
 
     public static final int SIZE = 8;
 
-    public static final Codec<Double> CODEC = new Codec<Double>() {
+    public static final SizedCodec<Double> CODEC = new SizedCodec<Double>() {
         public final void encode(ByteBuffer buf, Double val) {
             XdrDouble.encode(buf, val);
         }
@@ -44,5 +44,27 @@ public final class XdrDouble {
         public final int size(Double val) {
             return SIZE;
         }
+
+        public final int getFixedSize() {
+            return SIZE;
+        }
+
+        public final int getMaxSize() {
+            return SIZE;
+        }
+    };
+
+    public static final DoubleCodec DOUBLE_CODEC = new DoubleCodec() {
+        public final void encode(ByteBuffer buf, double val) {
+            XdrDouble.encode(buf, val);
+        }
+
+        public final double decode(ByteBuffer buf) {
+            return XdrDouble.decode(buf);
+        }
+
+        public final int size(double val) {
+            return SIZE;
+        }
     };
 }
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public final class XdrDoubleArray {
+
+    private XdrDoubleArray() {
+    }
+
+    // One bounds check for the whole array, followed by a bulk transfer.
+    public static void encode(ByteBuffer buf, double[] val, int offset, int len) {
+        assert ByteOrder.BIG_ENDIAN == buf.order();
+        if (buf.remaining() / XdrDouble.SIZE < len)
+            throw new BufferOverflowException();
+        final int pos = buf.position();
+        buf.asDoubleBuffer().put(val, offset, len);
+        buf.position(pos + len * XdrDouble.SIZE);
+    }
+
+    public static void encode(ByteBuffer buf, double[] val) {
+        encode(buf, val, 0, val.length);
+    }
+
+    public static void decode(ByteBuffer buf, double[] val, int offset, int len) {
+        assert ByteOrder.BIG_ENDIAN == buf.order();
+        if (buf.remaining() / XdrDouble.SIZE < len)
+            throw new BufferUnderflowException();
+        final int pos = buf.position();
+        buf.asDoubleBuffer().get(val, offset, len);
+        buf.position(pos + len * XdrDouble.SIZE);
+    }
+
+    public static void decode(ByteBuffer buf, double[] val) {
+        decode(buf, val, 0, val.length);
+    }
+
+    public static int size(double[] val, int offset, int len) {
+        return Utility.checkedSize((long) len * XdrDouble.SIZE);
+    }
+
+    public static int size(double[] val) {
+        return size(val, 0, val.length);
+    }
+
+    public static SizedCodec<double[]> newCodec(final int size) {
+        return new SizedCodec<double[]>() {
+            public final void encode(ByteBuffer buf, double[] val) {
+                if (val.length != size)
+                    throw new IllegalArgumentException();
+                XdrDoubleArray.encode(buf, val);
+            }
+
+            public final double[] decode(ByteBuffer buf) {
+                final double[] val = new double[size];
+                XdrDoubleArray.decode(buf, val);
+                return val;
+            }
+
+            public final int size(double[] val) {
+                if (val.length != size)
+                    throw new IllegalArgumentException();
+                return XdrDoubleArray.size(val);
+            }
+
+            public final int getFixedSize() {
+                return Utility.saturate((long) size * XdrDouble.SIZE);
+            }
+
+            public final int getMaxSize() {
+                return Utility.saturate((long) size * XdrDouble.SIZE);
+            }
+        };
+    }
+
+    public static void encodeVar(ByteBuffer buf, double[] val, int offset,
+            int len, int maxsize) {
+        if (maxsize < len)
+            throw new IllegalArgumentException();
+        if ((buf.remaining() - XdrInt.SIZE) / XdrDouble.SIZE < len)
+            throw new BufferOverflowException();
+        XdrInt.encode(buf, len);
+        XdrDoubleArray.encode(buf, val, offset, len);
+    }
+
+    public static void encodeVar(ByteBuffer buf, double[] val, int maxsize) {
+        encodeVar(buf, val, 0, val.length, maxsize);
+    }
+
+    public static void encodeVar(ByteBuffer buf, double[] val) {
+        encodeVar(buf, val, Integer.MAX_VALUE);
+    }
+
+    public static double[] decodeVar(ByteBuffer buf, int maxsize) {
+        final int len = XdrInt.decode(buf);
+        if (len < 0 || maxsize < len)
+            throw new IllegalArgumentException();
+        // Checked before allocating, so a corrupt length cannot cause a huge
+        // allocation.
+        if (buf.remaining() / XdrDouble.SIZE < len)
+            throw new BufferUnderflowException();
+        final double[] dst = new double[len];
+        XdrDoubleArray.decode(buf, dst, 0, len);
+        return dst;
+    }
+
+    public static double[] decodeVar(ByteBuffer buf) {
+        return decodeVar(buf, Integer.MAX_VALUE);
+    }
+
+    public static int sizeVar(double[] val, int offset, int len, int maxsize) {
+        if (maxsize < len)
+            throw new IllegalArgumentException();
+        return Utility.checkedSize(XdrInt.SIZE + (long) len
+                * XdrDouble.SIZE);
+    }
+
+    public static int sizeVar(double[] val, int maxsize) {
+        return sizeVar(val, 0, val.length, maxsize);
+    }
+
+    public static int sizeVar(double[] val) {
+        return sizeVar(val, Integer.MAX_VALUE);
+    }
+
+    public static SizedCodec<double[]> newVarCodec(final int maxsize) {
+        return new SizedCodec<double[]>() {
+            public final void encode(ByteBuffer buf, double[] val) {
+                XdrDoubleArray.encodeVar(buf, val, maxsize);
+            }
+
+            public final double[] decode(ByteBuffer buf) {
+                return XdrDoubleArray.decodeVar(buf, maxsize);
+            }
+
+            public final int size(double[] val) {
+                return XdrDoubleArray.sizeVar(val, maxsize);
+            }
+
+            public final int getFixedSize() {
+                return -1;
+            }
+
+            public final int getMaxSize() {
+                return Utility.saturate(XdrInt.SIZE + (long) maxsize
+                        * XdrDouble.SIZE);
+            }
+        };
+    }
+
+    public static final SizedCodec<double[]> VAR_CODEC = newVarCodec(Integer.MAX_VALUE);
+}
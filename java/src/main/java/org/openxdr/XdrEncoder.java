@@ -0,0 +1,85 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Encodes the fields of a fixed-layout aggregate with absolute puts, moving
+// the buffer's position once rather than per field. begin() checks that the
+// aggregate fits and returns the index of its first byte; each put writes at
+// an index and returns the index that follows; end() advances the position
+// to the final index.
+public final class XdrEncoder {
+    private static final byte[] ZEROS = new byte[3];
+
+    private XdrEncoder() {
+    }
+
+    public static int begin(ByteBuffer buf, int len) {
+        assert ByteOrder.BIG_ENDIAN == buf.order();
+        final int pos = buf.position();
+        if (buf.limit() - pos < len)
+            throw new BufferOverflowException();
+        return pos;
+    }
+
+    public static void end(ByteBuffer buf, int i) {
+        buf.position(i);
+    }
+
+    public static int putInt(ByteBuffer buf, int i, int val) {
+        buf.putInt(i, val);
+        return i + XdrInt.SIZE;
+    }
+
+    public static int putHyper(ByteBuffer buf, int i, long val) {
+        buf.putLong(i, val);
+        return i + XdrHyper.SIZE;
+    }
+
+    public static int putBool(ByteBuffer buf, int i, boolean val) {
+        buf.putInt(i, val ? 1 : 0);
+        return i + XdrBool.SIZE;
+    }
+
+    public static int putFloat(ByteBuffer buf, int i, float val) {
+        buf.putFloat(i, val);
+        return i + XdrFloat.SIZE;
+    }
+
+    public static int putDouble(ByteBuffer buf, int i, double val) {
+        buf.putDouble(i, val);
+        return i + XdrDouble.SIZE;
+    }
+
+    // Writes the bytes followed by zero padding to a multiple of four. The
+    // bulk put is relative, so this moves the position.
+    public static int putOpaque(ByteBuffer buf, int i, byte[] val, int off,
+            int len) {
+        final int pad = Utility.aligned(len) - len;
+        buf.position(i);
+        buf.put(val, off, len);
+        buf.put(ZEROS, 0, pad);
+        return i + len + pad;
+    }
+
+    public static int putOpaque(ByteBuffer buf, int i, byte[] val) {
+        return putOpaque(buf, i, val, 0, val.length);
+    }
+
+    public static int putVarOpaque(ByteBuffer buf, int i, byte[] val) {
+        return putOpaque(buf, putInt(buf, i, val.length), val, 0, val.length);
+    }
+}
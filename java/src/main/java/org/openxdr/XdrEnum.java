@@ -17,6 +17,9 @@ import java.nio.ByteBuffer;
 public final class XdrEnum {
 
     private static <T extends Enum<T>> T valueOf(int val, T[] values) {
+        // Arrays from values() are indexed by ordinal.
+        if (0 <= val && val < values.length && val == values[val].ordinal())
+            return values[val];
         for (final T x : values)
             if (val == x.ordinal())
                 return x;
@@ -36,8 +39,9 @@ public final class XdrEnum {
 
     public static final int SIZE = XdrInt.SIZE;
 
-    public static <T extends Enum<T>> Codec<T> newCodec(final T[] values) {
-        return new Codec<T>() {
+    public static <T extends Enum<T>> SizedCodec<T> newCodec(
+            final T[] values) {
+        return new SizedCodec<T>() {
             public final void encode(ByteBuffer buf, T val) {
                 XdrEnum.encode(buf, val);
             }
@@ -49,6 +53,59 @@ public final class XdrEnum {
             public final int size(T val) {
                 return SIZE;
             }
+
+            public final int getFixedSize() {
+                return SIZE;
+            }
+
+            public final int getMaxSize() {
+                return SIZE;
+            }
+        };
+    }
+
+    // Encodes each constant as its declared XDR value, codes[i] being the
+    // value of values[i], rather than its ordinal.
+    public static <T extends Enum<T>> SizedCodec<T> newCodec(final T[] values,
+            final int[] codes) {
+        if (values.length != codes.length)
+            throw new IllegalArgumentException();
+        int ordinals = 0;
+        for (final T x : values)
+            ordinals = Math.max(ordinals, x.ordinal() + 1);
+        final int[] byOrdinal = new int[ordinals];
+        final boolean[] mapped = new boolean[ordinals];
+        for (int i = 0; i < values.length; ++i) {
+            byOrdinal[values[i].ordinal()] = codes[i];
+            mapped[values[i].ordinal()] = true;
+        }
+        final IntTable<T> byCode = new IntTable<T>(codes, values);
+        return new SizedCodec<T>() {
+            public final void encode(ByteBuffer buf, T val) {
+                final int i = val.ordinal();
+                if (byOrdinal.length <= i || !mapped[i])
+                    throw new IllegalArgumentException();
+                XdrInt.encode(buf, byOrdinal[i]);
+            }
+
+            public final T decode(ByteBuffer buf) {
+                final T val = byCode.get(XdrInt.decode(buf));
+                if (null == val)
+                    throw new IllegalArgumentException();
+                return val;
+            }
+
+            public final int size(T val) {
+                return SIZE;
+            }
+
+            public final int getFixedSize() {
+                return SIZE;
+            }
+
+            public final int getMaxSize() {
+                return SIZE;
+            }
         };
     }
 }
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Marks a field for encoding by XdrStruct.newCodec. Fields are encoded in
+// ascending order of value().
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface XdrField {
+    int value();
+
+    // Maximum length of a string, opaque or array.
+    int maxsize() default Integer.MAX_VALUE;
+
+    // Length of a fixed-size opaque or array; variable-length if negative.
+    int size() default -1;
+
+    // Encodes a presence flag before the value, which may then be null.
+    boolean optional() default false;
+
+    // Selects the arm of a union class; must be the first int, boolean or
+    // enum field. Its cases() are the discriminant values with void arms.
+    boolean discriminant() default false;
+
+    // Discriminant values for which this field is the union arm.
+    int[] cases() default {};
+
+    // Marks this field as the default arm of a union class.
+    boolean defaultCase() default false;
+
+    // Codec class used instead of the one derived from the field type; must
+    // have a no-arg constructor.
+    @SuppressWarnings("rawtypes")
+    Class<? extends Codec> codec() default Codec.class;
+}
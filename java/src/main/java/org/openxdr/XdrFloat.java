@@ -32,7 +32,7 @@ public final class XdrFloat {
 
     public static final int SIZE = 4;
 
-    public static final Codec<Float> CODEC = new Codec<Float>() {
+    public static final SizedCodec<Float> CODEC = new SizedCodec<Float>() {
         public final void encode(ByteBuffer buf, Float val) {
             XdrFloat.encode(buf, val);
         }
@@ -44,5 +44,27 @@ public final class XdrFloat {
         public final int size(Float val) {
             return SIZE;
         }
+
+        public final int getFixedSize() {
+            return SIZE;
+        }
+
+        public final int getMaxSize() {
+            return SIZE;
+        }
+    };
+
+    public static final FloatCodec FLOAT_CODEC = new FloatCodec() {
+        public final void encode(ByteBuffer buf, float val) {
+            XdrFloat.encode(buf, val);
+        }
+
+        public final float decode(ByteBuffer buf) {
+            return XdrFloat.decode(buf);
+        }
+
+        public final int size(float val) {
+            return SIZE;
+        }
     };
 }
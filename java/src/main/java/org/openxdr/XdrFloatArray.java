@@ -0,0 +1,166 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public final class XdrFloatArray {
+
+    private XdrFloatArray() {
+    }
+
+    // One bounds check for the whole array, followed by a bulk transfer.
+    public static void encode(ByteBuffer buf, float[] val, int offset, int len) {
+        assert ByteOrder.BIG_ENDIAN == buf.order();
+        if (buf.remaining() / XdrFloat.SIZE < len)
+            throw new BufferOverflowException();
+        final int pos = buf.position();
+        buf.asFloatBuffer().put(val, offset, len);
+        buf.position(pos + len * XdrFloat.SIZE);
+    }
+
+    public static void encode(ByteBuffer buf, float[] val) {
+        encode(buf, val, 0, val.length);
+    }
+
+    public static void decode(ByteBuffer buf, float[] val, int offset, int len) {
+        assert ByteOrder.BIG_ENDIAN == buf.order();
+        if (buf.remaining() / XdrFloat.SIZE < len)
+            throw new BufferUnderflowException();
+        final int pos = buf.position();
+        buf.asFloatBuffer().get(val, offset, len);
+        buf.position(pos + len * XdrFloat.SIZE);
+    }
+
+    public static void decode(ByteBuffer buf, float[] val) {
+        decode(buf, val, 0, val.length);
+    }
+
+    public static int size(float[] val, int offset, int len) {
+        return Utility.checkedSize((long) len * XdrFloat.SIZE);
+    }
+
+    public static int size(float[] val) {
+        return size(val, 0, val.length);
+    }
+
+    public static SizedCodec<float[]> newCodec(final int size) {
+        return new SizedCodec<float[]>() {
+            public final void encode(ByteBuffer buf, float[] val) {
+                if (val.length != size)
+                    throw new IllegalArgumentException();
+                XdrFloatArray.encode(buf, val);
+            }
+
+            public final float[] decode(ByteBuffer buf) {
+                final float[] val = new float[size];
+                XdrFloatArray.decode(buf, val);
+                return val;
+            }
+
+            public final int size(float[] val) {
+                if (val.length != size)
+                    throw new IllegalArgumentException();
+                return XdrFloatArray.size(val);
+            }
+
+            public final int getFixedSize() {
+                return Utility.saturate((long) size * XdrFloat.SIZE);
+            }
+
+            public final int getMaxSize() {
+                return Utility.saturate((long) size * XdrFloat.SIZE);
+            }
+        };
+    }
+
+    public static void encodeVar(ByteBuffer buf, float[] val, int offset,
+            int len, int maxsize) {
+        if (maxsize < len)
+            throw new IllegalArgumentException();
+        if ((buf.remaining() - XdrInt.SIZE) / XdrFloat.SIZE < len)
+            throw new BufferOverflowException();
+        XdrInt.encode(buf, len);
+        XdrFloatArray.encode(buf, val, offset, len);
+    }
+
+    public static void encodeVar(ByteBuffer buf, float[] val, int maxsize) {
+        encodeVar(buf, val, 0, val.length, maxsize);
+    }
+
+    public static void encodeVar(ByteBuffer buf, float[] val) {
+        encodeVar(buf, val, Integer.MAX_VALUE);
+    }
+
+    public static float[] decodeVar(ByteBuffer buf, int maxsize) {
+        final int len = XdrInt.decode(buf);
+        if (len < 0 || maxsize < len)
+            throw new IllegalArgumentException();
+        // Checked before allocating, so a corrupt length cannot cause a huge
+        // allocation.
+        if (buf.remaining() / XdrFloat.SIZE < len)
+            throw new BufferUnderflowException();
+        final float[] dst = new float[len];
+        XdrFloatArray.decode(buf, dst, 0, len);
+        return dst;
+    }
+
+    public static float[] decodeVar(ByteBuffer buf) {
+        return decodeVar(buf, Integer.MAX_VALUE);
+    }
+
+    public static int sizeVar(float[] val, int offset, int len, int maxsize) {
+        if (maxsize < len)
+            throw new IllegalArgumentException();
+        return Utility.checkedSize(XdrInt.SIZE + (long) len
+                * XdrFloat.SIZE);
+    }
+
+    public static int sizeVar(float[] val, int maxsize) {
+        return sizeVar(val, 0, val.length, maxsize);
+    }
+
+    public static int sizeVar(float[] val) {
+        return sizeVar(val, Integer.MAX_VALUE);
+    }
+
+    public static SizedCodec<float[]> newVarCodec(final int maxsize) {
+        return new SizedCodec<float[]>() {
+            public final void encode(ByteBuffer buf, float[] val) {
+                XdrFloatArray.encodeVar(buf, val, maxsize);
+            }
+
+            public final float[] decode(ByteBuffer buf) {
+                return XdrFloatArray.decodeVar(buf, maxsize);
+            }
+
+            public final int size(float[] val) {
+                return XdrFloatArray.sizeVar(val, maxsize);
+            }
+
+            public final int getFixedSize() {
+                return -1;
+            }
+
+            public final int getMaxSize() {
+                return Utility.saturate(XdrInt.SIZE + (long) maxsize
+                        * XdrFloat.SIZE);
+            }
+        };
+    }
+
+    public static final SizedCodec<float[]> VAR_CODEC = newVarCodec(Integer.MAX_VALUE);
+}
@@ -32,7 +32,7 @@ public final class XdrHyper {
 
     public static final int SIZE = 8;
 
-    public static final Codec<Long> CODEC = new Codec<Long>() {
+    public static final SizedCodec<Long> CODEC = new SizedCodec<Long>() {
         public final void encode(ByteBuffer buf, Long val) {
             XdrHyper.encode(buf, val);
         }
@@ -44,5 +44,27 @@ public final class XdrHyper {
         public final int size(Long val) {
             return SIZE;
         }
+
+        public final int getFixedSize() {
+            return SIZE;
+        }
+
+        public final int getMaxSize() {
+            return SIZE;
+        }
+    };
+
+    public static final LongCodec LONG_CODEC = new LongCodec() {
+        public final void encode(ByteBuffer buf, long val) {
+            XdrHyper.encode(buf, val);
+        }
+
+        public final long decode(ByteBuffer buf) {
+            return XdrHyper.decode(buf);
+        }
+
+        public final int size(long val) {
+            return SIZE;
+        }
     };
 }
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public final class XdrHyperArray {
+
+    private XdrHyperArray() {
+    }
+
+    // One bounds check for the whole array, followed by a bulk transfer.
+    public static void encode(ByteBuffer buf, long[] val, int offset, int len) {
+        assert ByteOrder.BIG_ENDIAN == buf.order();
+        if (buf.remaining() / XdrHyper.SIZE < len)
+            throw new BufferOverflowException();
+        final int pos = buf.position();
+        buf.asLongBuffer().put(val, offset, len);
+        buf.position(pos + len * XdrHyper.SIZE);
+    }
+
+    public static void encode(ByteBuffer buf, long[] val) {
+        encode(buf, val, 0, val.length);
+    }
+
+    public static void decode(ByteBuffer buf, long[] val, int offset, int len) {
+        assert ByteOrder.BIG_ENDIAN == buf.order();
+        if (buf.remaining() / XdrHyper.SIZE < len)
+            throw new BufferUnderflowException();
+        final int pos = buf.position();
+        buf.asLongBuffer().get(val, offset, len);
+        buf.position(pos + len * XdrHyper.SIZE);
+    }
+
+    public static void decode(ByteBuffer buf, long[] val) {
+        decode(buf, val, 0, val.length);
+    }
+
+    public static int size(long[] val, int offset, int len) {
+        return Utility.checkedSize((long) len * XdrHyper.SIZE);
+    }
+
+    public static int size(long[] val) {
+        return size(val, 0, val.length);
+    }
+
+    public static SizedCodec<long[]> newCodec(final int size) {
+        return new SizedCodec<long[]>() {
+            public final void encode(ByteBuffer buf, long[] val) {
+                if (val.length != size)
+                    throw new IllegalArgumentException();
+                XdrHyperArray.encode(buf, val);
+            }
+
+            public final long[] decode(ByteBuffer buf) {
+                final long[] val = new long[size];
+                XdrHyperArray.decode(buf, val);
+                return val;
+            }
+
+            public final int size(long[] val) {
+                if (val.length != size)
+                    throw new IllegalArgumentException();
+                return XdrHyperArray.size(val);
+            }
+
+            public final int getFixedSize() {
+                return Utility.saturate((long) size * XdrHyper.SIZE);
+            }
+
+            public final int getMaxSize() {
+                return Utility.saturate((long) size * XdrHyper.SIZE);
+            }
+        };
+    }
+
+    public static void encodeVar(ByteBuffer buf, long[] val, int offset,
+            int len, int maxsize) {
+        if (maxsize < len)
+            throw new IllegalArgumentException();
+        if ((buf.remaining() - XdrInt.SIZE) / XdrHyper.SIZE < len)
+            throw new BufferOverflowException();
+        XdrInt.encode(buf, len);
+        XdrHyperArray.encode(buf, val, offset, len);
+    }
+
+    public static void encodeVar(ByteBuffer buf, long[] val, int maxsize) {
+        encodeVar(buf, val, 0, val.length, maxsize);
+    }
+
+    public static void encodeVar(ByteBuffer buf, long[] val) {
+        encodeVar(buf, val, Integer.MAX_VALUE);
+    }
+
+    public static long[] decodeVar(ByteBuffer buf, int maxsize) {
+        final int len = XdrInt.decode(buf);
+        if (len < 0 || maxsize < len)
+            throw new IllegalArgumentException();
+        // Checked before allocating, so a corrupt length cannot cause a huge
+        // allocation.
+        if (buf.remaining() / XdrHyper.SIZE < len)
+            throw new BufferUnderflowException();
+        final long[] dst = new long[len];
+        XdrHyperArray.decode(buf, dst, 0, len);
+        return dst;
+    }
+
+    public static long[] decodeVar(ByteBuffer buf) {
+        return decodeVar(buf, Integer.MAX_VALUE);
+    }
+
+    public static int sizeVar(long[] val, int offset, int len, int maxsize) {
+        if (maxsize < len)
+            throw new IllegalArgumentException();
+        return Utility.checkedSize(XdrInt.SIZE + (long) len
+                * XdrHyper.SIZE);
+    }
+
+    public static int sizeVar(long[] val, int maxsize) {
+        return sizeVar(val, 0, val.length, maxsize);
+    }
+
+    public static int sizeVar(long[] val) {
+        return sizeVar(val, Integer.MAX_VALUE);
+    }
+
+    public static SizedCodec<long[]> newVarCodec(final int maxsize) {
+        return new SizedCodec<long[]>() {
+            public final void encode(ByteBuffer buf, long[] val) {
+                XdrHyperArray.encodeVar(buf, val, maxsize);
+            }
+
+            public final long[] decode(ByteBuffer buf) {
+                return XdrHyperArray.decodeVar(buf, maxsize);
+            }
+
+            public final int size(long[] val) {
+                return XdrHyperArray.sizeVar(val, maxsize);
+            }
+
+            public final int getFixedSize() {
+                return -1;
+            }
+
+            public final int getMaxSize() {
+                return Utility.saturate(XdrInt.SIZE + (long) maxsize
+                        * XdrHyper.SIZE);
+            }
+        };
+    }
+
+    public static final SizedCodec<long[]> VAR_CODEC = newVarCodec(Integer.MAX_VALUE);
+}
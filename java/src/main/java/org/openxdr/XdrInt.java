@@ -32,7 +32,7 @@ public final class XdrInt {
 
     public static final int SIZE = 4;
 
-    public static final Codec<Integer> CODEC = new Codec<Integer>() {
+    public static final SizedCodec<Integer> CODEC = new SizedCodec<Integer>() {
         public final void encode(ByteBuffer buf, Integer val) {
             XdrInt.encode(buf, val);
         }
@@ -44,5 +44,27 @@ public final class XdrInt {
         public final int size(Integer val) {
             return SIZE;
         }
+
+        public final int getFixedSize() {
+            return SIZE;
+        }
+
+        public final int getMaxSize() {
+            return SIZE;
+        }
+    };
+
+    public static final IntCodec INT_CODEC = new IntCodec() {
+        public final void encode(ByteBuffer buf, int val) {
+            XdrInt.encode(buf, val);
+        }
+
+        public final int decode(ByteBuffer buf) {
+            return XdrInt.decode(buf);
+        }
+
+        public final int size(int val) {
+            return SIZE;
+        }
     };
 }
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public final class XdrIntArray {
+
+    private XdrIntArray() {
+    }
+
+    // One bounds check for the whole array, followed by a bulk transfer.
+    public static void encode(ByteBuffer buf, int[] val, int offset, int len) {
+        assert ByteOrder.BIG_ENDIAN == buf.order();
+        if (buf.remaining() / XdrInt.SIZE < len)
+            throw new BufferOverflowException();
+        final int pos = buf.position();
+        buf.asIntBuffer().put(val, offset, len);
+        buf.position(pos + len * XdrInt.SIZE);
+    }
+
+    public static void encode(ByteBuffer buf, int[] val) {
+        encode(buf, val, 0, val.length);
+    }
+
+    public static void decode(ByteBuffer buf, int[] val, int offset, int len) {
+        assert ByteOrder.BIG_ENDIAN == buf.order();
+        if (buf.remaining() / XdrInt.SIZE < len)
+            throw new BufferUnderflowException();
+        final int pos = buf.position();
+        buf.asIntBuffer().get(val, offset, len);
+        buf.position(pos + len * XdrInt.SIZE);
+    }
+
+    public static void decode(ByteBuffer buf, int[] val) {
+        decode(buf, val, 0, val.length);
+    }
+
+    public static int size(int[] val, int offset, int len) {
+        return Utility.checkedSize((long) len * XdrInt.SIZE);
+    }
+
+    public static int size(int[] val) {
+        return size(val, 0, val.length);
+    }
+
+    public static SizedCodec<int[]> newCodec(final int size) {
+        return new SizedCodec<int[]>() {
+            public final void encode(ByteBuffer buf, int[] val) {
+                if (val.length != size)
+                    throw new IllegalArgumentException();
+                XdrIntArray.encode(buf, val);
+            }
+
+            public final int[] decode(ByteBuffer buf) {
+                final int[] val = new int[size];
+                XdrIntArray.decode(buf, val);
+                return val;
+            }
+
+            public final int size(int[] val) {
+                if (val.length != size)
+                    throw new IllegalArgumentException();
+                return XdrIntArray.size(val);
+            }
+
+            public final int getFixedSize() {
+                return Utility.saturate((long) size * XdrInt.SIZE);
+            }
+
+            public final int getMaxSize() {
+                return Utility.saturate((long) size * XdrInt.SIZE);
+            }
+        };
+    }
+
+    public static void encodeVar(ByteBuffer buf, int[] val, int offset,
+            int len, int maxsize) {
+        if (maxsize < len)
+            throw new IllegalArgumentException();
+        if ((buf.remaining() - XdrInt.SIZE) / XdrInt.SIZE < len)
+            throw new BufferOverflowException();
+        XdrInt.encode(buf, len);
+        XdrIntArray.encode(buf, val, offset, len);
+    }
+
+    public static void encodeVar(ByteBuffer buf, int[] val, int maxsize) {
+        encodeVar(buf, val, 0, val.length, maxsize);
+    }
+
+    public static void encodeVar(ByteBuffer buf, int[] val) {
+        encodeVar(buf, val, Integer.MAX_VALUE);
+    }
+
+    public static int[] decodeVar(ByteBuffer buf, int maxsize) {
+        final int len = XdrInt.decode(buf);
+        if (len < 0 || maxsize < len)
+            throw new IllegalArgumentException();
+        // Checked before allocating, so a corrupt length cannot cause a huge
+        // allocation.
+        if (buf.remaining() / XdrInt.SIZE < len)
+            throw new BufferUnderflowException();
+        final int[] dst = new int[len];
+        XdrIntArray.decode(buf, dst, 0, len);
+        return dst;
+    }
+
+    public static int[] decodeVar(ByteBuffer buf) {
+        return decodeVar(buf, Integer.MAX_VALUE);
+    }
+
+    public static int sizeVar(int[] val, int offset, int len, int maxsize) {
+        if (maxsize < len)
+            throw new IllegalArgumentException();
+        return Utility.checkedSize(XdrInt.SIZE + (long) len
+                * XdrInt.SIZE);
+    }
+
+    public static int sizeVar(int[] val, int maxsize) {
+        return sizeVar(val, 0, val.length, maxsize);
+    }
+
+    public static int sizeVar(int[] val) {
+        return sizeVar(val, Integer.MAX_VALUE);
+    }
+
+    public static SizedCodec<int[]> newVarCodec(final int maxsize) {
+        return new SizedCodec<int[]>() {
+            public final void encode(ByteBuffer buf, int[] val) {
+                XdrIntArray.encodeVar(buf, val, maxsize);
+            }
+
+            public final int[] decode(ByteBuffer buf) {
+                return XdrIntArray.decodeVar(buf, maxsize);
+            }
+
+            public final int size(int[] val) {
+                return XdrIntArray.sizeVar(val, maxsize);
+            }
+
+            public final int getFixedSize() {
+                return -1;
+            }
+
+            public final int getMaxSize() {
+                return Utility.saturate(XdrInt.SIZE + (long) maxsize
+                        * XdrInt.SIZE);
+            }
+        };
+    }
+
+    public static final SizedCodec<int[]> VAR_CODEC = newVarCodec(Integer.MAX_VALUE);
+}
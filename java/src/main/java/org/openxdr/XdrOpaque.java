@@ -15,6 +15,7 @@ package org.openxdr;
 import static org.openxdr.Utility.aligned;
 import static org.openxdr.Utility.decodeAlign;
 import static org.openxdr.Utility.encodeAlign;
+import static org.openxdr.Utility.sliceAlign;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.CharacterCodingException;
@@ -48,8 +49,8 @@ public final class XdrOpaque {
         return size(val, 0, val.length);
     }
 
-    public static Codec<Opaque> newCodec(final int size) {
-        return new Codec<Opaque>() {
+    public static SizedCodec<Opaque> newCodec(final int size) {
+        return new SizedCodec<Opaque>() {
             public final void encode(ByteBuffer buf, Opaque val) {
                 if (val.getLength() != size)
                     throw new IllegalArgumentException();
@@ -70,6 +71,54 @@ public final class XdrOpaque {
                 return XdrOpaque.size(val.getBuffer(), val.getOffset(), val
                         .getLength());
             }
+
+            public final int getFixedSize() {
+                return Utility.aligned(size);
+            }
+
+            public final int getMaxSize() {
+                return Utility.aligned(size);
+            }
+        };
+    }
+
+    public static void encode(ByteBuffer buf, ByteBuffer val) {
+        encodeAlign(buf, val);
+    }
+
+    public static ByteBuffer decode(ByteBuffer buf, int len) {
+        return sliceAlign(buf, len);
+    }
+
+    public static int size(ByteBuffer val) {
+        return aligned(val.remaining());
+    }
+
+    public static SizedCodec<ByteBuffer> newSliceCodec(final int size) {
+        return new SizedCodec<ByteBuffer>() {
+            public final void encode(ByteBuffer buf, ByteBuffer val) {
+                if (val.remaining() != size)
+                    throw new IllegalArgumentException();
+                XdrOpaque.encode(buf, val);
+            }
+
+            public final ByteBuffer decode(ByteBuffer buf) {
+                return XdrOpaque.decode(buf, size);
+            }
+
+            public final int size(ByteBuffer val) {
+                if (val.remaining() != size)
+                    throw new IllegalArgumentException();
+                return XdrOpaque.size(val);
+            }
+
+            public final int getFixedSize() {
+                return Utility.aligned(size);
+            }
+
+            public final int getMaxSize() {
+                return Utility.aligned(size);
+            }
         };
     }
 
@@ -102,6 +151,29 @@ public final class XdrOpaque {
         return decodeVar(buf, Integer.MAX_VALUE);
     }
 
+    public static void encodeVar(ByteBuffer buf, ByteBuffer val, int maxsize) {
+        final int len = val.remaining();
+        if (maxsize < len)
+            throw new IllegalArgumentException();
+        XdrInt.encode(buf, len);
+        XdrOpaque.encode(buf, val);
+    }
+
+    public static void encodeVar(ByteBuffer buf, ByteBuffer val) {
+        encodeVar(buf, val, Integer.MAX_VALUE);
+    }
+
+    public static ByteBuffer decodeVarSlice(ByteBuffer buf, int maxsize) {
+        final int len = XdrInt.decode(buf);
+        if (maxsize < len)
+            throw new IllegalArgumentException();
+        return XdrOpaque.decode(buf, len);
+    }
+
+    public static ByteBuffer decodeVarSlice(ByteBuffer buf) {
+        return decodeVarSlice(buf, Integer.MAX_VALUE);
+    }
+
     public static int sizeVar(byte[] val, int offset, int len, int maxsize) {
         if (maxsize < len)
             throw new IllegalArgumentException();
@@ -116,8 +188,19 @@ public final class XdrOpaque {
         return sizeVar(val, Integer.MAX_VALUE);
     }
 
-    public static Codec<Opaque> newVarCodec(final int maxsize) {
-        return new Codec<Opaque>() {
+    public static int sizeVar(ByteBuffer val, int maxsize) {
+        final int len = val.remaining();
+        if (maxsize < len)
+            throw new IllegalArgumentException();
+        return XdrInt.SIZE + aligned(len);
+    }
+
+    public static int sizeVar(ByteBuffer val) {
+        return sizeVar(val, Integer.MAX_VALUE);
+    }
+
+    public static SizedCodec<Opaque> newVarCodec(final int maxsize) {
+        return new SizedCodec<Opaque>() {
             public final void encode(ByteBuffer buf, Opaque val)
                     throws CharacterCodingException {
                 XdrOpaque.encodeVar(buf, val.getBuffer(), val.getOffset(), val
@@ -133,8 +216,51 @@ public final class XdrOpaque {
                 return XdrOpaque.sizeVar(val.getBuffer(), val.getOffset(), val
                         .getLength(), maxsize);
             }
+
+            public final int getFixedSize() {
+                return -1;
+            }
+
+            public final int getMaxSize() {
+                return Utility.maxVarSize(maxsize);
+            }
+        };
+    }
+
+    public static final SizedCodec<Opaque> VAR_CODEC = newVarCodec(Integer.MAX_VALUE);
+
+    // Slice codecs decode to read-only views over the source buffer, which
+    // are only valid for as long as its contents are.
+    public static SizedCodec<ByteBuffer> newVarSliceCodec(final int maxsize) {
+        return new SizedCodec<ByteBuffer>() {
+            public final void encode(ByteBuffer buf, ByteBuffer val) {
+                XdrOpaque.encodeVar(buf, val, maxsize);
+            }
+
+            public final ByteBuffer decode(ByteBuffer buf) {
+                return XdrOpaque.decodeVarSlice(buf, maxsize);
+            }
+
+            public final int size(ByteBuffer val) {
+                return XdrOpaque.sizeVar(val, maxsize);
+            }
+
+            public final int getFixedSize() {
+                return -1;
+            }
+
+            public final int getMaxSize() {
+                return Utility.maxVarSize(maxsize);
+            }
         };
     }
 
-    public static final Codec<Opaque> VAR_CODEC = newVarCodec(Integer.MAX_VALUE);
+    public static final SizedCodec<ByteBuffer> VAR_SLICE_CODEC = newVarSliceCodec(Integer.MAX_VALUE);
+
+    // Copies a view's remaining bytes so that they outlive its buffer.
+    public static Opaque detach(ByteBuffer val) {
+        final Opaque opaque = new Opaque(val.remaining());
+        val.duplicate().get(opaque.getBuffer());
+        return opaque;
+    }
 }
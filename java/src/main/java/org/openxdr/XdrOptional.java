@@ -42,8 +42,12 @@ public final class XdrOptional {
         return XdrBool.SIZE + n;
     }
 
-    public static <T> Codec<T> newCodec(final Codec<T> codec) {
-        return new Codec<T>() {
+    public static <T> SizedCodec<T> newCodec(final Codec<T> codec) {
+        final int fixedSize = 0 == Utility.fixedSize(codec) ? XdrBool.SIZE
+                : -1;
+        final int maxSize = Utility.saturate((long) XdrBool.SIZE
+                + Utility.maxSize(codec));
+        return new SizedCodec<T>() {
             public final void encode(ByteBuffer buf, T val)
                     throws CharacterCodingException {
                 XdrOptional.encode(buf, val, codec);
@@ -57,6 +61,90 @@ public final class XdrOptional {
             public final int size(T val) {
                 return XdrOptional.size(val, codec);
             }
+
+            public final int getFixedSize() {
+                return fixedSize;
+            }
+
+            public final int getMaxSize() {
+                return maxSize;
+            }
         };
     }
+
+    public static void encode(ByteBuffer buf, boolean present, int val,
+            IntCodec codec) {
+        XdrBool.encode(buf, present);
+        if (present)
+            codec.encode(buf, val);
+    }
+
+    // Returns absent if the value is not present.
+    public static int decode(ByteBuffer buf, IntCodec codec, int absent) {
+        return XdrBool.decode(buf) ? codec.decode(buf) : absent;
+    }
+
+    public static int size(boolean present, int val, IntCodec codec) {
+        return XdrBool.SIZE + (present ? codec.size(val) : 0);
+    }
+
+    public static void encode(ByteBuffer buf, boolean present, long val,
+            LongCodec codec) {
+        XdrBool.encode(buf, present);
+        if (present)
+            codec.encode(buf, val);
+    }
+
+    public static long decode(ByteBuffer buf, LongCodec codec, long absent) {
+        return XdrBool.decode(buf) ? codec.decode(buf) : absent;
+    }
+
+    public static int size(boolean present, long val, LongCodec codec) {
+        return XdrBool.SIZE + (present ? codec.size(val) : 0);
+    }
+
+    public static void encode(ByteBuffer buf, boolean present, float val,
+            FloatCodec codec) {
+        XdrBool.encode(buf, present);
+        if (present)
+            codec.encode(buf, val);
+    }
+
+    public static float decode(ByteBuffer buf, FloatCodec codec, float absent) {
+        return XdrBool.decode(buf) ? codec.decode(buf) : absent;
+    }
+
+    public static int size(boolean present, float val, FloatCodec codec) {
+        return XdrBool.SIZE + (present ? codec.size(val) : 0);
+    }
+
+    public static void encode(ByteBuffer buf, boolean present, double val,
+            DoubleCodec codec) {
+        XdrBool.encode(buf, present);
+        if (present)
+            codec.encode(buf, val);
+    }
+
+    public static double decode(ByteBuffer buf, DoubleCodec codec, double absent) {
+        return XdrBool.decode(buf) ? codec.decode(buf) : absent;
+    }
+
+    public static int size(boolean present, double val, DoubleCodec codec) {
+        return XdrBool.SIZE + (present ? codec.size(val) : 0);
+    }
+
+    public static void encode(ByteBuffer buf, boolean present, boolean val,
+            BooleanCodec codec) {
+        XdrBool.encode(buf, present);
+        if (present)
+            codec.encode(buf, val);
+    }
+
+    public static boolean decode(ByteBuffer buf, BooleanCodec codec, boolean absent) {
+        return XdrBool.decode(buf) ? codec.decode(buf) : absent;
+    }
+
+    public static int size(boolean present, boolean val, BooleanCodec codec) {
+        return XdrBool.SIZE + (present ? codec.size(val) : 0);
+    }
 }
@@ -0,0 +1,345 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Factories for PartialDecoder state machines. Fixed-size values are
+// staged in a small scratch buffer when they straddle two reads; opaques and
+// strings are copied straight into their destination array as bytes arrive.
+public final class XdrPartial {
+
+    // Bound on opaques and strings when the caller gives none.
+    public static final int DEFAULT_MAXSIZE = 1 << 20;
+
+    // Initial capacity of decoded lists, whatever count the peer claims.
+    private static final int MAX_PRESIZE = 1024;
+
+    // Opaques are first allocated no larger than the bytes at hand plus
+    // this, and then grow as bytes arrive, so that a length alone cannot
+    // force a large allocation.
+    private static final int MAX_PREALLOC = 8192;
+
+    private XdrPartial() {
+    }
+
+    private static int skip(ByteBuffer buf, int len) {
+        final int n = Math.min(buf.remaining(), len);
+        buf.position(buf.position() + n);
+        return len - n;
+    }
+
+    // Decodes values of a fixed size, directly from buf when the whole value
+    // is present.
+    public static <T> PartialDecoder<T> newDecoder(final SizedCodec<T> codec) {
+        final int size = codec.getFixedSize();
+        if (size < 0)
+            throw new IllegalArgumentException();
+        final ByteBuffer scratch = XdrBuffer.allocate(size);
+        return new PartialDecoder<T>() {
+            private boolean done;
+            private T val;
+
+            public final boolean decode(ByteBuffer buf)
+                    throws CharacterCodingException {
+                if (done)
+                    return true;
+                if (0 == scratch.position() && size <= buf.remaining())
+                    val = codec.decode(buf);
+                else {
+                    final ByteBuffer src = buf.duplicate();
+                    src.limit(src.position()
+                            + Math.min(src.remaining(), scratch.remaining()));
+                    buf.position(src.limit());
+                    scratch.put(src);
+                    if (scratch.hasRemaining())
+                        return false;
+                    scratch.flip();
+                    val = codec.decode(scratch);
+                    scratch.clear();
+                }
+                done = true;
+                return true;
+            }
+
+            public final T getValue() {
+                return val;
+            }
+
+            public final void reset() {
+                scratch.clear();
+                done = false;
+                val = null;
+            }
+        };
+    }
+
+    public static PartialDecoder<byte[]> newOpaqueDecoder(final int maxsize) {
+        return new PartialDecoder<byte[]>() {
+            private final PartialDecoder<Integer> count = newDecoder(XdrInt.CODEC);
+            private boolean done;
+            private byte[] val;
+            private int len;
+            private int pos;
+            private int pad;
+
+            public final boolean decode(ByteBuffer buf)
+                    throws CharacterCodingException {
+                if (done)
+                    return true;
+                if (null == val) {
+                    if (!count.decode(buf))
+                        return false;
+                    len = count.getValue();
+                    if (len < 0 || maxsize < len)
+                        throw new IllegalArgumentException();
+                    val = new byte[Math.min(len, buf.remaining()
+                            + MAX_PREALLOC)];
+                    pos = 0;
+                    pad = Utility.aligned(len) - len;
+                }
+                final int n = Math.min(buf.remaining(), len - pos);
+                if (val.length < pos + n)
+                    val = Arrays.copyOf(val, (int) Math.min(len, Math.max(
+                            2L * val.length, pos + n)));
+                buf.get(val, pos, n);
+                pos += n;
+                if (pos < len || 0 < (pad = skip(buf, pad)))
+                    return false;
+                done = true;
+                return true;
+            }
+
+            public final byte[] getValue() {
+                return val;
+            }
+
+            public final void reset() {
+                count.reset();
+                done = false;
+                val = null;
+            }
+        };
+    }
+
+    public static PartialDecoder<byte[]> newOpaqueDecoder() {
+        return newOpaqueDecoder(DEFAULT_MAXSIZE);
+    }
+
+    public static PartialDecoder<String> newStringDecoder(final int maxsize) {
+        return new PartialDecoder<String>() {
+            private final PartialDecoder<byte[]> bytes = newOpaqueDecoder(maxsize);
+            private String val;
+
+            public final boolean decode(ByteBuffer buf)
+                    throws CharacterCodingException {
+                if (null != val)
+                    return true;
+                if (!bytes.decode(buf))
+                    return false;
+                final byte[] arr = bytes.getValue();
+                val = Utility.decodeUtf8(ByteBuffer.wrap(arr), 0, arr.length);
+                return true;
+            }
+
+            public final String getValue() {
+                return val;
+            }
+
+            public final void reset() {
+                bytes.reset();
+                val = null;
+            }
+        };
+    }
+
+    public static PartialDecoder<String> newStringDecoder() {
+        return newStringDecoder(DEFAULT_MAXSIZE);
+    }
+
+    // Decodes a variable-length array into a list, resetting the element
+    // decoder between elements.
+    public static <T> PartialDecoder<List<T>> newArrayDecoder(
+            final PartialDecoder<T> elem, final int maxsize) {
+        return new PartialDecoder<List<T>>() {
+            private final PartialDecoder<Integer> count = newDecoder(XdrInt.CODEC);
+            private boolean done;
+            private List<T> val;
+            private int len;
+
+            public final boolean decode(ByteBuffer buf)
+                    throws CharacterCodingException {
+                if (done)
+                    return true;
+                if (null == val) {
+                    if (!count.decode(buf))
+                        return false;
+                    len = count.getValue();
+                    if (len < 0 || maxsize < len)
+                        throw new IllegalArgumentException();
+                    val = new ArrayList<T>(Math.min(len, MAX_PRESIZE));
+                }
+                while (val.size() < len) {
+                    if (!elem.decode(buf))
+                        return false;
+                    val.add(elem.getValue());
+                    elem.reset();
+                }
+                done = true;
+                return true;
+            }
+
+            public final List<T> getValue() {
+                return val;
+            }
+
+            public final void reset() {
+                count.reset();
+                elem.reset();
+                done = false;
+                val = null;
+            }
+        };
+    }
+
+    public static <T> PartialDecoder<List<T>> newArrayDecoder(
+            PartialDecoder<T> elem) {
+        return newArrayDecoder(elem, Integer.MAX_VALUE);
+    }
+
+    public static <T> PartialDecoder<T> newOptionalDecoder(
+            final PartialDecoder<T> elem) {
+        return new PartialDecoder<T>() {
+            private final PartialDecoder<Boolean> present = newDecoder(XdrBool.CODEC);
+            private boolean done;
+            private T val;
+
+            public final boolean decode(ByteBuffer buf)
+                    throws CharacterCodingException {
+                if (done)
+                    return true;
+                if (!present.decode(buf))
+                    return false;
+                if (present.getValue()) {
+                    if (!elem.decode(buf))
+                        return false;
+                    val = elem.getValue();
+                }
+                done = true;
+                return true;
+            }
+
+            public final T getValue() {
+                return val;
+            }
+
+            public final void reset() {
+                present.reset();
+                elem.reset();
+                done = false;
+                val = null;
+            }
+        };
+    }
+
+    // Decodes the fields in order, then passes their values to the builder.
+    public static <T> PartialDecoder<T> newStructDecoder(
+            final Function<Object[], T> builder,
+            final PartialDecoder<?>... fields) {
+        return new PartialDecoder<T>() {
+            private final Object[] vals = new Object[fields.length];
+            private int i;
+            private boolean done;
+            private T val;
+
+            public final boolean decode(ByteBuffer buf)
+                    throws CharacterCodingException {
+                if (done)
+                    return true;
+                for (; i < fields.length; ++i) {
+                    if (!fields[i].decode(buf))
+                        return false;
+                    vals[i] = fields[i].getValue();
+                }
+                val = builder.apply(vals.clone());
+                done = true;
+                return true;
+            }
+
+            public final T getValue() {
+                return val;
+            }
+
+            public final void reset() {
+                for (final PartialDecoder<?> field : fields)
+                    field.reset();
+                i = 0;
+                done = false;
+                val = null;
+            }
+        };
+    }
+
+    // Decodes a union with an int discriminant; def, which may be null,
+    // decodes any unlisted case.
+    public static PartialDecoder<Union<Integer>> newUnionDecoder(
+            final Map<Integer, PartialDecoder<?>> cases,
+            final PartialDecoder<?> def) {
+        return new PartialDecoder<Union<Integer>>() {
+            private final PartialDecoder<Integer> type = newDecoder(XdrInt.CODEC);
+            private PartialDecoder<?> arm;
+            private Union<Integer> val;
+
+            public final boolean decode(ByteBuffer buf)
+                    throws CharacterCodingException {
+                if (null != val)
+                    return true;
+                if (null == arm) {
+                    if (!type.decode(buf))
+                        return false;
+                    arm = cases.get(type.getValue());
+                    if (null == arm)
+                        arm = def;
+                    if (null == arm)
+                        throw new IllegalArgumentException();
+                    arm.reset();
+                }
+                if (!arm.decode(buf))
+                    return false;
+                val = new Union<Integer>(type.getValue(), arm.getValue());
+                return true;
+            }
+
+            public final Union<Integer> getValue() {
+                return val;
+            }
+
+            public final void reset() {
+                type.reset();
+                arm = null;
+                val = null;
+            }
+        };
+    }
+
+    public static PartialDecoder<Union<Integer>> newUnionDecoder(
+            Map<Integer, PartialDecoder<?>> cases) {
+        return newUnionDecoder(cases, null);
+    }
+}
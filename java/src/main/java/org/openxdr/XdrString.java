@@ -12,35 +12,63 @@
  */
 package org.openxdr;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static org.openxdr.Utility.aligned;
 import static org.openxdr.Utility.decodeAlign;
 import static org.openxdr.Utility.encodeAlign;
-import static org.openxdr.Utility.getUtf8Decoder;
-import static org.openxdr.Utility.getUtf8Encoder;
+import static org.openxdr.Utility.decodeUtf8;
+import static org.openxdr.Utility.encodeUtf8;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
-import java.nio.charset.CharsetDecoder;
-import java.nio.charset.CharsetEncoder;
-import java.nio.charset.CoderResult;
 
 public final class XdrString {
 
     private XdrString() {
     }
 
+    // Copies the leading run of ASCII chars straight into the buffer and
+    // returns the index of the first char that was not copied.
+    private static int encodeAscii(ByteBuffer buf, String val) {
+        final int pos = buf.position();
+        final int n = Math.min(val.length(), buf.remaining());
+        int i = 0;
+        if (buf.hasArray()) {
+            final byte[] arr = buf.array();
+            final int offset = buf.arrayOffset() + pos;
+            for (char c; i < n && (c = val.charAt(i)) < 0x80; ++i)
+                arr[offset + i] = (byte) c;
+        } else
+            for (char c; i < n && (c = val.charAt(i)) < 0x80; ++i)
+                buf.put(pos + i, (byte) c);
+        buf.position(pos + i);
+        return i;
+    }
+
+    // Backpatches the length word reserved at start with the number of bytes
+    // written after it.
+    private static void encodeLength(ByteBuffer buf, int start, int maxsize) {
+        final int len = buf.position() - start - XdrInt.SIZE;
+        if (maxsize < len) {
+            buf.position(start);
+            throw new IllegalArgumentException();
+        }
+        buf.putInt(start, len);
+        encodeAlign(buf);
+    }
+
     public static void encode(ByteBuffer buf, CharBuffer val, int maxsize)
             throws CharacterCodingException {
-        final int len = val.length();
-        if (maxsize < len)
+        // No UTF-8 encoding is shorter than its char count.
+        if (maxsize < val.length())
             throw new IllegalArgumentException();
-        XdrInt.encode(buf, len);
-        final CharsetEncoder encoder = getUtf8Encoder();
-        final CoderResult result = encoder.encode(val, buf, true);
-        if (!result.isUnderflow())
-            result.throwException();
-        encodeAlign(buf);
+        final int start = buf.position();
+        XdrInt.encode(buf, 0);
+        encodeUtf8(buf, val, 0, start);
+        encodeLength(buf, start, maxsize);
+        val.position(val.limit());
     }
 
     public static void encode(ByteBuffer buf, CharBuffer val)
@@ -50,56 +78,118 @@ public final class XdrString {
 
     public static void encode(ByteBuffer buf, String val, int maxsize)
             throws CharacterCodingException {
-        encode(buf, CharBuffer.wrap(val), maxsize);
+        final int chars = val.length();
+        if (maxsize < chars)
+            throw new IllegalArgumentException();
+        final int start = buf.position();
+        XdrInt.encode(buf, 0);
+        final int i = encodeAscii(buf, val);
+        if (i < chars)
+            encodeUtf8(buf, val, i, start);
+        encodeLength(buf, start, maxsize);
     }
 
     public static void encode(ByteBuffer buf, String val)
             throws CharacterCodingException {
-        encode(buf, CharBuffer.wrap(val));
+        encode(buf, val, Integer.MAX_VALUE);
+    }
+
+    private static boolean isAscii(byte[] val, int offset, int len) {
+        final int j = offset + len;
+        for (int i = offset; i < j; ++i)
+            if (val[i] < 0)
+                return false;
+        return true;
+    }
+
+    private static boolean isAscii(ByteBuffer buf, int pos, int len) {
+        final int j = pos + len;
+        for (int i = pos; i < j; ++i)
+            if (buf.get(i) < 0)
+                return false;
+        return true;
     }
 
     public static String decode(ByteBuffer buf, int maxsize)
             throws CharacterCodingException {
         final int len = XdrInt.decode(buf);
-        if (maxsize < len)
+        if (len < 0 || maxsize < len)
             throw new IllegalArgumentException();
-        final CharBuffer val = CharBuffer.allocate(len);
-        final CharsetDecoder decoder = getUtf8Decoder();
-        final CoderResult result = decoder.decode(buf, val, true);
-        if (0 != val.remaining())
-            result.throwException();
+        final int pos = buf.position();
+        if (buf.limit() - pos < len)
+            throw new BufferUnderflowException();
+        final String val;
+        if (buf.hasArray()) {
+            final byte[] arr = buf.array();
+            final int offset = buf.arrayOffset() + pos;
+            // ASCII strings are copied straight from the backing array.
+            if (isAscii(arr, offset, len))
+                val = new String(arr, offset, len, ISO_8859_1);
+            else
+                val = decodeUtf8(buf, pos, len);
+        } else if (isAscii(buf, pos, len)) {
+            final byte[] arr = new byte[len];
+            buf.get(arr);
+            val = new String(arr, ISO_8859_1);
+        } else
+            val = decodeUtf8(buf, pos, len);
+        buf.position(pos + len);
         decodeAlign(buf);
-        return val.flip().toString();
+        return val;
     }
 
     public static String decode(ByteBuffer buf) throws CharacterCodingException {
         return decode(buf, Integer.MAX_VALUE);
     }
 
-    public static int size(CharBuffer val, int maxsize) {
-        final int len = val.length();
+    // The exact number of bytes in the UTF-8 encoding of the chars. Unpaired
+    // surrogates, which the encoder rejects, are counted as three bytes.
+    public static int utf8Length(CharSequence val) {
+        final int chars = val.length();
+        int len = chars;
+        for (int i = 0; i < chars; ++i) {
+            final char c = val.charAt(i);
+            if (c < 0x80)
+                continue;
+            if (c < 0x800)
+                len += 1;
+            else if (Character.isHighSurrogate(c) && i + 1 < chars
+                    && Character.isLowSurrogate(val.charAt(i + 1))) {
+                len += 2; // Four bytes for the pair.
+                ++i;
+            } else
+                len += 2;
+        }
+        return len;
+    }
+
+    private static int size(CharSequence val, int maxsize) {
+        if (maxsize < val.length())
+            throw new IllegalArgumentException();
+        final int len = utf8Length(val);
         if (maxsize < len)
             throw new IllegalArgumentException();
         return XdrInt.SIZE + aligned(len);
     }
 
+    public static int size(CharBuffer val, int maxsize) {
+        return size((CharSequence) val, maxsize);
+    }
+
     public static int size(CharBuffer val) throws CharacterCodingException {
         return size(val, Integer.MAX_VALUE);
     }
 
     public static int size(String val, int maxsize) {
-        final int len = val.length();
-        if (maxsize < len)
-            throw new IllegalArgumentException();
-        return XdrInt.SIZE + aligned(len);
+        return size((CharSequence) val, maxsize);
     }
 
     public static int size(String val) throws CharacterCodingException {
         return size(val, Integer.MAX_VALUE);
     }
 
-    public static Codec<String> newVarCodec(final int maxsize) {
-        return new Codec<String>() {
+    public static SizedCodec<String> newVarCodec(final int maxsize) {
+        return new SizedCodec<String>() {
             public final void encode(ByteBuffer buf, String val)
                     throws CharacterCodingException {
                 XdrString.encode(buf, val, maxsize);
@@ -113,8 +203,70 @@ public final class XdrString {
             public final int size(String val) {
                 return XdrString.size(val, maxsize);
             }
+
+            public final int getFixedSize() {
+                return -1;
+            }
+
+            public final int getMaxSize() {
+                return Utility.maxVarSize(maxsize);
+            }
+        };
+    }
+
+    public static final SizedCodec<String> VAR_CODEC = newVarCodec(Integer.MAX_VALUE);
+
+    public static void encode(ByteBuffer buf, Utf8String val, int maxsize) {
+        XdrOpaque.encodeVar(buf, val.getBuffer(), val.getOffset(), val
+                .getLength(), maxsize);
+    }
+
+    public static void encode(ByteBuffer buf, Utf8String val) {
+        encode(buf, val, Integer.MAX_VALUE);
+    }
+
+    // Decodes to a view that keeps the raw UTF-8 bytes and defers building a
+    // String until one is asked for.
+    public static Utf8String decodeView(ByteBuffer buf, int maxsize) {
+        return new Utf8String(XdrOpaque.decodeVar(buf, maxsize));
+    }
+
+    public static Utf8String decodeView(ByteBuffer buf) {
+        return decodeView(buf, Integer.MAX_VALUE);
+    }
+
+    public static int size(Utf8String val, int maxsize) {
+        return XdrOpaque.sizeVar(val.getBuffer(), val.getOffset(), val
+                .getLength(), maxsize);
+    }
+
+    public static int size(Utf8String val) {
+        return size(val, Integer.MAX_VALUE);
+    }
+
+    public static SizedCodec<Utf8String> newVarViewCodec(final int maxsize) {
+        return new SizedCodec<Utf8String>() {
+            public final void encode(ByteBuffer buf, Utf8String val) {
+                XdrString.encode(buf, val, maxsize);
+            }
+
+            public final Utf8String decode(ByteBuffer buf) {
+                return XdrString.decodeView(buf, maxsize);
+            }
+
+            public final int size(Utf8String val) {
+                return XdrString.size(val, maxsize);
+            }
+
+            public final int getFixedSize() {
+                return -1;
+            }
+
+            public final int getMaxSize() {
+                return Utility.maxVarSize(maxsize);
+            }
         };
     }
 
-    public static final Codec<String> VAR_CODEC = newVarCodec(Integer.MAX_VALUE);
+    public static final SizedCodec<Utf8String> VAR_VIEW_CODEC = newVarViewCodec(Integer.MAX_VALUE);
 }
@@ -0,0 +1,625 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr;
+
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Builds codecs for classes whose fields are annotated with XdrField. Each
+// field is bound through method handles to the static encode, decode and
+// size methods of its type, and the handles for all fields are composed into
+// a single handle per operation, so primitives, strings, opaques and
+// primitive arrays are coded without a Codec call per field. Codecs are
+// cached per class.
+public final class XdrStruct {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodHandle ADD = findStatic(XdrStruct.class,
+            "add", int.class, int.class, int.class);
+    private static final MethodHandle BOOL_TO_INT = findStatic(
+            XdrStruct.class, "toInt", int.class, boolean.class);
+    private static final MethodHandle ENCODE_ARM = findStatic(
+            XdrStruct.class, "encodeArm", void.class, Arms.class,
+            ByteBuffer.class, Object.class);
+    private static final MethodHandle DECODE_ARM = findStatic(
+            XdrStruct.class, "decodeArm", void.class, Arms.class,
+            Object.class, ByteBuffer.class);
+    private static final MethodHandle SIZE_ARM = findStatic(XdrStruct.class,
+            "sizeArm", int.class, Arms.class, Object.class);
+    private static final MethodHandle ORDINAL;
+    private static final MethodHandle CODEC_ENCODE;
+    private static final MethodHandle CODEC_DECODE;
+    private static final MethodHandle CODEC_SIZE;
+
+    static {
+        try {
+            ORDINAL = LOOKUP.findVirtual(Enum.class, "ordinal", methodType(
+                    int.class));
+            CODEC_ENCODE = LOOKUP.findVirtual(Codec.class, "encode",
+                    methodType(void.class, ByteBuffer.class, Object.class));
+            CODEC_DECODE = LOOKUP.findVirtual(Codec.class, "decode",
+                    methodType(Object.class, ByteBuffer.class));
+            CODEC_SIZE = LOOKUP.findVirtual(Codec.class, "size", methodType(
+                    int.class, Object.class));
+        } catch (final ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final ClassValue<SizedCodec<Object>> CODECS = new ClassValue<SizedCodec<Object>>() {
+        protected final SizedCodec<Object> computeValue(Class<?> type) {
+            return build(type, new HashMap<Class<?>, Codec<Object>>());
+        }
+    };
+
+    // For a type: encode (ByteBuffer, T)void, decode (ByteBuffer)T and size
+    // (T)int. For a field of a struct: encode (ByteBuffer, Object)void,
+    // decode (Object, ByteBuffer)void and size (Object)int. Either way, fixed
+    // and max bound the encoded size as in SizedCodec.
+    private static final class Handles {
+        final MethodHandle encode;
+        final MethodHandle decode;
+        final MethodHandle size;
+        final int fixed;
+        final int max;
+
+        Handles(MethodHandle encode, MethodHandle decode, MethodHandle size,
+                int fixed, int max) {
+            this.encode = encode;
+            this.decode = decode;
+            this.size = size;
+            this.fixed = fixed;
+            this.max = max;
+        }
+    }
+
+    private static final Handles VOID_ARM = new Handles(null, null, null, 0,
+            0);
+
+    private static final class Arms {
+        private final MethodHandle discriminant;
+        private final IntTable<Handles> cases;
+        private final Handles def;
+        final int fixed;
+        final int max;
+
+        Arms(MethodHandle discriminant, int[] keys, Handles[] arms,
+                Handles def) {
+            this.discriminant = discriminant;
+            this.cases = new IntTable<Handles>(keys, arms);
+            this.def = def;
+            final List<Handles> all = new ArrayList<Handles>(Arrays
+                    .asList(arms));
+            if (null != def)
+                all.add(def);
+            int fixed = all.isEmpty() ? -1 : all.get(0).fixed;
+            int max = 0;
+            for (final Handles arm : all) {
+                if (fixed != arm.fixed)
+                    fixed = -1;
+                max = Math.max(max, arm.max);
+            }
+            this.fixed = fixed;
+            this.max = max;
+        }
+
+        final Handles get(Object val) throws Throwable {
+            Handles arm = cases.get((int) discriminant.invokeExact(val));
+            if (null == arm)
+                arm = def;
+            if (null == arm)
+                throw new IllegalArgumentException();
+            return arm;
+        }
+    }
+
+    private XdrStruct() {
+    }
+
+    private static int add(int x, int y) {
+        return x + y;
+    }
+
+    private static int toInt(boolean val) {
+        return val ? 1 : 0;
+    }
+
+    private static void encodeArm(Arms arms, ByteBuffer buf, Object val)
+            throws Throwable {
+        final Handles arm = arms.get(val);
+        if (VOID_ARM != arm)
+            arm.encode.invokeExact(buf, val);
+    }
+
+    private static void decodeArm(Arms arms, Object val, ByteBuffer buf)
+            throws Throwable {
+        final Handles arm = arms.get(val);
+        if (VOID_ARM != arm)
+            arm.decode.invokeExact(val, buf);
+    }
+
+    private static int sizeArm(Arms arms, Object val) throws Throwable {
+        final Handles arm = arms.get(val);
+        return VOID_ARM != arm ? (int) arm.size.invokeExact(val) : 0;
+    }
+
+    private static void encodeOpaque(ByteBuffer buf, byte[] val, int size) {
+        if (size != val.length)
+            throw new IllegalArgumentException();
+        XdrOpaque.encode(buf, val);
+    }
+
+    private static byte[] decodeOpaque(ByteBuffer buf, int size) {
+        final byte[] val = new byte[size];
+        XdrOpaque.decode(buf, val);
+        return val;
+    }
+
+    private static int sizeOpaque(byte[] val, int size) {
+        return Utility.aligned(size);
+    }
+
+    private static MethodHandle findStatic(Class<?> cls, String name,
+            Class<?> rtype, Class<?>... ptypes) {
+        try {
+            return LOOKUP.findStatic(cls, name, methodType(rtype, ptypes));
+        } catch (final ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable t)
+            throws CharacterCodingException {
+        if (t instanceof CharacterCodingException)
+            throw (CharacterCodingException) t;
+        return unchecked(t);
+    }
+
+    private static RuntimeException unchecked(Throwable t) {
+        if (t instanceof RuntimeException)
+            return (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+        return new IllegalStateException(t);
+    }
+
+    private static Handles adapt(Handles h, Class<?> type) {
+        return new Handles(h.encode.asType(methodType(void.class,
+                ByteBuffer.class, type)), h.decode.asType(methodType(type,
+                ByteBuffer.class)),
+                h.size.asType(methodType(int.class, type)), h.fixed, h.max);
+    }
+
+    private static Handles primitive(Class<?> cls, Class<?> type, int size) {
+        return new Handles(findStatic(cls, "encode", void.class,
+                ByteBuffer.class, type), findStatic(cls, "decode", type,
+                ByteBuffer.class), MethodHandles.dropArguments(MethodHandles
+                .constant(int.class, size), 0, type), size, size);
+    }
+
+    // Binds the trailing int argument of the encode, decode and size methods
+    // named with the given suffix.
+    private static Handles bounded(Class<?> cls, String suffix,
+            Class<?> type, int bound, int fixed, int max) {
+        return new Handles(MethodHandles.insertArguments(findStatic(cls,
+                "encode" + suffix, void.class, ByteBuffer.class, type,
+                int.class), 2, bound), MethodHandles.insertArguments(
+                findStatic(cls, "decode" + suffix, type, ByteBuffer.class,
+                        int.class), 1, bound), MethodHandles.insertArguments(
+                findStatic(cls, "size" + suffix, int.class, type, int.class),
+                1, bound), fixed, max);
+    }
+
+    private static Handles varArray(Class<?> cls, Class<?> type, int maxsize,
+            int elemSize) {
+        return bounded(cls, "Var", type, maxsize, -1, Utility
+                .saturate(XdrInt.SIZE + (long) maxsize * elemSize));
+    }
+
+    private static Handles codec(Codec<?> codec, Class<?> type) {
+        return adapt(new Handles(CODEC_ENCODE.bindTo(codec), CODEC_DECODE
+                .bindTo(codec), CODEC_SIZE.bindTo(codec), Utility
+                .fixedSize(codec), Utility.maxSize(codec)), type);
+    }
+
+    // Values of a fixed size are checked for space once, before any field is
+    // coded, and sized without visiting the fields.
+    private static SizedCodec<Object> newCodec(Handles h) {
+        final Handles exact = adapt(h, Object.class);
+        final MethodHandle encode = exact.encode;
+        final MethodHandle decode = exact.decode;
+        final MethodHandle size = exact.size;
+        final int fixed = h.fixed;
+        final int max = h.max;
+        return new SizedCodec<Object>() {
+            public final void encode(ByteBuffer buf, Object val)
+                    throws CharacterCodingException {
+                if (buf.remaining() < fixed)
+                    throw new BufferOverflowException();
+                try {
+                    encode.invokeExact(buf, val);
+                } catch (final Throwable t) {
+                    throw rethrow(t);
+                }
+            }
+
+            public final Object decode(ByteBuffer buf)
+                    throws CharacterCodingException {
+                if (buf.remaining() < fixed)
+                    throw new BufferUnderflowException();
+                try {
+                    return (Object) decode.invokeExact(buf);
+                } catch (final Throwable t) {
+                    throw rethrow(t);
+                }
+            }
+
+            public final int size(Object val) {
+                if (0 <= fixed)
+                    return fixed;
+                try {
+                    return (int) size.invokeExact(val);
+                } catch (final Throwable t) {
+                    throw unchecked(t);
+                }
+            }
+
+            public final int getFixedSize() {
+                return fixed;
+            }
+
+            public final int getMaxSize() {
+                return max;
+            }
+        };
+    }
+
+    // Resolves nested struct types on first use, which allows recursive
+    // types.
+    private static Codec<Object> newLazyCodec(final Class<?> type) {
+        return new Codec<Object>() {
+            private Codec<Object> codec;
+
+            private Codec<Object> get() {
+                if (null == codec)
+                    codec = CODECS.get(type);
+                return codec;
+            }
+
+            public final void encode(ByteBuffer buf, Object val)
+                    throws CharacterCodingException {
+                get().encode(buf, val);
+            }
+
+            public final Object decode(ByteBuffer buf)
+                    throws CharacterCodingException {
+                return get().decode(buf);
+            }
+
+            public final int size(Object val) {
+                return get().size(val);
+            }
+        };
+    }
+
+    private static SizedCodec<Object> newArrayCodec(final Class<?> component,
+            final Codec<Object> codec, final int size, final int maxsize) {
+        final int elemFixed = Utility.fixedSize(codec);
+        final int elemMax = Utility.maxSize(codec);
+        final int fixed = 0 <= size && 0 <= elemFixed ? Utility
+                .saturate((long) size * elemFixed) : -1;
+        final int max = 0 <= size ? Utility.saturate((long) size * elemMax)
+                : Utility.saturate(XdrInt.SIZE + (long) maxsize * elemMax);
+        return new SizedCodec<Object>() {
+            public final void encode(ByteBuffer buf, Object val)
+                    throws CharacterCodingException {
+                final Object[] arr = (Object[]) val;
+                if (0 <= size) {
+                    if (size != arr.length)
+                        throw new IllegalArgumentException();
+                } else {
+                    if (maxsize < arr.length)
+                        throw new IllegalArgumentException();
+                    XdrInt.encode(buf, arr.length);
+                }
+                XdrArray.encode(buf, arr, codec);
+            }
+
+            public final Object decode(ByteBuffer buf)
+                    throws CharacterCodingException {
+                int len = size;
+                if (len < 0) {
+                    len = XdrInt.decode(buf);
+                    if (len < 0 || maxsize < len)
+                        throw new IllegalArgumentException();
+                }
+                final Object[] arr = (Object[]) java.lang.reflect.Array
+                        .newInstance(component, len);
+                XdrArray.decode(buf, arr, codec);
+                return arr;
+            }
+
+            public final int size(Object val) {
+                final Object[] arr = (Object[]) val;
+                return (0 <= size ? 0 : XdrInt.SIZE)
+                        + XdrArray.size(arr, codec);
+            }
+
+            public final int getFixedSize() {
+                return fixed;
+            }
+
+            public final int getMaxSize() {
+                return max;
+            }
+        };
+    }
+
+    @SuppressWarnings( { "unchecked", "rawtypes" })
+    private static Codec<?> newEnumCodec(Class<?> type) {
+        return XdrEnum.newCodec((Enum[]) type.getEnumConstants());
+    }
+
+    private static <T> T newInstance(Class<T> type) {
+        try {
+            final Constructor<T> ctor = type.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            return ctor.newInstance();
+        } catch (final ReflectiveOperationException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static List<Field> fields(Class<?> type) {
+        final List<Field> fields = new ArrayList<Field>();
+        for (final Field field : type.getDeclaredFields())
+            if (field.isAnnotationPresent(XdrField.class))
+                fields.add(field);
+        Collections.sort(fields, new Comparator<Field>() {
+            public final int compare(Field x, Field y) {
+                return Integer.compare(x.getAnnotation(XdrField.class)
+                        .value(), y.getAnnotation(XdrField.class).value());
+            }
+        });
+        for (int i = 1; i < fields.size(); ++i) {
+            final int n = fields.get(i).getAnnotation(XdrField.class).value();
+            if (n == fields.get(i - 1).getAnnotation(XdrField.class).value())
+                throw new IllegalArgumentException("duplicate XdrField " + n
+                        + " in " + type.getName() + ": "
+                        + fields.get(i - 1).getName() + " and "
+                        + fields.get(i).getName());
+        }
+        return fields;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Handles handles(Class<?> type, int maxsize, int size,
+            boolean optional, Class<? extends Codec> codec,
+            Map<Class<?>, Codec<Object>> building) {
+        if (optional) {
+            if (type.isPrimitive())
+                throw new IllegalArgumentException("primitive "
+                        + type.getName() + " cannot be optional");
+            return codec(XdrOptional.newCodec(newCodec(handles(type,
+                    maxsize, size, false, codec, building))), type);
+        }
+        if (Codec.class != codec)
+            return codec(newInstance(codec), type);
+        if (int.class == type || Integer.class == type)
+            return adapt(primitive(XdrInt.class, int.class, XdrInt.SIZE), type);
+        if (long.class == type || Long.class == type)
+            return adapt(primitive(XdrHyper.class, long.class, XdrHyper.SIZE),
+                    type);
+        if (float.class == type || Float.class == type)
+            return adapt(primitive(XdrFloat.class, float.class,
+                    XdrFloat.SIZE), type);
+        if (double.class == type || Double.class == type)
+            return adapt(primitive(XdrDouble.class, double.class,
+                    XdrDouble.SIZE), type);
+        if (boolean.class == type || Boolean.class == type)
+            return adapt(primitive(XdrBool.class, boolean.class, XdrBool.SIZE),
+                    type);
+        if (String.class == type)
+            return bounded(XdrString.class, "", type, maxsize, -1, Utility
+                    .maxVarSize(maxsize));
+        if (byte[].class == type)
+            return size < 0 ? bounded(XdrOpaque.class, "Var", type, maxsize,
+                    -1, Utility.maxVarSize(maxsize)) : bounded(XdrStruct.class,
+                    "Opaque", type, size, Utility.aligned(size), Utility
+                            .aligned(size));
+        if (int[].class == type)
+            return size < 0 ? varArray(XdrIntArray.class, type, maxsize,
+                    XdrInt.SIZE) : codec(XdrIntArray.newCodec(size), type);
+        if (long[].class == type)
+            return size < 0 ? varArray(XdrHyperArray.class, type, maxsize,
+                    XdrHyper.SIZE) : codec(XdrHyperArray.newCodec(size), type);
+        if (float[].class == type)
+            return size < 0 ? varArray(XdrFloatArray.class, type, maxsize,
+                    XdrFloat.SIZE) : codec(XdrFloatArray.newCodec(size), type);
+        if (double[].class == type)
+            return size < 0 ? varArray(XdrDoubleArray.class, type, maxsize,
+                    XdrDouble.SIZE) : codec(XdrDoubleArray.newCodec(size), type);
+        if (boolean[].class == type)
+            return size < 0 ? varArray(XdrBoolArray.class, type, maxsize,
+                    XdrBool.SIZE) : codec(XdrBoolArray.newCodec(size), type);
+        if (type.isEnum())
+            return codec(newEnumCodec(type), type);
+        if (type.isArray() && !type.getComponentType().isPrimitive()) {
+            final Class<?> component = type.getComponentType();
+            final Codec<Object> elem = newCodec(handles(component,
+                    Integer.MAX_VALUE, -1, false, Codec.class, building));
+            return codec(newArrayCodec(component, elem, size, maxsize), type);
+        }
+        if (!fields(type).isEmpty()) {
+            final Codec<Object> nested = building.get(type);
+            return codec(null != nested ? nested : build(type, building),
+                    type);
+        }
+        throw new IllegalArgumentException("unsupported type "
+                + type.getName());
+    }
+
+    private static Handles field(Field field,
+            Map<Class<?>, Codec<Object>> building)
+            throws IllegalAccessException {
+        final int modifiers = field.getModifiers();
+        if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers))
+            throw new IllegalArgumentException("XdrField "
+                    + field.getName() + " is static or final");
+        field.setAccessible(true);
+        final XdrField ann = field.getAnnotation(XdrField.class);
+        final Class<?> type = field.getType();
+        final Handles h = handles(type, ann.maxsize(), ann.size(), ann
+                .optional(), ann.codec(), building);
+        final MethodHandle get = LOOKUP.unreflectGetter(field).asType(
+                methodType(type, Object.class));
+        final MethodHandle set = LOOKUP.unreflectSetter(field).asType(
+                methodType(void.class, Object.class, type));
+        return new Handles(MethodHandles.filterArguments(h.encode, 1, get),
+                MethodHandles.filterArguments(set, 1, h.decode), MethodHandles
+                        .filterArguments(h.size, 0, get), h.fixed, h.max);
+    }
+
+    private static MethodHandle discriminant(Field field)
+            throws IllegalAccessException {
+        final Class<?> type = field.getType();
+        final MethodHandle get = LOOKUP.unreflectGetter(field);
+        if (int.class == type)
+            return get.asType(methodType(int.class, Object.class));
+        if (boolean.class == type)
+            return MethodHandles.filterReturnValue(get.asType(methodType(
+                    boolean.class, Object.class)), BOOL_TO_INT);
+        if (type.isEnum())
+            return MethodHandles.filterReturnValue(get.asType(methodType(
+                    Enum.class, Object.class)), ORDINAL);
+        throw new IllegalArgumentException("discriminant "
+                + field.getName() + " must be int, boolean or enum");
+    }
+
+    private static Arms arms(Field disc, List<Field> fields,
+            Map<Class<?>, Codec<Object>> building)
+            throws IllegalAccessException {
+        final List<Integer> keys = new ArrayList<Integer>();
+        final List<Handles> vals = new ArrayList<Handles>();
+        for (final int key : disc.getAnnotation(XdrField.class).cases()) {
+            keys.add(key);
+            vals.add(VOID_ARM);
+        }
+        Handles def = null;
+        for (final Field field : fields) {
+            final XdrField ann = field.getAnnotation(XdrField.class);
+            if (ann.discriminant())
+                throw new IllegalArgumentException("discriminant "
+                        + field.getName() + " must be the first XdrField");
+            if (0 == ann.cases().length && !ann.defaultCase())
+                throw new IllegalArgumentException("XdrField "
+                        + field.getName() + " is not a union arm");
+            final Handles arm = field(field, building);
+            for (final int key : ann.cases()) {
+                keys.add(key);
+                vals.add(arm);
+            }
+            if (ann.defaultCase()) {
+                if (null != def)
+                    throw new IllegalArgumentException("duplicate default arm");
+                def = arm;
+            }
+        }
+        final int[] k = new int[keys.size()];
+        for (int i = 0; i < k.length; ++i)
+            k[i] = keys.get(i);
+        return new Arms(discriminant(disc), k, vals.toArray(new Handles[vals
+                .size()]), def);
+    }
+
+    // Nested struct types are built along with the type that refers to them.
+    // Building maps each class visited so far to its codec; a class still in
+    // progress maps to a lazy codec, so that recursive types terminate.
+    private static SizedCodec<Object> build(Class<?> type,
+            Map<Class<?>, Codec<Object>> building) {
+        final List<Field> fields = fields(type);
+        if (fields.isEmpty())
+            throw new IllegalArgumentException("no XdrField in "
+                    + type.getName());
+        building.put(type, newLazyCodec(type));
+        try {
+            final Constructor<?> ctor = type.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            final List<Handles> parts = new ArrayList<Handles>();
+            final Field first = fields.get(0);
+            parts.add(field(first, building));
+            if (first.getAnnotation(XdrField.class).discriminant()) {
+                final Arms arms = arms(first, fields.subList(1, fields
+                        .size()), building);
+                parts.add(new Handles(ENCODE_ARM.bindTo(arms), DECODE_ARM
+                        .bindTo(arms), SIZE_ARM.bindTo(arms), arms.fixed,
+                        arms.max));
+            } else
+                for (final Field field : fields.subList(1, fields.size()))
+                    parts.add(field(field, building));
+
+            MethodHandle encode = parts.get(parts.size() - 1).encode;
+            MethodHandle fill = parts.get(parts.size() - 1).decode;
+            MethodHandle size = parts.get(parts.size() - 1).size;
+            int fixed = parts.get(parts.size() - 1).fixed;
+            long max = parts.get(parts.size() - 1).max;
+            for (int i = parts.size() - 2; 0 <= i; --i) {
+                final Handles part = parts.get(i);
+                fixed = fixed < 0 || part.fixed < 0 ? -1 : Utility
+                        .saturate((long) fixed + part.fixed);
+                max += part.max;
+                encode = MethodHandles.foldArguments(encode, part.encode);
+                fill = MethodHandles.foldArguments(fill, part.decode);
+                size = MethodHandles.permuteArguments(MethodHandles
+                        .filterArguments(ADD, 0, part.size, size), methodType(
+                        int.class, Object.class), 0, 0);
+            }
+            // Construct, fill, then return the instance.
+            final MethodHandle decode = MethodHandles.foldArguments(
+                    MethodHandles.foldArguments(MethodHandles.dropArguments(
+                            MethodHandles.identity(Object.class), 1,
+                            ByteBuffer.class), fill), LOOKUP
+                            .unreflectConstructor(ctor).asType(
+                                    methodType(Object.class)));
+            final SizedCodec<Object> codec = newCodec(new Handles(encode,
+                    decode, size, fixed, Utility.saturate(max)));
+            building.put(type, codec);
+            return codec;
+        } catch (final NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName()
+                    + " has no no-arg constructor", e);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> SizedCodec<T> newCodec(Class<T> type) {
+        return (SizedCodec<T>) (SizedCodec<?>) CODECS.get(type);
+    }
+}
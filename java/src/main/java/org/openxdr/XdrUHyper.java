@@ -37,7 +37,7 @@ public final class XdrUHyper {
 
     public static final int SIZE = 8;
 
-    public static final Codec<Long> CODEC = new Codec<Long>() {
+    public static final SizedCodec<Long> CODEC = new SizedCodec<Long>() {
         public final void encode(ByteBuffer buf, Long val) {
             XdrUHyper.encode(buf, val);
         }
@@ -49,5 +49,27 @@ public final class XdrUHyper {
         public final int size(Long val) {
             return SIZE;
         }
+
+        public final int getFixedSize() {
+            return SIZE;
+        }
+
+        public final int getMaxSize() {
+            return SIZE;
+        }
+    };
+
+    public static final LongCodec LONG_CODEC = new LongCodec() {
+        public final void encode(ByteBuffer buf, long val) {
+            XdrUHyper.encode(buf, val);
+        }
+
+        public final long decode(ByteBuffer buf) {
+            return XdrUHyper.decode(buf);
+        }
+
+        public final int size(long val) {
+            return SIZE;
+        }
     };
 }
@@ -37,7 +37,7 @@ public final class XdrUInt {
 
     public static final int SIZE = 4;
 
-    public static final Codec<Integer> CODEC = new Codec<Integer>() {
+    public static final SizedCodec<Integer> CODEC = new SizedCodec<Integer>() {
         public final void encode(ByteBuffer buf, Integer val) {
             XdrUInt.encode(buf, val);
         }
@@ -49,5 +49,27 @@ public final class XdrUInt {
         public final int size(Integer val) {
             return SIZE;
         }
+
+        public final int getFixedSize() {
+            return SIZE;
+        }
+
+        public final int getMaxSize() {
+            return SIZE;
+        }
+    };
+
+    public static final IntCodec INT_CODEC = new IntCodec() {
+        public final void encode(ByteBuffer buf, int val) {
+            XdrUInt.encode(buf, val);
+        }
+
+        public final int decode(ByteBuffer buf) {
+            return XdrUInt.decode(buf);
+        }
+
+        public final int size(int val) {
+            return SIZE;
+        }
     };
 }
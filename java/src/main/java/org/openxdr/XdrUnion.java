@@ -95,6 +95,26 @@ public final class XdrUnion {
         return newCodec(sel, cases, null);
     }
 
+    public static IntUnionCodec newIntCodec(IntCodec sel,
+            Map<Integer, Codec<?>> cases, Codec<?> def) {
+        return new IntUnionCodec(sel, cases, def);
+    }
+
+    public static IntUnionCodec newIntCodec(IntCodec sel,
+            Map<Integer, Codec<?>> cases) {
+        return newIntCodec(sel, cases, null);
+    }
+
+    public static <T extends Enum<T>> EnumUnionCodec<T> newEnumCodec(
+            Codec<T> sel, Map<T, Codec<?>> cases, Codec<?> def) {
+        return new EnumUnionCodec<T>(sel, cases, def);
+    }
+
+    public static <T extends Enum<T>> EnumUnionCodec<T> newEnumCodec(
+            Codec<T> sel, Map<T, Codec<?>> cases) {
+        return newEnumCodec(sel, cases, null);
+    }
+
     @SuppressWarnings("unchecked")
     public static <T> Map<T, Codec<?>> newCases(Object... args) {
         final Map<T, Codec<?>> cases = new HashMap<T, Codec<?>>();
@@ -28,7 +28,7 @@ public final class XdrVoid {
 
     public static final int SIZE = 0;
 
-    public static final Codec<Void> CODEC = new Codec<Void>() {
+    public static final SizedCodec<Void> CODEC = new SizedCodec<Void>() {
         public final void encode(ByteBuffer buf, Void val) {
             XdrVoid.encode(buf, val);
         }
@@ -40,5 +40,13 @@ public final class XdrVoid {
         public final int size(Void val) {
             return SIZE;
         }
+
+        public final int getFixedSize() {
+            return SIZE;
+        }
+
+        public final int getMaxSize() {
+            return SIZE;
+        }
     };
 }
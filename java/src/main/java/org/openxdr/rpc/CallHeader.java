@@ -0,0 +1,118 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.rpc;
+
+import static org.openxdr.rpc.RpcMessage.CALL;
+import static org.openxdr.rpc.RpcMessage.RPC_VERSION;
+
+import java.nio.ByteBuffer;
+
+import org.openxdr.Codec;
+import org.openxdr.XdrInt;
+
+// An rpc_msg with a call body, up to the procedure arguments that follow it.
+public final class CallHeader {
+    private final int xid;
+    private final int rpcvers;
+    private final int prog;
+    private final int vers;
+    private final int proc;
+    private final OpaqueAuth cred;
+    private final OpaqueAuth verf;
+
+    public CallHeader(int xid, int rpcvers, int prog, int vers, int proc,
+            OpaqueAuth cred, OpaqueAuth verf) {
+        this.xid = xid;
+        this.rpcvers = rpcvers;
+        this.prog = prog;
+        this.vers = vers;
+        this.proc = proc;
+        this.cred = cred;
+        this.verf = verf;
+    }
+
+    public CallHeader(int xid, int prog, int vers, int proc, OpaqueAuth cred) {
+        this(xid, RPC_VERSION, prog, vers, proc, cred, OpaqueAuth.NONE);
+    }
+
+    public final int getXid() {
+        return xid;
+    }
+
+    public final int getRpcVersion() {
+        return rpcvers;
+    }
+
+    public final int getProgram() {
+        return prog;
+    }
+
+    public final int getVersion() {
+        return vers;
+    }
+
+    public final int getProcedure() {
+        return proc;
+    }
+
+    public final OpaqueAuth getCredential() {
+        return cred;
+    }
+
+    public final OpaqueAuth getVerifier() {
+        return verf;
+    }
+
+    public static void encode(ByteBuffer buf, CallHeader val) {
+        XdrInt.encode(buf, val.xid);
+        XdrInt.encode(buf, CALL);
+        XdrInt.encode(buf, val.rpcvers);
+        XdrInt.encode(buf, val.prog);
+        XdrInt.encode(buf, val.vers);
+        XdrInt.encode(buf, val.proc);
+        OpaqueAuth.encode(buf, val.cred);
+        OpaqueAuth.encode(buf, val.verf);
+    }
+
+    public static CallHeader decode(ByteBuffer buf) {
+        final int xid = XdrInt.decode(buf);
+        if (CALL != XdrInt.decode(buf))
+            throw new IllegalArgumentException();
+        final int rpcvers = XdrInt.decode(buf);
+        final int prog = XdrInt.decode(buf);
+        final int vers = XdrInt.decode(buf);
+        final int proc = XdrInt.decode(buf);
+        final OpaqueAuth cred = OpaqueAuth.decode(buf);
+        return new CallHeader(xid, rpcvers, prog, vers, proc, cred,
+                OpaqueAuth.decode(buf));
+    }
+
+    public static int size(CallHeader val) {
+        return 6 * XdrInt.SIZE + OpaqueAuth.size(val.cred)
+                + OpaqueAuth.size(val.verf);
+    }
+
+    public static final Codec<CallHeader> CODEC = new Codec<CallHeader>() {
+        public final void encode(ByteBuffer buf, CallHeader val) {
+            CallHeader.encode(buf, val);
+        }
+
+        public final CallHeader decode(ByteBuffer buf) {
+            return CallHeader.decode(buf);
+        }
+
+        public final int size(CallHeader val) {
+            return CallHeader.size(val);
+        }
+    };
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.rpc;
+
+import java.nio.ByteBuffer;
+
+import org.openxdr.SizedCodec;
+import org.openxdr.XdrInt;
+
+// The range of versions supported, in PROG_MISMATCH and RPC_MISMATCH
+// replies.
+public final class MismatchInfo {
+    private final int low;
+    private final int high;
+
+    public MismatchInfo(int low, int high) {
+        this.low = low;
+        this.high = high;
+    }
+
+    public final int getLow() {
+        return low;
+    }
+
+    public final int getHigh() {
+        return high;
+    }
+
+    public static void encode(ByteBuffer buf, MismatchInfo val) {
+        XdrInt.encode(buf, val.low);
+        XdrInt.encode(buf, val.high);
+    }
+
+    public static MismatchInfo decode(ByteBuffer buf) {
+        final int low = XdrInt.decode(buf);
+        return new MismatchInfo(low, XdrInt.decode(buf));
+    }
+
+    public static final int SIZE = 2 * XdrInt.SIZE;
+
+    public static final SizedCodec<MismatchInfo> CODEC = new SizedCodec<MismatchInfo>() {
+        public final void encode(ByteBuffer buf, MismatchInfo val) {
+            MismatchInfo.encode(buf, val);
+        }
+
+        public final MismatchInfo decode(ByteBuffer buf) {
+            return MismatchInfo.decode(buf);
+        }
+
+        public final int size(MismatchInfo val) {
+            return SIZE;
+        }
+
+        public final int getFixedSize() {
+            return SIZE;
+        }
+
+        public final int getMaxSize() {
+            return SIZE;
+        }
+    };
+}
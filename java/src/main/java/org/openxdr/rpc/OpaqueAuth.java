@@ -0,0 +1,80 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.rpc;
+
+import java.nio.ByteBuffer;
+
+import org.openxdr.Codec;
+import org.openxdr.Opaque;
+import org.openxdr.SizedCodec;
+import org.openxdr.XdrInt;
+import org.openxdr.XdrOpaque;
+
+public final class OpaqueAuth {
+    public static final int AUTH_NONE = 0;
+    public static final int AUTH_SYS = 1;
+
+    public static final int MAXSIZE = 400;
+
+    public static final OpaqueAuth NONE = new OpaqueAuth(AUTH_NONE,
+            new Opaque(0));
+
+    private static final SizedCodec<Opaque> BODY_CODEC = XdrOpaque
+            .newVarCodec(MAXSIZE);
+
+    private final int flavor;
+    private final Opaque body;
+
+    public OpaqueAuth(int flavor, Opaque body) {
+        this.flavor = flavor;
+        this.body = body;
+    }
+
+    public final int getFlavor() {
+        return flavor;
+    }
+
+    public final Opaque getBody() {
+        return body;
+    }
+
+    public static void encode(ByteBuffer buf, OpaqueAuth val) {
+        XdrInt.encode(buf, val.flavor);
+        XdrOpaque.encodeVar(buf, val.body.getBuffer(), val.body.getOffset(),
+                val.body.getLength(), MAXSIZE);
+    }
+
+    public static OpaqueAuth decode(ByteBuffer buf) {
+        final int flavor = XdrInt.decode(buf);
+        return new OpaqueAuth(flavor, new Opaque(XdrOpaque.decodeVar(buf,
+                MAXSIZE)));
+    }
+
+    public static int size(OpaqueAuth val) {
+        return XdrInt.SIZE + BODY_CODEC.size(val.body);
+    }
+
+    public static final Codec<OpaqueAuth> CODEC = new Codec<OpaqueAuth>() {
+        public final void encode(ByteBuffer buf, OpaqueAuth val) {
+            OpaqueAuth.encode(buf, val);
+        }
+
+        public final OpaqueAuth decode(ByteBuffer buf) {
+            return OpaqueAuth.decode(buf);
+        }
+
+        public final int size(OpaqueAuth val) {
+            return OpaqueAuth.size(val);
+        }
+    };
+}
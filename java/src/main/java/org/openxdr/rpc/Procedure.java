@@ -0,0 +1,20 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.rpc;
+
+// A remote procedure registered with an RpcServer. The call header carries
+// the caller's credentials. Any exception thrown is answered with
+// SYSTEM_ERR.
+public interface Procedure<A, R> {
+    R call(CallHeader call, A args) throws Exception;
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.rpc;
+
+import static org.openxdr.rpc.RpcMessage.AUTH_ERROR;
+import static org.openxdr.rpc.RpcMessage.MSG_ACCEPTED;
+import static org.openxdr.rpc.RpcMessage.MSG_DENIED;
+import static org.openxdr.rpc.RpcMessage.PROG_MISMATCH;
+import static org.openxdr.rpc.RpcMessage.REPLY;
+import static org.openxdr.rpc.RpcMessage.RPC_MISMATCH;
+import static org.openxdr.rpc.RpcMessage.SUCCESS;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+
+import org.openxdr.Codec;
+import org.openxdr.IntUnionCodec;
+import org.openxdr.Union;
+import org.openxdr.Void;
+import org.openxdr.XdrInt;
+import org.openxdr.XdrUnion;
+import org.openxdr.XdrVoid;
+
+// An rpc_msg with a reply body, up to the procedure results that follow a
+// successful one. The body is a union on reply_stat: accepted replies hold a
+// verifier and a union on accept_stat, and denied ones a union on
+// reject_stat.
+public final class ReplyHeader {
+    private static final class Accepted {
+        final OpaqueAuth verf;
+        final Union<Integer> data;
+
+        Accepted(OpaqueAuth verf, Union<Integer> data) {
+            this.verf = verf;
+            this.data = data;
+        }
+    }
+
+    private static final IntUnionCodec DATA_CODEC = XdrUnion.newIntCodec(
+            XdrInt.INT_CODEC, XdrUnion.<Integer> newCases(PROG_MISMATCH,
+                    MismatchInfo.CODEC), XdrVoid.CODEC);
+
+    private static final Codec<Accepted> ACCEPTED_CODEC = new Codec<Accepted>() {
+        public final void encode(ByteBuffer buf, Accepted val)
+                throws CharacterCodingException {
+            OpaqueAuth.encode(buf, val.verf);
+            DATA_CODEC.encode(buf, val.data);
+        }
+
+        public final Accepted decode(ByteBuffer buf)
+                throws CharacterCodingException {
+            final OpaqueAuth verf = OpaqueAuth.decode(buf);
+            return new Accepted(verf, DATA_CODEC.decode(buf));
+        }
+
+        public final int size(Accepted val) {
+            return OpaqueAuth.size(val.verf) + DATA_CODEC.size(val.data);
+        }
+    };
+
+    private static final IntUnionCodec REJECTED_CODEC = XdrUnion.newIntCodec(
+            XdrInt.INT_CODEC, XdrUnion.<Integer> newCases(RPC_MISMATCH,
+                    MismatchInfo.CODEC, AUTH_ERROR, XdrInt.CODEC));
+
+    private static final IntUnionCodec BODY_CODEC = XdrUnion.newIntCodec(
+            XdrInt.INT_CODEC, XdrUnion.<Integer> newCases(MSG_ACCEPTED,
+                    ACCEPTED_CODEC, MSG_DENIED, REJECTED_CODEC));
+
+    private final int xid;
+    private final Union<Integer> body;
+
+    private ReplyHeader(int xid, Union<Integer> body) {
+        this.xid = xid;
+        this.body = body;
+    }
+
+    // The data is a MismatchInfo for PROG_MISMATCH, and Void otherwise.
+    public static ReplyHeader accepted(int xid, OpaqueAuth verf, int stat,
+            Object data) {
+        return new ReplyHeader(xid, new Union<Integer>(MSG_ACCEPTED,
+                new Accepted(verf, new Union<Integer>(stat, data))));
+    }
+
+    public static ReplyHeader accepted(int xid, int stat) {
+        return accepted(xid, OpaqueAuth.NONE, stat, Void.VALUE);
+    }
+
+    public static ReplyHeader success(int xid) {
+        return accepted(xid, SUCCESS);
+    }
+
+    public static ReplyHeader progMismatch(int xid, int low, int high) {
+        return accepted(xid, OpaqueAuth.NONE, PROG_MISMATCH,
+                new MismatchInfo(low, high));
+    }
+
+    // The data is a MismatchInfo for RPC_MISMATCH, and an Integer auth_stat
+    // for AUTH_ERROR.
+    public static ReplyHeader denied(int xid, int stat, Object data) {
+        return new ReplyHeader(xid, new Union<Integer>(MSG_DENIED,
+                new Union<Integer>(stat, data)));
+    }
+
+    public static ReplyHeader rpcMismatch(int xid, int low, int high) {
+        return denied(xid, RPC_MISMATCH, new MismatchInfo(low, high));
+    }
+
+    public static ReplyHeader authError(int xid, int stat) {
+        return denied(xid, AUTH_ERROR, stat);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Union<Integer> getUnion() {
+        final Object val = body.getValue();
+        return MSG_ACCEPTED == body.getType() ? ((Accepted) val).data
+                : (Union<Integer>) val;
+    }
+
+    public final int getXid() {
+        return xid;
+    }
+
+    public final int getReplyStat() {
+        return body.getType();
+    }
+
+    // The accept_stat of an accepted reply, or the reject_stat of a denied
+    // one.
+    public final int getStat() {
+        return getUnion().getType();
+    }
+
+    // The arm selected by getStat().
+    public final Object getData() {
+        return getUnion().getValue();
+    }
+
+    // The verifier of an accepted reply, or null.
+    public final OpaqueAuth getVerifier() {
+        final Object val = body.getValue();
+        return MSG_ACCEPTED == body.getType() ? ((Accepted) val).verf : null;
+    }
+
+    public final boolean isSuccess() {
+        return MSG_ACCEPTED == getReplyStat() && SUCCESS == getStat();
+    }
+
+    public static void encode(ByteBuffer buf, ReplyHeader val)
+            throws CharacterCodingException {
+        XdrInt.encode(buf, val.xid);
+        XdrInt.encode(buf, REPLY);
+        BODY_CODEC.encode(buf, val.body);
+    }
+
+    public static ReplyHeader decode(ByteBuffer buf)
+            throws CharacterCodingException {
+        final int xid = XdrInt.decode(buf);
+        if (REPLY != XdrInt.decode(buf))
+            throw new IllegalArgumentException();
+        return new ReplyHeader(xid, BODY_CODEC.decode(buf));
+    }
+
+    public static int size(ReplyHeader val) {
+        return 2 * XdrInt.SIZE + BODY_CODEC.size(val.body);
+    }
+
+    public static final Codec<ReplyHeader> CODEC = new Codec<ReplyHeader>() {
+        public final void encode(ByteBuffer buf, ReplyHeader val)
+                throws CharacterCodingException {
+            ReplyHeader.encode(buf, val);
+        }
+
+        public final ReplyHeader decode(ByteBuffer buf)
+                throws CharacterCodingException {
+            return ReplyHeader.decode(buf);
+        }
+
+        public final int size(ReplyHeader val) {
+            return ReplyHeader.size(val);
+        }
+    };
+}
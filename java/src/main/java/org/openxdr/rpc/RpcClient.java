@@ -0,0 +1,216 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.rpc;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.CharacterCodingException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openxdr.Codec;
+import org.openxdr.RecordReader;
+import org.openxdr.RecordWriter;
+import org.openxdr.XdrBuffer;
+
+// Pipelines calls to one program version over a record-marked stream, such
+// as a SocketChannel. Any number of calls may be in flight: each is written
+// as soon as it is made, and a reader thread matches replies to calls by xid
+// and completes their futures, in whatever order the replies arrive.
+//
+// The channel must be in blocking mode, as the reader thread blocks on it
+// and each call blocks until it is written. Replies larger than maxsize fail
+// the client.
+public final class RpcClient {
+    private static final class Pending<R> {
+        final Codec<R> res;
+        final CompletableFuture<R> future = new CompletableFuture<R>();
+
+        Pending(Codec<R> res) {
+            this.res = res;
+        }
+
+        final void complete(ByteBuffer buf) {
+            try {
+                future.complete(res.decode(buf));
+            } catch (final CharacterCodingException e) {
+                future.completeExceptionally(e);
+            } catch (final RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private final ByteChannel channel;
+    private final int prog;
+    private final int vers;
+    private final OpaqueAuth cred;
+    private final RecordReader reader;
+    private final RecordWriter writer;
+    private final AtomicInteger xid = new AtomicInteger((int) System
+            .nanoTime());
+    private final Map<Integer, Pending<?>> pending = new ConcurrentHashMap<Integer, Pending<?>>();
+    private final Thread thread;
+    private volatile Throwable failure;
+    // Guarded by writer: the buffer into which each call is encoded.
+    private ByteBuffer out = XdrBuffer
+            .allocateDirect(RecordWriter.DEFAULT_CAPACITY);
+
+    // Encodes the call into out, growing it if the call does not fit.
+    private <A> void encodeCall(CallHeader header, Codec<A> args, A val)
+            throws CharacterCodingException {
+        out.clear();
+        try {
+            CallHeader.encode(out, header);
+            args.encode(out, val);
+        } catch (final BufferOverflowException e) {
+            final long len = (long) CallHeader.size(header)
+                    + args.size(val);
+            out = XdrBuffer.allocateDirect((int) Math.min(Math.max(len,
+                    2L * out.capacity()), Integer.MAX_VALUE));
+            CallHeader.encode(out, header);
+            args.encode(out, val);
+        }
+        out.flip();
+    }
+
+    private void receive() {
+        Throwable cause;
+        try {
+            ByteBuffer buf;
+            while (null != (buf = reader.readRecord())) {
+                final ReplyHeader reply = ReplyHeader.decode(buf);
+                final Pending<?> call = pending.remove(reply.getXid());
+                if (null == call)
+                    continue; // Late or unsolicited.
+                if (reply.isSuccess())
+                    call.complete(buf);
+                else
+                    call.future.completeExceptionally(new RpcException(reply));
+            }
+            cause = new ClosedChannelException();
+        } catch (final IOException e) {
+            cause = e;
+        } catch (final RuntimeException e) {
+            cause = e; // Malformed reply.
+        }
+        fail(cause);
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        try {
+            channel.close();
+        } catch (final IOException e) {
+        }
+    }
+
+    // Completes every outstanding call with the cause. Calls made afterwards
+    // fail immediately.
+    private void fail(Throwable cause) {
+        if (null == failure)
+            failure = cause;
+        for (final Integer key : pending.keySet()) {
+            final Pending<?> call = pending.remove(key);
+            if (null != call)
+                call.future.completeExceptionally(cause);
+        }
+    }
+
+    public RpcClient(ByteChannel channel, int prog, int vers,
+            OpaqueAuth cred, int maxsize) {
+        this.channel = channel;
+        this.prog = prog;
+        this.vers = vers;
+        this.cred = cred;
+        this.reader = new RecordReader(channel, maxsize);
+        this.writer = new RecordWriter(channel);
+        this.thread = new Thread(new Runnable() {
+            public final void run() {
+                receive();
+            }
+        }, "rpc-client");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public RpcClient(ByteChannel channel, int prog, int vers, OpaqueAuth cred) {
+        this(channel, prog, vers, cred, RecordReader.DEFAULT_MAX_RECORD);
+    }
+
+    public RpcClient(ByteChannel channel, int prog, int vers) {
+        this(channel, prog, vers, OpaqueAuth.NONE);
+    }
+
+    public final <A, R> CompletableFuture<R> call(int proc, Codec<A> args,
+            A val, Codec<R> res) {
+        final int id = xid.getAndIncrement();
+        final Pending<R> call = new Pending<R>(res);
+        pending.put(id, call);
+        // Recheck after registering, in case the reader has already failed
+        // the calls that were outstanding.
+        if (null != failure) {
+            pending.remove(id);
+            call.future.completeExceptionally(failure);
+            return call.future;
+        }
+        synchronized (writer) {
+            // Nothing has been written if the call fails to encode, so only
+            // this call fails.
+            try {
+                encodeCall(new CallHeader(id, prog, vers, proc, cred), args,
+                        val);
+            } catch (final CharacterCodingException e) {
+                pending.remove(id);
+                call.future.completeExceptionally(e);
+                return call.future;
+            } catch (final RuntimeException e) {
+                pending.remove(id);
+                call.future.completeExceptionally(e);
+                return call.future;
+            }
+            // A record cut short leaves the stream corrupt, so the client
+            // fails as a whole.
+            try {
+                writer.write(out);
+            } catch (final IOException e) {
+                fail(e);
+                closeChannel();
+            }
+        }
+        return call.future;
+    }
+
+    // Closes the channel and fails any outstanding calls.
+    public final void close() throws IOException {
+        channel.close();
+        try {
+            thread.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public final int getPendingCount() {
+        return pending.size();
+    }
+
+    public final ByteChannel getChannel() {
+        return channel;
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.rpc;
+
+import static org.openxdr.rpc.RpcMessage.AUTH_ERROR;
+import static org.openxdr.rpc.RpcMessage.MSG_ACCEPTED;
+
+import java.io.IOException;
+
+// Thrown, or used to complete a call exceptionally, when a reply is not a
+// success.
+public final class RpcException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final ReplyHeader reply;
+
+    private static String describe(ReplyHeader reply) {
+        if (MSG_ACCEPTED == reply.getReplyStat())
+            return "call accepted with accept_stat " + reply.getStat();
+        if (AUTH_ERROR == reply.getStat())
+            return "call denied with auth_stat " + reply.getData();
+        return "call denied with reject_stat " + reply.getStat();
+    }
+
+    public RpcException(ReplyHeader reply) {
+        super(describe(reply));
+        this.reply = reply;
+    }
+
+    public final ReplyHeader getReply() {
+        return reply;
+    }
+}
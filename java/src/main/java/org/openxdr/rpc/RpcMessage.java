@@ -0,0 +1,41 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.rpc;
+
+// Constants of the RPC message protocol, RFC 5531.
+public final class RpcMessage {
+    public static final int RPC_VERSION = 2;
+
+    // msg_type.
+    public static final int CALL = 0;
+    public static final int REPLY = 1;
+
+    // reply_stat.
+    public static final int MSG_ACCEPTED = 0;
+    public static final int MSG_DENIED = 1;
+
+    // accept_stat.
+    public static final int SUCCESS = 0;
+    public static final int PROG_UNAVAIL = 1;
+    public static final int PROG_MISMATCH = 2;
+    public static final int PROC_UNAVAIL = 3;
+    public static final int GARBAGE_ARGS = 4;
+    public static final int SYSTEM_ERR = 5;
+
+    // reject_stat.
+    public static final int RPC_MISMATCH = 0;
+    public static final int AUTH_ERROR = 1;
+
+    private RpcMessage() {
+    }
+}
@@ -0,0 +1,405 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.rpc;
+
+import static org.openxdr.RecordWriter.HEADER;
+import static org.openxdr.RecordWriter.LAST_FRAG;
+import static org.openxdr.rpc.RpcMessage.GARBAGE_ARGS;
+import static org.openxdr.rpc.RpcMessage.PROC_UNAVAIL;
+import static org.openxdr.rpc.RpcMessage.PROG_UNAVAIL;
+import static org.openxdr.rpc.RpcMessage.RPC_VERSION;
+import static org.openxdr.rpc.RpcMessage.SYSTEM_ERR;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharacterCodingException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+import org.openxdr.Codec;
+import org.openxdr.RecordReader;
+import org.openxdr.XdrBuffer;
+import org.openxdr.XdrInt;
+
+// Serves registered procedures over record-marked TCP connections. One
+// selector thread accepts connections, reassembles call records and writes
+// replies, while the procedures run on a pool of workers, so calls on the
+// same connection run concurrently and may be answered out of order.
+//
+// Each connection may have at most maxInFlight calls that have been read but
+// whose replies have not yet been written. At the limit the server stops
+// reading from the connection, so that TCP flow control pushes back on a
+// client that calls faster than the procedures, or its own reads, keep up.
+public final class RpcServer {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+    public static final int DEFAULT_MAX_RECORD = RecordReader.DEFAULT_MAX_RECORD;
+
+    private static final int BUFFER = 8192;
+
+    private static final Function<Integer, Map<Integer, Map<Integer, Route<?, ?>>>> NEW_VERSIONS = new Function<Integer, Map<Integer, Map<Integer, Route<?, ?>>>>() {
+        public final Map<Integer, Map<Integer, Route<?, ?>>> apply(Integer vers) {
+            return new ConcurrentHashMap<Integer, Map<Integer, Route<?, ?>>>();
+        }
+    };
+
+    private static final Function<Integer, Map<Integer, Route<?, ?>>> NEW_PROCS = new Function<Integer, Map<Integer, Route<?, ?>>>() {
+        public final Map<Integer, Route<?, ?>> apply(Integer proc) {
+            return new ConcurrentHashMap<Integer, Route<?, ?>>();
+        }
+    };
+
+    private static final class Route<A, R> {
+        final Codec<A> args;
+        final Codec<R> res;
+        final Procedure<A, R> proc;
+
+        Route(Codec<A> args, Codec<R> res, Procedure<A, R> proc) {
+            this.args = args;
+            this.res = res;
+            this.proc = proc;
+        }
+
+        final ByteBuffer call(CallHeader call, ByteBuffer buf)
+                throws CharacterCodingException {
+            final A val;
+            try {
+                val = args.decode(buf);
+            } catch (final Exception e) {
+                return encode(ReplyHeader.accepted(call.getXid(),
+                        GARBAGE_ARGS), null, null);
+            }
+            try {
+                return encode(ReplyHeader.success(call.getXid()), res, proc
+                        .call(call, val));
+            } catch (final Exception e) {
+                return encode(ReplyHeader.accepted(call.getXid(), SYSTEM_ERR),
+                        null, null);
+            }
+        }
+    }
+
+    private final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final Queue<ByteBuffer> replies = new ConcurrentLinkedQueue<ByteBuffer>();
+        // Bytes read but not yet parsed, in write mode.
+        ByteBuffer in = XdrBuffer.allocate(BUFFER);
+        // The record being reassembled from its fragments.
+        ByteBuffer record;
+        // Calls read whose replies have not been written. Only the selector
+        // thread reads or writes this.
+        int inFlight;
+
+        Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+
+        private void reserve(int len) {
+            if (null == record)
+                record = XdrBuffer.allocate(len);
+            else if (record.remaining() < len) {
+                final int pos = record.position();
+                final ByteBuffer tmp = XdrBuffer.allocate((int) Math.min(Math
+                        .max((long) pos + len, 2L * record.capacity()),
+                        maxsize));
+                record.flip();
+                tmp.put(record);
+                record = tmp;
+            }
+        }
+
+        // Dispatches complete records until none remain or the connection
+        // reaches its limit.
+        private void parse() throws IOException {
+            in.flip();
+            while (inFlight < maxInFlight && HEADER <= in.remaining()) {
+                final int mark = in.getInt(in.position());
+                final int len = mark & ~LAST_FRAG;
+                if (maxsize - (null == record ? 0 : record.position()) < len)
+                    throw new StreamCorruptedException("record exceeds "
+                            + maxsize + " bytes");
+                if (in.remaining() < HEADER + len) {
+                    if (in.capacity() < HEADER + len) {
+                        final ByteBuffer tmp = XdrBuffer.allocate(HEADER + len);
+                        tmp.put(in);
+                        in = tmp;
+                        return;
+                    }
+                    break;
+                }
+                in.position(in.position() + HEADER);
+                reserve(len);
+                final int limit = in.limit();
+                in.limit(in.position() + len);
+                record.put(in);
+                in.limit(limit);
+                if (0 != (mark & LAST_FRAG)) {
+                    record.flip();
+                    dispatch(record);
+                    record = null;
+                }
+            }
+            in.compact();
+        }
+
+        // A call that the workers reject fails as an I/O error would, closing
+        // the connection, whether it was read or parsing resumed after a
+        // reply was written.
+        private void dispatch(final ByteBuffer buf) throws IOException {
+            try {
+                workers.execute(new Runnable() {
+                    public final void run() {
+                        replies.add(handle(buf));
+                        ready.add(Connection.this);
+                        selector.wakeup();
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                throw new IOException("call rejected", e);
+            }
+            ++inFlight;
+        }
+
+        final void read() throws IOException {
+            if (channel.read(in) < 0)
+                close();
+            else
+                update();
+        }
+
+        // Writes pending replies, resumes parsing if below the limit, and
+        // sets the interest accordingly.
+        final void update() throws IOException {
+            if (!key.isValid())
+                return;
+            ByteBuffer buf;
+            while (null != (buf = replies.peek())) {
+                channel.write(buf);
+                if (buf.hasRemaining())
+                    break;
+                replies.remove();
+                --inFlight;
+            }
+            parse();
+            key.interestOps((inFlight < maxInFlight ? SelectionKey.OP_READ
+                    : 0)
+                    | (replies.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+        }
+
+        final void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (final IOException e) {
+            }
+        }
+    }
+
+    private final ExecutorService workers;
+    private final boolean owned;
+    private final int maxInFlight;
+    private final int maxsize;
+    private final Selector selector;
+    // Connections with replies ready to write.
+    private final Queue<Connection> ready = new ConcurrentLinkedQueue<Connection>();
+    // Procedures by program, version and procedure number.
+    private final Map<Integer, Map<Integer, Map<Integer, Route<?, ?>>>> programs = new ConcurrentHashMap<Integer, Map<Integer, Map<Integer, Route<?, ?>>>>();
+    private ServerSocketChannel server;
+    private Thread thread;
+    private volatile boolean closed;
+
+    private static <R> ByteBuffer encode(ReplyHeader reply, Codec<R> res,
+            R val) throws CharacterCodingException {
+        final int len = ReplyHeader.size(reply)
+                + (null == res ? 0 : res.size(val));
+        final ByteBuffer buf = XdrBuffer.allocate(HEADER + len);
+        XdrInt.encode(buf, LAST_FRAG | len);
+        ReplyHeader.encode(buf, reply);
+        if (null != res)
+            res.encode(buf, val);
+        buf.flip();
+        return buf;
+    }
+
+    private ByteBuffer route(CallHeader call, ByteBuffer buf)
+            throws CharacterCodingException {
+        final int xid = call.getXid();
+        if (RPC_VERSION != call.getRpcVersion())
+            return encode(ReplyHeader.rpcMismatch(xid, RPC_VERSION,
+                    RPC_VERSION), null, null);
+        final Map<Integer, Map<Integer, Route<?, ?>>> versions = programs
+                .get(call.getProgram());
+        if (null == versions)
+            return encode(ReplyHeader.accepted(xid, PROG_UNAVAIL), null, null);
+        final Map<Integer, Route<?, ?>> procs = versions.get(call
+                .getVersion());
+        if (null == procs)
+            return encode(ReplyHeader.progMismatch(xid, Collections
+                    .min(versions.keySet()), Collections.max(versions
+                    .keySet())), null, null);
+        final Route<?, ?> route = procs.get(call.getProcedure());
+        if (null == route)
+            return encode(ReplyHeader.accepted(xid, PROC_UNAVAIL), null, null);
+        return route.call(call, buf);
+    }
+
+    // Returns the encoded reply, or an empty buffer if there is none.
+    private ByteBuffer handle(ByteBuffer buf) {
+        final CallHeader call;
+        try {
+            call = CallHeader.decode(buf);
+        } catch (final RuntimeException e) {
+            return XdrBuffer.allocate(0); // Not a call: no xid to reply to.
+        }
+        try {
+            return route(call, buf);
+        } catch (final CharacterCodingException e) {
+            return XdrBuffer.allocate(0);
+        }
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = server.accept();
+        if (null != channel) {
+            channel.configureBlocking(false);
+            new Connection(channel);
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                selector.select();
+            } catch (final IOException e) {
+                break;
+            }
+            Connection conn;
+            while (null != (conn = ready.poll()))
+                try {
+                    conn.update();
+                } catch (final IOException e) {
+                    conn.close();
+                }
+            final Iterator<SelectionKey> it = selector.selectedKeys()
+                    .iterator();
+            while (it.hasNext()) {
+                final SelectionKey key = it.next();
+                it.remove();
+                if (!key.isValid())
+                    continue;
+                if (key.isAcceptable()) {
+                    try {
+                        accept();
+                    } catch (final IOException e) {
+                    }
+                    continue;
+                }
+                conn = (Connection) key.attachment();
+                try {
+                    if (key.isReadable())
+                        conn.read();
+                    if (key.isValid() && key.isWritable())
+                        conn.update();
+                } catch (final IOException e) {
+                    conn.close();
+                }
+            }
+        }
+    }
+
+    public RpcServer(ExecutorService workers, int maxInFlight, int maxsize)
+            throws IOException {
+        this(workers, false, maxInFlight, maxsize);
+    }
+
+    private RpcServer(ExecutorService workers, boolean owned,
+            int maxInFlight, int maxsize) throws IOException {
+        if (maxInFlight <= 0 || maxsize < 0)
+            throw new IllegalArgumentException();
+        this.workers = workers;
+        this.owned = owned;
+        this.maxInFlight = maxInFlight;
+        this.maxsize = maxsize;
+        this.selector = Selector.open();
+    }
+
+    public RpcServer(ExecutorService workers) throws IOException {
+        this(workers, DEFAULT_MAX_IN_FLIGHT, DEFAULT_MAX_RECORD);
+    }
+
+    // Runs procedures on a pool with a thread per processor, shut down with
+    // the server.
+    public RpcServer() throws IOException {
+        this(Executors.newFixedThreadPool(Runtime.getRuntime()
+                .availableProcessors()), true, DEFAULT_MAX_IN_FLIGHT,
+                DEFAULT_MAX_RECORD);
+    }
+
+    public final <A, R> void register(int prog, int vers, int proc,
+            Codec<A> args, Codec<R> res, Procedure<A, R> fn) {
+        programs.computeIfAbsent(prog, NEW_VERSIONS).computeIfAbsent(vers,
+                NEW_PROCS).put(proc, new Route<A, R>(args, res, fn));
+    }
+
+    // Binds to the address and starts serving, returning the bound address.
+    // Procedures should be registered first.
+    public final synchronized SocketAddress listen(SocketAddress addr)
+            throws IOException {
+        if (null != server)
+            throw new IllegalStateException();
+        server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.bind(addr);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new Thread(new Runnable() {
+            public final void run() {
+                RpcServer.this.run();
+            }
+        }, "rpc-server");
+        thread.setDaemon(true);
+        thread.start();
+        return server.getLocalAddress();
+    }
+
+    // Stops serving and closes every connection.
+    public final synchronized void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        if (null != thread)
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        for (final SelectionKey key : selector.keys())
+            key.channel().close();
+        selector.close();
+        if (owned)
+            workers.shutdown();
+    }
+}
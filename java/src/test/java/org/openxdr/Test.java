@@ -12,14 +12,86 @@
  */
 package org.openxdr;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
 import java.io.UnsupportedEncodingException;
+import java.lang.ref.WeakReference;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Pipe;
 import java.nio.charset.CharacterCodingException;
+import java.nio.charset.MalformedInputException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
 
 import junit.framework.TestCase;
 
 public final class Test extends TestCase {
 
+    private enum Status {
+        OK, PERM, NOENT, BADHANDLE
+    }
+
+    private static final class Point {
+        @XdrField(0)
+        int x;
+        @XdrField(1)
+        int y;
+    }
+
+    private static final class Node {
+        @XdrField(value = 0, maxsize = 8)
+        String name;
+        @XdrField(1)
+        long id;
+        @XdrField(value = 2, size = 3)
+        byte[] tag;
+        @XdrField(3)
+        int[] counts;
+        @XdrField(value = 4, maxsize = 4)
+        Point[] points;
+        @XdrField(5)
+        Status status;
+        @XdrField(value = 6, optional = true)
+        Node next;
+        @XdrField(value = 7, optional = true)
+        Double weight;
+    }
+
+    private static final class Reply {
+        @XdrField(value = 0, discriminant = true, cases = { 2 })
+        Status status;
+        @XdrField(value = 1, cases = { 0 })
+        Node node;
+        @XdrField(value = 2, defaultCase = true)
+        int code;
+    }
+
+    private static final class Dup {
+        @XdrField(0)
+        int x;
+        @XdrField(1)
+        int y;
+        @XdrField(1)
+        int z;
+    }
+
     public final void testInt() {
         final int val = Integer.MIN_VALUE;
         assertEquals(4, XdrInt.CODEC.size(val));
@@ -83,10 +155,927 @@ public final class Test extends TestCase {
         assertEquals("test", new String(XdrOpaque.decodeVar(buf), "UTF-8"));
     }
 
+    public final void testOpaqueSlice() throws UnsupportedEncodingException {
+        final ByteBuffer buf = XdrBuffer.allocate(16);
+        XdrOpaque.encodeVar(buf, "slice".getBytes("UTF-8"));
+        XdrInt.encode(buf, 101);
+        buf.flip();
+        final ByteBuffer view = XdrOpaque.decodeVarSlice(buf);
+        assertTrue(view.isReadOnly());
+        assertEquals(5, view.remaining());
+        assertEquals(12, buf.position());
+        assertEquals(101, XdrInt.decode(buf));
+
+        final Opaque copy = XdrOpaque.detach(view);
+        buf.clear();
+        buf.put(new byte[16]);
+        assertEquals("slice", new String(copy.getBuffer(), "UTF-8"));
+        assertEquals(0, view.get(0));
+    }
+
     public final void testString() throws CharacterCodingException {
         final ByteBuffer buf = XdrBuffer.allocate(8);
         XdrString.encode(buf, "test");
         buf.flip();
         assertEquals("test", XdrString.decode(buf));
     }
+
+    public final void testRecord() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final RecordWriter writer = new RecordWriter(Channels.newChannel(out),
+                3, 4);
+        writer.write(XdrString.VAR_CODEC, "first record");
+        writer.write(XdrInt.CODEC, 101);
+        // Header, length and padded string split into fragments of 3 bytes.
+        assertEquals(4 * 6 + 16 + 4 * 2 + 4, out.size());
+
+        final RecordReader reader = new RecordReader(Channels
+                .newChannel(new ByteArrayInputStream(out.toByteArray())), 16, 4);
+        assertEquals("first record", reader.read(XdrString.VAR_CODEC));
+        assertEquals(Integer.valueOf(101), reader.read(XdrInt.CODEC));
+        assertNull(reader.readRecord());
+
+        // A header claiming more than the default maximum is refused.
+        final ByteBuffer huge = XdrBuffer.allocate(8);
+        XdrInt.encode(huge, RecordWriter.LAST_FRAG | 0x7ffffff0);
+        final RecordReader bounded = new RecordReader(Channels
+                .newChannel(new ByteArrayInputStream(huge.array())));
+        assertEquals(RecordReader.DEFAULT_MAX_RECORD, bounded.getMaxSize());
+        try {
+            bounded.readRecord();
+            fail();
+        } catch (final StreamCorruptedException e) {
+        }
+    }
+
+    public final void testMappedFile() throws IOException {
+        final File file = File.createTempFile("openxdr", ".xdr");
+        file.deleteOnExit();
+        final FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final MappedWriter writer = new MappedWriter(channel, 16);
+            for (int i = 0; i < 10; ++i) {
+                writer.write(XdrInt.CODEC, i);
+                writer.write(XdrString.VAR_CODEC, "straddles");
+            }
+            // Larger than the window.
+            writer.write(XdrString.VAR_CODEC, "longer than a single window");
+            writer.flush();
+            assertEquals(10 * (4 + 16) + 32, channel.size());
+
+            final MappedReader reader = new MappedReader(channel, 16);
+            for (int i = 0; i < 10; ++i) {
+                assertEquals(Integer.valueOf(i), reader.read(XdrInt.CODEC));
+                assertEquals("straddles", reader.read(XdrString.VAR_CODEC));
+            }
+            assertEquals("longer than a single window", reader
+                    .read(XdrString.VAR_CODEC));
+            assertFalse(reader.hasRemaining());
+            try {
+                reader.read(XdrInt.CODEC);
+                fail();
+            } catch (final EOFException e) {
+            }
+            reader.seek(20);
+            assertEquals(Integer.valueOf(1), reader.read(XdrInt.CODEC));
+
+            // Writing into the middle of the file, or flushing before any
+            // write, keeps the bytes that follow.
+            final long size = channel.size();
+            new MappedWriter(channel, 16).flush();
+            assertEquals(size, channel.size());
+            final MappedWriter middle = new MappedWriter(channel, 20, 16);
+            middle.write(XdrInt.CODEC, 101);
+            middle.flush();
+            assertEquals(size, channel.size());
+            reader.seek(20);
+            assertEquals(Integer.valueOf(101), reader.read(XdrInt.CODEC));
+            assertEquals("straddles", reader.read(XdrString.VAR_CODEC));
+            reader.seek(size - 32);
+            assertEquals("longer than a single window", reader
+                    .read(XdrString.VAR_CODEC));
+
+            // Writing past the end still trims the mapped extension.
+            final MappedWriter tail = new MappedWriter(channel, size - 4, 16);
+            tail.write(XdrHyper.CODEC, 7L);
+            tail.flush();
+            assertEquals(size + 4, channel.size());
+        } finally {
+            channel.close();
+        }
+    }
+
+    public final void testRecordIndex() throws IOException {
+        final File data = File.createTempFile("openxdr", ".xdr");
+        data.deleteOnExit();
+        final File idx = File.createTempFile("openxdr", ".idx");
+        idx.deleteOnExit();
+        final FileChannel channel = FileChannel.open(data.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final FileChannel index = FileChannel.open(idx.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final MappedWriter writer = new MappedWriter(channel, 64);
+            RecordIndexBuilder builder = new RecordIndexBuilder(index, 8);
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 50; ++i, sb.append('x'))
+                builder.write(writer, XdrString.VAR_CODEC, sb.toString());
+            builder.flush();
+            // Resume appending to the flushed index.
+            builder = new RecordIndexBuilder(index, 8);
+            for (int i = 50; i < 100; ++i, sb.append('x'))
+                builder.write(writer, XdrString.VAR_CODEC, sb.toString());
+            writer.flush();
+            builder.flush();
+            assertEquals(100, builder.getCount());
+
+            final MappedReader reader = new MappedReader(channel, 64);
+            final RecordIndex ri = new RecordIndex(index);
+            assertEquals(100, ri.getCount());
+            ri.seek(reader, XdrString.VAR_CODEC, 61);
+            assertEquals(61, reader.read(XdrString.VAR_CODEC).length());
+            assertEquals(37, ri.search(reader, XdrString.VAR_CODEC,
+                    new ToIntFunction<String>() {
+                        public final int applyAsInt(String val) {
+                            return val.length() - 37;
+                        }
+                    }));
+            assertEquals(37, reader.read(XdrString.VAR_CODEC).length());
+
+            // Rebuild by scanning the data file.
+            final long off = ri.offset(32);
+            RecordIndexBuilder.build(new MappedReader(channel),
+                    XdrString.VAR_CODEC, index, 16);
+            assertEquals(off, new RecordIndex(index).offset(32));
+        } finally {
+            channel.close();
+            index.close();
+        }
+    }
+
+    public final void testChunkedOutput() throws CharacterCodingException {
+        final ChunkedOutput out = new ChunkedOutput(new ChunkPool(16, false));
+        for (int i = 0; i < 10; ++i)
+            out.encode(XdrInt.CODEC, i);
+        out.encode(XdrString.VAR_CODEC, "longer than a single chunk");
+        XdrInt.encode(out.reserve(XdrInt.SIZE), 10);
+        assertEquals(10 * 4 + 32 + 4, out.size());
+        assertEquals(5, out.toBuffers().length);
+
+        final ByteBuffer buf = out.toBuffer();
+        for (int i = 0; i < 10; ++i)
+            assertEquals(i, XdrInt.decode(buf));
+        assertEquals("longer than a single chunk", XdrString.decode(buf));
+        assertEquals(10, XdrInt.decode(buf));
+        out.clear();
+        assertTrue(out.isEmpty());
+
+        // A value that spills is never sized, and encoded at most twice.
+        final int[] calls = new int[2];
+        final Codec<String> counted = new Codec<String>() {
+            public final void encode(ByteBuffer buf, String val)
+                    throws CharacterCodingException {
+                ++calls[0];
+                XdrString.encode(buf, val);
+            }
+
+            public final String decode(ByteBuffer buf)
+                    throws CharacterCodingException {
+                return XdrString.decode(buf);
+            }
+
+            public final int size(String val) {
+                ++calls[1];
+                return XdrString.VAR_CODEC.size(val);
+            }
+        };
+        out.encode(XdrInt.CODEC, 1);
+        out.encode(counted, "twelve chars");
+        assertEquals(2, calls[0]);
+        out.encode(counted, "longer than a single chunk");
+        assertEquals(2 + 3, calls[0]);
+        assertEquals(0, calls[1]);
+        assertEquals(4 + 16 + 32, out.size());
+        out.clear();
+    }
+
+    public final void testGatherOutput() throws IOException {
+        final ChunkedOutput out = new ChunkedOutput(new ChunkPool(64, false),
+                8);
+        final byte[] large = new byte[9];
+        Arrays.fill(large, (byte) 7);
+        final ByteBuffer ref = ByteBuffer.wrap(large);
+        XdrInt.encode(out.reserve(XdrInt.SIZE), 1);
+        out.encodeVarRef(ref);
+        out.encodeVarRef(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        XdrInt.encode(out.reserve(XdrInt.SIZE), 2);
+        assertEquals(4 + 4 + 12 + 4 + 4 + 4, out.size());
+        assertEquals(0, ref.position());
+
+        // Header, referenced bytes, padding, then the copied tail.
+        final ByteBuffer[] bufs = out.toBuffers();
+        assertEquals(4, bufs.length);
+        assertSame(large, bufs[1].array());
+        assertEquals(3, bufs[2].remaining());
+
+        final ByteBuffer buf = out.toBuffer();
+        assertEquals(1, XdrInt.decode(buf));
+        assertTrue(Arrays.equals(large, XdrOpaque.decodeVar(buf)));
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, XdrOpaque
+                .decodeVar(buf)));
+        assertEquals(2, XdrInt.decode(buf));
+        assertFalse(buf.hasRemaining());
+
+        // Writes every segment, and refuses a channel it would spin on.
+        final Pipe pipe = Pipe.open();
+        try {
+            assertEquals(out.size(), out.writeTo(pipe.sink()));
+            final ByteBuffer dst = ByteBuffer.allocate(out.size());
+            while (dst.hasRemaining())
+                pipe.source().read(dst);
+            dst.flip();
+            assertEquals(out.toBuffer(), dst);
+            pipe.sink().configureBlocking(false);
+            try {
+                out.writeTo(pipe.sink());
+                fail();
+            } catch (final IllegalArgumentException e) {
+            }
+        } finally {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+        out.clear();
+        assertTrue(out.isEmpty());
+    }
+
+    public final void testBufferPool() throws InterruptedException {
+        final XdrBufferPool pool = new XdrBufferPool(1024, 2, 4);
+        final ByteBuffer a = pool.acquire(100);
+        assertTrue(a.isDirect());
+        assertEquals(128, a.capacity());
+        assertEquals(100, a.remaining());
+        assertEquals(ByteOrder.BIG_ENDIAN, a.order());
+        XdrInt.encode(a, 101);
+        pool.release(a);
+        // Reused from the thread's cache.
+        final ByteBuffer b = pool.acquire(128);
+        assertSame(a, b);
+        assertEquals(0, b.position());
+
+        final ByteBuffer large = pool.acquire(4096);
+        assertEquals(4096, large.capacity());
+        // Not acquired from the pool, though of a class size, or views.
+        pool.release(XdrBuffer.allocateDirect(128));
+        pool.release(XdrBuffer.allocateDirect(4096));
+        pool.release(b.duplicate());
+        assertEquals(3, pool.getAcquiredCount());
+        assertEquals(1, pool.getReleasedCount());
+        assertEquals(2, pool.getOutstandingCount());
+        pool.release(b);
+        pool.release(large);
+        assertEquals(0, pool.getOutstandingCount());
+
+        // A second release is refused, so the buffer is handed out once.
+        try {
+            pool.release(b);
+            fail();
+        } catch (final IllegalStateException e) {
+        }
+        try {
+            pool.release(large);
+            fail();
+        } catch (final IllegalStateException e) {
+        }
+        assertEquals(0, pool.getOutstandingCount());
+        final ByteBuffer c = pool.acquire(128);
+        assertSame(b, c);
+        final ByteBuffer d = pool.acquire(128);
+        assertNotSame(c, d);
+        pool.release(c);
+        pool.release(d);
+
+        // Released on another thread, and shared once its cache is full.
+        final ByteBuffer[] bufs = new ByteBuffer[3];
+        for (int i = 0; i < bufs.length; ++i)
+            bufs[i] = pool.acquire(64);
+        final Thread thread = new Thread(new Runnable() {
+            public final void run() {
+                for (final ByteBuffer buf : bufs)
+                    pool.release(buf);
+            }
+        });
+        thread.start();
+        thread.join();
+        assertEquals(0, pool.getOutstandingCount());
+
+        // Neither buffers left in the cache of a thread that has died, nor
+        // buffers never released, are kept from the collector.
+        final WeakReference<ByteBuffer> cached = new WeakReference<ByteBuffer>(
+                bufs[0]);
+        final WeakReference<ByteBuffer> leaked = new WeakReference<ByteBuffer>(
+                pool.acquire(4096));
+        Arrays.fill(bufs, null);
+        assertTrue(collected(cached));
+        assertTrue(collected(leaked));
+        assertEquals(1, pool.getOutstandingCount());
+    }
+
+    // Collects garbage until the reference is cleared, or gives up.
+    private static boolean collected(WeakReference<?> ref)
+            throws InterruptedException {
+        for (int i = 0; i < 50 && null != ref.get(); ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        return null == ref.get();
+    }
+
+    public final void testCachingCodec() throws CharacterCodingException {
+        final CachingCodec<String> codec = XdrCache.newVarCodec(
+                XdrString.VAR_CODEC, 8, 16);
+        final ByteBuffer buf = XdrBuffer.allocate(256);
+        for (int i = 0; i < 3; ++i)
+            XdrString.encode(buf, "hostname");
+        XdrString.encode(buf, "longer than the key size");
+        buf.flip();
+        final String first = codec.decode(buf);
+        assertSame(first, codec.decode(buf));
+        assertSame(first, codec.decode(buf));
+        assertEquals("longer than the key size", codec.decode(buf));
+        assertFalse(buf.hasRemaining());
+        assertEquals(2, codec.getHitCount());
+        assertEquals(1, codec.getMissCount());
+
+        // Referenced entries survive a scan of values seen once.
+        for (int i = 0; i < 20; ++i) {
+            buf.clear();
+            XdrString.encode(buf, "hostname");
+            XdrString.encode(buf, "user" + i);
+            buf.flip();
+            assertSame(first, codec.decode(buf));
+            codec.decode(buf);
+        }
+        assertEquals(22, codec.getHitCount());
+        assertEquals(13, codec.getEvictionCount());
+
+        final CachingCodec<Opaque> handles = XdrCache.newFixedCodec(XdrOpaque
+                .newCodec(8));
+        buf.clear();
+        XdrOpaque.encode(buf, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        XdrOpaque.encode(buf, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        buf.flip();
+        assertSame(handles.decode(buf), handles.decode(buf));
+        assertEquals(16, buf.position());
+    }
+
+    public final void testAsciiString() throws CharacterCodingException {
+        final ByteBuffer buf = XdrBuffer.allocateDirect(16);
+        XdrString.encode(buf, "direct");
+        XdrInt.encode(buf, 101);
+        buf.flip();
+        assertEquals("direct", XdrString.decode(buf));
+        assertEquals(101, XdrInt.decode(buf));
+    }
+
+    public final void testUtf8String() throws UnsupportedEncodingException,
+            CharacterCodingException {
+        final byte[] utf8 = "caf\u00e9".getBytes("UTF-8");
+        final ByteBuffer buf = XdrBuffer.allocate(16);
+        XdrOpaque.encodeVar(buf, utf8);
+        XdrInt.encode(buf, 101);
+        buf.flip();
+        assertEquals("caf\u00e9", XdrString.decode(buf));
+        assertEquals(101, XdrInt.decode(buf));
+    }
+
+    public final void testUtf8Transcoding() throws CharacterCodingException,
+            UnsupportedEncodingException {
+        final String val = "a\u00e9\u20ac\ud83d\ude00z";
+        final byte[] utf8 = val.getBytes("UTF-8");
+        for (final ByteBuffer buf : new ByteBuffer[] { XdrBuffer.allocate(32),
+                XdrBuffer.allocateDirect(32) }) {
+            XdrString.encode(buf, val);
+            assertEquals(XdrString.size(val), buf.position());
+            buf.flip();
+            buf.position(XdrInt.SIZE);
+            final byte[] out = new byte[utf8.length];
+            buf.get(out);
+            assertTrue(Arrays.equals(utf8, out));
+            buf.rewind();
+            assertEquals(val, XdrString.decode(buf));
+        }
+
+        // Unpaired surrogates fail, and roll back what was written.
+        final ByteBuffer buf = XdrBuffer.allocate(32);
+        try {
+            XdrString.encode(buf, "ab\ud83d");
+            fail();
+        } catch (final MalformedInputException e) {
+        }
+        assertEquals(0, buf.position());
+
+        // Overlong, surrogate, out of range and truncated forms.
+        final byte[][] malformed = { { (byte) 0xc0, (byte) 0x80 },
+                { (byte) 0xed, (byte) 0xa0, (byte) 0x80 },
+                { (byte) 0xf4, (byte) 0x90, (byte) 0x80, (byte) 0x80 },
+                { 'a', (byte) 0xe2, (byte) 0x82 } };
+        for (final byte[] bad : malformed) {
+            buf.clear();
+            XdrOpaque.encodeVar(buf, bad);
+            buf.flip();
+            try {
+                XdrString.decode(buf);
+                fail();
+            } catch (final MalformedInputException e) {
+            }
+        }
+    }
+
+    public final void testStringView() throws CharacterCodingException {
+        final ByteBuffer buf = XdrBuffer.allocate(24);
+        XdrString.encode(buf, new Utf8String("host"));
+        XdrString.encode(buf, new Utf8String("hosts"));
+        buf.flip();
+        final Utf8String host = XdrString.VAR_VIEW_CODEC.decode(buf);
+        final Utf8String hosts = XdrString.VAR_VIEW_CODEC.decode(buf);
+        assertEquals(new Utf8String("host"), host);
+        assertEquals(new Utf8String("host").hashCode(), host.hashCode());
+        assertTrue(host.compareTo(hosts) < 0);
+        assertEquals("hosts", hosts.toString());
+        assertEquals("hosts", hosts.decode());
+
+        // Malformed input is rejected, as by XdrString.decode.
+        final Utf8String bad = new Utf8String(new byte[] { 'a', (byte) 0xc0,
+                (byte) 0x80 }, 0, 3);
+        try {
+            bad.decode();
+            fail();
+        } catch (final MalformedInputException e) {
+        }
+        try {
+            bad.toString();
+            fail();
+        } catch (final IllegalStateException e) {
+        }
+    }
+
+    public final void testUtf8Size() throws CharacterCodingException {
+        final String val = "caf\u00e9 \u20ac \ud834\udd1e";
+        assertEquals(14, XdrString.utf8Length(val));
+        assertEquals(20, XdrString.size(val));
+        final ByteBuffer buf = XdrBuffer.allocate(20);
+        XdrString.encode(buf, val);
+        assertEquals(20, buf.position());
+        buf.flip();
+        assertEquals(14, buf.getInt(0));
+        assertEquals(val, XdrString.decode(buf));
+
+        buf.clear();
+        try {
+            XdrString.encode(buf, val, 13);
+            fail();
+        } catch (final IllegalArgumentException e) {
+        }
+        assertEquals(0, buf.position());
+    }
+
+    public final void testPrimitiveArrays() {
+        final ByteBuffer buf = XdrBuffer.allocateDirect(64);
+        final int[] ints = { 1, -2, Integer.MAX_VALUE };
+        final double[] doubles = { 1.5, Double.MIN_VALUE };
+        final boolean[] bools = { true, false };
+        XdrIntArray.encodeVar(buf, ints);
+        XdrDoubleArray.encode(buf, doubles);
+        XdrBoolArray.encodeVar(buf, bools);
+        assertEquals(4 + 12 + 16 + 4 + 8, buf.position());
+        buf.flip();
+        assertTrue(Arrays.equals(ints, XdrIntArray.decodeVar(buf)));
+        final double[] out = new double[2];
+        XdrDoubleArray.decode(buf, out);
+        assertTrue(Arrays.equals(doubles, out));
+        assertTrue(Arrays.equals(bools, XdrBoolArray.decodeVar(buf, 2)));
+
+        buf.clear();
+        buf.limit(12);
+        try {
+            XdrIntArray.encodeVar(buf, ints);
+            fail();
+        } catch (final BufferOverflowException e) {
+        }
+        assertEquals(0, buf.position());
+    }
+
+    public final void testPrimitiveCodecs() throws CharacterCodingException {
+        final SizedCodec<long[]> codec = XdrArray.newVarCodec(
+                XdrHyper.LONG_CODEC, 4);
+        final long[] val = { 1L, Long.MAX_VALUE };
+        assertEquals(20, codec.size(val));
+        assertEquals(4 + 4 * 8, codec.getMaxSize());
+        assertEquals(12, XdrArray.newCodec(XdrBool.BOOLEAN_CODEC, 3)
+                .getFixedSize());
+        // Other element codecs are applied to each element, so that the
+        // range check is not bypassed.
+        final SizedCodec<int[]> unsigned = XdrArray.newVarCodec(
+                XdrUInt.INT_CODEC, 4);
+        assertEquals(-1, unsigned.getFixedSize());
+        assertEquals(12, unsigned.size(new int[] { 1, 2 }));
+        try {
+            unsigned.encode(XdrBuffer.allocate(12), new int[] { 1, -1 });
+            fail();
+        } catch (final IllegalArgumentException e) {
+        }
+        final ByteBuffer buf = XdrBuffer.allocate(52);
+        codec.encode(buf, val);
+        unsigned.encode(buf, new int[] { 7, Integer.MAX_VALUE });
+        XdrOptional.encode(buf, true, 101, XdrInt.INT_CODEC);
+        XdrOptional.encode(buf, false, 0, XdrInt.INT_CODEC);
+        buf.flip();
+        assertTrue(Arrays.equals(val, codec.decode(buf)));
+        assertTrue(Arrays.equals(new int[] { 7, Integer.MAX_VALUE }, unsigned
+                .decode(buf)));
+        assertEquals(101, XdrOptional.decode(buf, XdrInt.INT_CODEC, -1));
+        assertEquals(-1, XdrOptional.decode(buf, XdrInt.INT_CODEC, -1));
+    }
+
+    public final void testEnum() throws CharacterCodingException {
+        final Codec<Status> ordinal = XdrEnum.newCodec(Status.values());
+        final Codec<Status> sparse = XdrEnum.newCodec(Status.values(),
+                new int[] { 0, 1, 2, 10001 });
+        final ByteBuffer buf = XdrBuffer.allocate(12);
+        ordinal.encode(buf, Status.NOENT);
+        sparse.encode(buf, Status.BADHANDLE);
+        sparse.encode(buf, Status.PERM);
+        buf.flip();
+        assertEquals(10001, buf.getInt(4));
+        assertEquals(Status.NOENT, ordinal.decode(buf));
+        assertEquals(Status.BADHANDLE, sparse.decode(buf));
+        assertEquals(Status.PERM, sparse.decode(buf));
+        buf.clear();
+        XdrInt.encode(buf, 3);
+        buf.flip();
+        try {
+            sparse.decode(buf);
+            fail();
+        } catch (final IllegalArgumentException e) {
+        }
+    }
+
+    public final void testIntUnion() throws CharacterCodingException {
+        final IntUnionCodec codec = XdrUnion.newIntCodec(XdrInt.INT_CODEC,
+                XdrUnion.<Integer> newCases(0, XdrString.VAR_CODEC, 10001,
+                        XdrInt.CODEC), XdrVoid.CODEC);
+        final ByteBuffer buf = XdrBuffer.allocate(24);
+        codec.encode(buf, 0, "test");
+        codec.encode(buf, 10001, 101);
+        codec.encode(buf, 7, Void.VALUE);
+        assertEquals(12 + 8 + 4, buf.position());
+        buf.flip();
+        final IntUnionVisitor<String> visitor = new IntUnionVisitor<String>() {
+            public final String visit(int type, Object value) {
+                return type + ":" + value;
+            }
+        };
+        assertEquals("0:test", codec.decode(buf, visitor));
+        assertEquals("10001:101", codec.decode(buf, visitor));
+        assertEquals(7, codec.decode(buf).getType().intValue());
+    }
+
+    public final void testEnumUnion() throws CharacterCodingException {
+        final EnumUnionCodec<Status> codec = XdrUnion.newEnumCodec(XdrEnum
+                .newCodec(Status.values()), XdrUnion.<Status> newCases(
+                Status.OK, XdrHyper.CODEC), XdrVoid.CODEC);
+        final ByteBuffer buf = XdrBuffer.allocate(16);
+        codec.encode(buf, Status.OK, 101L);
+        codec.encode(buf, Status.NOENT, Void.VALUE);
+        buf.flip();
+        final Union<Status> ok = codec.decode(buf);
+        assertEquals(Status.OK, ok.getType());
+        assertEquals(101L, ok.getValue());
+        assertEquals(Status.NOENT, codec.decode(buf).getType());
+    }
+
+    public final void testStruct() throws CharacterCodingException {
+        final Node tail = new Node();
+        tail.name = "tail";
+        tail.tag = new byte[3];
+        tail.counts = new int[0];
+        tail.points = new Point[0];
+        tail.status = Status.PERM;
+        final Node head = new Node();
+        head.name = "head";
+        head.id = 101L;
+        head.tag = new byte[] { 1, 2, 3 };
+        head.counts = new int[] { 4, 5 };
+        head.points = new Point[] { new Point(), new Point() };
+        head.points[1].y = 6;
+        head.status = Status.OK;
+        head.next = tail;
+        head.weight = 0.5;
+        final Reply reply = new Reply();
+        reply.status = Status.OK;
+        reply.node = head;
+
+        final Codec<Reply> codec = XdrStruct.newCodec(Reply.class);
+        assertSame(codec, XdrStruct.newCodec(Reply.class));
+        final int size = codec.size(reply);
+        assertEquals(4 + 72 + 40, size);
+        final ByteBuffer buf = XdrBuffer.allocate(size + 8);
+        codec.encode(buf, reply);
+        assertEquals(size, buf.position());
+        reply.status = Status.BADHANDLE;
+        reply.code = 7;
+        codec.encode(buf, reply);
+        buf.flip();
+
+        final Reply copy = codec.decode(buf);
+        assertEquals(Status.OK, copy.status);
+        assertEquals("head", copy.node.name);
+        assertEquals(101L, copy.node.id);
+        assertTrue(Arrays.equals(head.tag, copy.node.tag));
+        assertTrue(Arrays.equals(head.counts, copy.node.counts));
+        assertEquals(6, copy.node.points[1].y);
+        assertEquals(0.5, copy.node.weight);
+        assertEquals("tail", copy.node.next.name);
+        assertNull(copy.node.next.next);
+        assertNull(copy.node.next.weight);
+        assertEquals(7, codec.decode(buf).code);
+
+        reply.status = Status.NOENT;
+        assertEquals(4, codec.size(reply));
+        head.tag = new byte[2];
+        reply.status = Status.OK;
+        try {
+            codec.encode(XdrBuffer.allocate(size), reply);
+            fail();
+        } catch (final IllegalArgumentException e) {
+        }
+        try {
+            XdrStruct.newCodec(Dup.class);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("duplicate XdrField 1 in "));
+        }
+    }
+
+    public final void testSizedCodec() throws CharacterCodingException {
+        assertEquals(4, XdrInt.CODEC.getFixedSize());
+        assertEquals(12, XdrArray.newCodec(XdrInt.CODEC, 3).getFixedSize());
+        assertEquals(-1, XdrString.newVarCodec(5).getFixedSize());
+        assertEquals(12, XdrString.newVarCodec(5).getMaxSize());
+        assertEquals(Integer.MAX_VALUE, XdrString.VAR_CODEC.getMaxSize());
+        assertEquals(12, XdrOptional.newCodec(XdrHyper.CODEC).getMaxSize());
+
+        final SizedCodec<Point> codec = XdrStruct.newCodec(Point.class);
+        assertEquals(8, codec.getFixedSize());
+        assertEquals(-1, XdrStruct.newCodec(Node.class).getFixedSize());
+        final Point[] points = new Point[100000];
+        assertEquals(800000, XdrArray.size(points, codec));
+        assertEquals(16, XdrArray.newCodec(XdrInt.INT_CODEC, 4)
+                .getFixedSize());
+
+        // Sizes that overflow an int are rejected, not wrapped.
+        try {
+            XdrArray.size(points, 0, 300000000, codec);
+            fail();
+        } catch (final IllegalArgumentException e) {
+        }
+        try {
+            XdrIntArray.sizeVar(new int[0], 0, Integer.MAX_VALUE / 4,
+                    Integer.MAX_VALUE);
+            fail();
+        } catch (final IllegalArgumentException e) {
+        }
+
+        final Point[] two = { new Point(), new Point() };
+        final ByteBuffer buf = XdrBuffer.allocate(12);
+        try {
+            XdrArray.encode(buf, two, codec);
+            fail();
+        } catch (final BufferOverflowException e) {
+        }
+        assertEquals(0, buf.position());
+    }
+
+    public final void testEncodeIterable() throws CharacterCodingException {
+        final List<Integer> list = Arrays.asList(1, 2, 3);
+        final ByteBuffer buf = XdrBuffer.allocate(48);
+        XdrArray.encodeVar(buf, list, XdrInt.CODEC, 3);
+        XdrArray.encodeVar(buf, Stream.of("a", "b"), XdrString.VAR_CODEC);
+        try {
+            XdrArray.encodeVar(buf, list, XdrInt.CODEC, 2);
+            fail();
+        } catch (final IllegalArgumentException e) {
+        }
+        assertEquals(16 + 20, buf.position());
+        buf.flip();
+        assertEquals(3, XdrInt.decode(buf));
+        for (final int i : list)
+            assertEquals(i, XdrInt.decode(buf));
+        assertEquals(2, XdrInt.decode(buf));
+        assertEquals("a", XdrString.decode(buf));
+        assertEquals("b", XdrString.decode(buf));
+
+        final ChunkedOutput out = new ChunkedOutput(new ChunkPool(16, false));
+        out.encode(XdrInt.CODEC, 0);
+        out.encodeVar(Collections.nCopies(10, "xyz"), XdrString.VAR_CODEC);
+        final ByteBuffer all = out.toBuffer();
+        assertEquals(0, XdrInt.decode(all));
+        assertEquals(10, XdrInt.decode(all));
+        for (int i = 0; i < 10; ++i)
+            assertEquals("xyz", XdrString.decode(all));
+        assertFalse(all.hasRemaining());
+
+        // A failed array leaves no trace, even once it has spanned chunks.
+        out.clear();
+        out.encode(XdrInt.CODEC, 1);
+        try {
+            out.encodeVar(Collections.nCopies(10, "xyz"), XdrString.VAR_CODEC,
+                    5);
+            fail();
+        } catch (final IllegalArgumentException e) {
+        }
+        assertEquals(4, out.size());
+        try {
+            out.encodeVar(Arrays.asList("a", "b", "\ud800"),
+                    XdrString.VAR_CODEC);
+            fail();
+        } catch (final CharacterCodingException e) {
+        }
+        assertEquals(4, out.size());
+        out.encodeVar(Arrays.asList("a", "b"), XdrString.VAR_CODEC);
+        final ByteBuffer rest = out.toBuffer();
+        assertEquals(1, XdrInt.decode(rest));
+        assertEquals(2, XdrInt.decode(rest));
+        assertEquals("a", XdrString.decode(rest));
+        assertEquals("b", XdrString.decode(rest));
+        assertFalse(rest.hasRemaining());
+    }
+
+    public final void testDecodeStreaming() throws CharacterCodingException {
+        final List<String> names = Arrays.asList("a", "bb", "ccc");
+        final ByteBuffer buf = XdrBuffer.allocate(64);
+        XdrArray.encodeVar(buf, names, XdrString.VAR_CODEC);
+        XdrInt.encode(buf, 1000);
+        XdrInt.encode(buf, 1);
+        buf.flip();
+
+        final List<String> seen = new ArrayList<String>();
+        assertEquals(3, XdrArray.decodeVar(buf.duplicate(),
+                XdrString.VAR_CODEC, new Consumer<String>() {
+                    public final void accept(String val) {
+                        seen.add(val);
+                    }
+                }));
+        assertEquals(names, seen);
+        try {
+            XdrArray.decodeVar(buf.duplicate(), XdrString.VAR_CODEC, 2, null);
+            fail();
+        } catch (final IllegalArgumentException e) {
+        }
+
+        final Iterator<String> it = XdrArray.iterateVar(buf,
+                XdrString.VAR_CODEC);
+        assertEquals("a", it.next());
+        assertEquals("bb", it.next());
+        assertEquals("ccc", it.next());
+        assertFalse(it.hasNext());
+
+        // 1000 ints cannot fit in the 4 bytes that remain.
+        try {
+            XdrArray.streamVar(buf, XdrInt.CODEC);
+            fail();
+        } catch (final BufferUnderflowException e) {
+        }
+    }
+
+    public final void testPartialDecoder() throws CharacterCodingException {
+        final ByteBuffer buf = XdrBuffer.allocate(64);
+        XdrInt.encode(buf, 101);
+        XdrString.encode(buf, "caf\u00e9");
+        XdrArray.encodeVar(buf, Arrays.asList(1L, 2L), XdrHyper.CODEC);
+        XdrOptional.encode(buf, 7, XdrInt.CODEC);
+        XdrInt.encode(buf, 1);
+        XdrString.encode(buf, "arm");
+        buf.flip();
+
+        final PartialDecoder<Object[]> fields = XdrPartial.newStructDecoder(
+                new Function<Object[], Object[]>() {
+                    public final Object[] apply(Object[] vals) {
+                        return vals;
+                    }
+                }, XdrPartial.newDecoder(XdrInt.CODEC), XdrPartial
+                        .newStringDecoder(8), XdrPartial
+                        .newArrayDecoder(XdrPartial
+                                .newDecoder(XdrHyper.CODEC)), XdrPartial
+                        .newOptionalDecoder(XdrPartial
+                                .newDecoder(XdrInt.CODEC)), XdrPartial
+                        .newUnionDecoder(Collections
+                                .<Integer, PartialDecoder<?>> singletonMap(1,
+                                        XdrPartial.newStringDecoder())));
+
+        // Feed one byte at a time, as a slow non-blocking read might.
+        final ByteBuffer piece = buf.duplicate();
+        int reads = 0;
+        do {
+            piece.limit(Math.min(piece.position() + 1, buf.limit()));
+            ++reads;
+        } while (!fields.decode(piece));
+        assertEquals(buf.limit(), piece.position());
+        assertEquals(buf.limit(), reads);
+
+        final Object[] vals = fields.getValue();
+        assertEquals(101, vals[0]);
+        assertEquals("caf\u00e9", vals[1]);
+        assertEquals(Arrays.asList(1L, 2L), vals[2]);
+        assertEquals(7, vals[3]);
+        assertEquals("arm", ((Union<?>) vals[4]).getValue());
+
+        fields.reset();
+        assertTrue(fields.decode(buf));
+        assertEquals("arm", ((Union<?>) fields.getValue()[4]).getValue());
+
+        // A length prefix alone allocates nothing near the claimed length,
+        // and the default bound rejects it outright.
+        final ByteBuffer head = XdrBuffer.allocate(4);
+        XdrInt.encode(head, Integer.MAX_VALUE - 3);
+        head.flip();
+        assertFalse(XdrPartial.newOpaqueDecoder(Integer.MAX_VALUE).decode(
+                head.duplicate()));
+        try {
+            XdrPartial.newOpaqueDecoder().decode(head.duplicate());
+            fail();
+        } catch (final IllegalArgumentException e) {
+        }
+
+        // The buffer grows as the bytes arrive.
+        final byte[] large = new byte[50001];
+        for (int i = 0; i < large.length; ++i)
+            large[i] = (byte) i;
+        final ByteBuffer all = XdrBuffer.allocate(4 + 50004);
+        XdrOpaque.encodeVar(all, large);
+        all.flip();
+        final PartialDecoder<byte[]> opaque = XdrPartial.newOpaqueDecoder();
+        final ByteBuffer chunk = all.duplicate();
+        do
+            chunk.limit(Math.min(chunk.position() + 1000, all.limit()));
+        while (!opaque.decode(chunk));
+        assertFalse(chunk.hasRemaining());
+        assertTrue(Arrays.equals(large, opaque.getValue()));
+    }
+
+    public final void testEncoder() {
+        final ByteBuffer[] bufs = { XdrBuffer.allocate(64),
+                XdrBuffer.allocateDirect(64) };
+        final byte[] bytes = { 1, 2, 3, 4, 5 };
+        for (final ByteBuffer buf : bufs) {
+            buf.putInt(-1);
+            int i = XdrEncoder.begin(buf, 40);
+            assertEquals(4, i);
+            i = XdrEncoder.putInt(buf, i, -2);
+            i = XdrEncoder.putHyper(buf, i, 0x0102030405060708L);
+            i = XdrEncoder.putBool(buf, i, true);
+            i = XdrEncoder.putDouble(buf, i, 1.5);
+            XdrEncoder.end(buf, XdrEncoder.putVarOpaque(buf, i, bytes));
+            assertEquals(4 + 36, buf.position());
+            buf.flip();
+            final ByteBuffer ref = XdrBuffer.allocate(64);
+            XdrInt.encode(ref, -1);
+            XdrInt.encode(ref, -2);
+            XdrHyper.encode(ref, 0x0102030405060708L);
+            XdrBool.encode(ref, true);
+            XdrDouble.encode(ref, 1.5);
+            XdrOpaque.encodeVar(ref, bytes);
+            ref.flip();
+            assertEquals(ref, buf);
+
+            buf.position(4);
+            i = XdrDecoder.begin(buf, 36);
+            assertEquals(-2, XdrDecoder.getInt(buf, i));
+            assertEquals(0x0102030405060708L, XdrDecoder.getHyper(buf, i + 4));
+            assertTrue(XdrDecoder.getBool(buf, i + 12));
+            assertEquals(1.5, XdrDecoder.getDouble(buf, i + 16));
+            final byte[] out = new byte[XdrDecoder.getInt(buf, i + 24)];
+            XdrDecoder.end(buf, XdrDecoder.getOpaque(buf, i + 28, out));
+            assertTrue(Arrays.equals(bytes, out));
+            assertFalse(buf.hasRemaining());
+
+            // A short buffer fails before anything is read or written.
+            buf.position(36);
+            try {
+                XdrDecoder.begin(buf, 8);
+                fail();
+            } catch (final BufferUnderflowException e) {
+            }
+            assertEquals(36, buf.position());
+            buf.clear().position(60);
+            try {
+                XdrEncoder.begin(buf, 8);
+                fail();
+            } catch (final BufferOverflowException e) {
+            }
+            assertEquals(60, buf.position());
+        }
+    }
 }
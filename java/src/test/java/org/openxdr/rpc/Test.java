@@ -0,0 +1,380 @@
+/**
+ * Copyright 2010 Mark Aylett <mark.aylett@gmail.com>
+ * 
+ * The contents of this file are subject to the Common Development and
+ * Distribution License (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://www.sun.com/cddl/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ */
+package org.openxdr.rpc;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Pipe;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.openxdr.RecordReader;
+import org.openxdr.RecordWriter;
+import org.openxdr.XdrBuffer;
+import org.openxdr.XdrInt;
+
+public final class Test extends TestCase {
+    private static final int PROG = 0x20000001;
+    private static final int VERS = 1;
+    private static final int DOUBLE = 1;
+
+    private ServerSocketChannel server;
+
+    @Override
+    protected final void setUp() throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @Override
+    protected final void tearDown() throws IOException {
+        server.close();
+    }
+
+    private SocketChannel connect() throws IOException {
+        return SocketChannel.open(server.getLocalAddress());
+    }
+
+    public final void testMessages() throws IOException {
+        final ByteBuffer buf = XdrBuffer.allocate(128);
+        final CallHeader call = new CallHeader(7, PROG, VERS, DOUBLE,
+                OpaqueAuth.NONE);
+        CallHeader.encode(buf, call);
+        ReplyHeader.encode(buf, ReplyHeader.progMismatch(7, 1, 3));
+        ReplyHeader.encode(buf, ReplyHeader.authError(8, 1));
+        assertEquals(CallHeader.size(call) + 4 * 6 + 8 + 4 * 5, buf
+                .position());
+        buf.flip();
+
+        final CallHeader c = CallHeader.decode(buf);
+        assertEquals(7, c.getXid());
+        assertEquals(RpcMessage.RPC_VERSION, c.getRpcVersion());
+        assertEquals(PROG, c.getProgram());
+        assertEquals(DOUBLE, c.getProcedure());
+        final ReplyHeader r = ReplyHeader.decode(buf);
+        assertEquals(RpcMessage.PROG_MISMATCH, r.getStat());
+        assertEquals(3, ((MismatchInfo) r.getData()).getHigh());
+        final ReplyHeader d = ReplyHeader.decode(buf);
+        assertEquals(RpcMessage.MSG_DENIED, d.getReplyStat());
+        assertEquals(Integer.valueOf(1), d.getData());
+        assertNull(d.getVerifier());
+    }
+
+    // Answers n calls in reverse order of arrival.
+    private Thread reverseServer(final int n) {
+        final Thread thread = new Thread(new Runnable() {
+            public final void run() {
+                try {
+                    final SocketChannel channel = server.accept();
+                    final RecordReader reader = new RecordReader(channel);
+                    final RecordWriter writer = new RecordWriter(channel);
+                    final List<ByteBuffer> replies = new ArrayList<ByteBuffer>();
+                    for (int i = 0; i < n; ++i) {
+                        final ByteBuffer buf = reader.readRecord();
+                        final CallHeader call = CallHeader.decode(buf);
+                        final ByteBuffer out = XdrBuffer.allocate(64);
+                        if (DOUBLE == call.getProcedure()) {
+                            ReplyHeader.encode(out, ReplyHeader.success(call
+                                    .getXid()));
+                            XdrInt.encode(out, 2 * XdrInt.decode(buf));
+                        } else
+                            ReplyHeader.encode(out, ReplyHeader.accepted(call
+                                    .getXid(), RpcMessage.PROC_UNAVAIL));
+                        out.flip();
+                        replies.add(0, out);
+                    }
+                    for (final ByteBuffer out : replies)
+                        writer.write(out);
+                    channel.close();
+                } catch (final IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    public final void testPipelined() throws Exception {
+        final Thread thread = reverseServer(3);
+        final RpcClient client = new RpcClient(connect(), PROG, VERS);
+        final CompletableFuture<Integer> a = client.call(DOUBLE, XdrInt.CODEC,
+                20, XdrInt.CODEC);
+        final CompletableFuture<Integer> b = client.call(DOUBLE, XdrInt.CODEC,
+                21, XdrInt.CODEC);
+        final CompletableFuture<Integer> c = client.call(9, XdrInt.CODEC, 0,
+                XdrInt.CODEC);
+        try {
+            c.get();
+            fail();
+        } catch (final ExecutionException e) {
+            final RpcException cause = (RpcException) e.getCause();
+            assertEquals(RpcMessage.PROC_UNAVAIL, cause.getReply().getStat());
+        }
+        assertEquals(Integer.valueOf(42), b.get());
+        assertEquals(Integer.valueOf(40), a.get());
+        thread.join();
+
+        // The server has closed the connection.
+        try {
+            client.call(DOUBLE, XdrInt.CODEC, 1, XdrInt.CODEC).get();
+            fail();
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        client.close();
+        assertEquals(0, client.getPendingCount());
+    }
+
+    private static Procedure<Integer, Integer> doubler(final int delay,
+            final AtomicInteger active, final AtomicInteger peak) {
+        return new Procedure<Integer, Integer>() {
+            public final Integer call(CallHeader call, Integer args)
+                    throws InterruptedException {
+                final int n = active.incrementAndGet();
+                int max;
+                while ((max = peak.get()) < n && !peak.compareAndSet(max, n))
+                    ;
+                Thread.sleep(delay);
+                active.decrementAndGet();
+                return 2 * args;
+            }
+        };
+    }
+
+    public final void testServer() throws Exception {
+        final RpcServer rpc = new RpcServer();
+        rpc.register(PROG, VERS, DOUBLE, XdrInt.CODEC, XdrInt.CODEC,
+                doubler(0, new AtomicInteger(), new AtomicInteger()));
+        final SocketAddress addr = rpc.listen(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), 0));
+        final RpcClient client = new RpcClient(SocketChannel.open(addr), PROG,
+                VERS);
+        final RpcClient other = new RpcClient(SocketChannel.open(addr), PROG,
+                VERS + 1);
+        try {
+            final List<CompletableFuture<Integer>> calls = new ArrayList<CompletableFuture<Integer>>();
+            for (int i = 0; i < 100; ++i)
+                calls.add(client.call(DOUBLE, XdrInt.CODEC, i, XdrInt.CODEC));
+            for (int i = 0; i < 100; ++i)
+                assertEquals(Integer.valueOf(2 * i), calls.get(i).get());
+
+            final CompletableFuture<Integer> proc = client.call(9,
+                    XdrInt.CODEC, 0, XdrInt.CODEC);
+            final CompletableFuture<Integer> vers = other.call(DOUBLE,
+                    XdrInt.CODEC, 0, XdrInt.CODEC);
+            try {
+                proc.get();
+                fail();
+            } catch (final ExecutionException e) {
+                assertEquals(RpcMessage.PROC_UNAVAIL, ((RpcException) e
+                        .getCause()).getReply().getStat());
+            }
+            try {
+                vers.get();
+                fail();
+            } catch (final ExecutionException e) {
+                final ReplyHeader reply = ((RpcException) e.getCause())
+                        .getReply();
+                assertEquals(RpcMessage.PROG_MISMATCH, reply.getStat());
+                assertEquals(VERS, ((MismatchInfo) reply.getData()).getLow());
+            }
+        } finally {
+            client.close();
+            other.close();
+            rpc.close();
+        }
+    }
+
+    public final void testBackpressure() throws Exception {
+        final ExecutorService workers = Executors.newFixedThreadPool(8);
+        final RpcServer rpc = new RpcServer(workers, 2,
+                RpcServer.DEFAULT_MAX_RECORD);
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        rpc.register(PROG, VERS, DOUBLE, XdrInt.CODEC, XdrInt.CODEC,
+                doubler(5, active, peak));
+        final RpcClient client = new RpcClient(SocketChannel.open(rpc
+                .listen(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                        0))), PROG, VERS);
+        try {
+            final List<CompletableFuture<Integer>> calls = new ArrayList<CompletableFuture<Integer>>();
+            for (int i = 0; i < 20; ++i)
+                calls.add(client.call(DOUBLE, XdrInt.CODEC, i, XdrInt.CODEC));
+            for (int i = 0; i < 20; ++i)
+                assertEquals(Integer.valueOf(2 * i), calls.get(i).get());
+            // No more than two calls from the connection ran at once.
+            assertEquals(2, peak.get());
+        } finally {
+            client.close();
+            rpc.close();
+            workers.shutdown();
+        }
+    }
+
+    public final void testClientLimits() throws Exception {
+        final SocketChannel nonBlocking = connect();
+        nonBlocking.configureBlocking(false);
+        try {
+            new RpcClient(nonBlocking, PROG, VERS);
+            fail();
+        } catch (final IllegalArgumentException e) {
+        } finally {
+            nonBlocking.close();
+            server.accept().close();
+        }
+
+        // A reply larger than the client's maximum fails it.
+        final RpcClient client = new RpcClient(connect(), PROG, VERS,
+                OpaqueAuth.NONE, 64);
+        final SocketChannel peer = server.accept();
+        try {
+            final CompletableFuture<Integer> call = client.call(DOUBLE,
+                    XdrInt.CODEC, 1, XdrInt.CODEC);
+            new RecordReader(peer).readRecord();
+            final ByteBuffer header = XdrBuffer.allocate(XdrInt.SIZE);
+            XdrInt.encode(header, RecordWriter.LAST_FRAG | 65);
+            header.flip();
+            peer.write(header);
+            assertFailed(call);
+        } finally {
+            client.close();
+            peer.close();
+        }
+    }
+
+    public final void testRejected() throws Exception {
+        // Rejects the second call, which is dispatched when the reply to the
+        // first frees the connection's only slot.
+        final AtomicInteger executions = new AtomicInteger();
+        final ExecutorService workers = new ThreadPoolExecutor(1, 1, 0,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            public final void execute(Runnable task) {
+                if (2 == executions.incrementAndGet())
+                    throw new RejectedExecutionException();
+                super.execute(task);
+            }
+        };
+        final RpcServer rpc = new RpcServer(workers, 1,
+                RpcServer.DEFAULT_MAX_RECORD);
+        rpc.register(PROG, VERS, DOUBLE, XdrInt.CODEC, XdrInt.CODEC,
+                doubler(50, new AtomicInteger(), new AtomicInteger()));
+        final SocketAddress addr = rpc.listen(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), 0));
+        final RpcClient client = new RpcClient(SocketChannel.open(addr), PROG,
+                VERS);
+        try {
+            final CompletableFuture<Integer> a = client.call(DOUBLE,
+                    XdrInt.CODEC, 1, XdrInt.CODEC);
+            final CompletableFuture<Integer> b = client.call(DOUBLE,
+                    XdrInt.CODEC, 2, XdrInt.CODEC);
+            assertEquals(Integer.valueOf(2), a.get());
+            // The selector thread survives, so the rejected call's connection
+            // is closed and other connections are still served.
+            final RpcClient other = new RpcClient(SocketChannel.open(addr),
+                    PROG, VERS);
+            try {
+                assertEquals(Integer.valueOf(6), other.call(DOUBLE,
+                        XdrInt.CODEC, 3, XdrInt.CODEC).get(10,
+                        TimeUnit.SECONDS));
+            } finally {
+                other.close();
+            }
+            assertFailed(b);
+        } finally {
+            client.close();
+            rpc.close();
+            workers.shutdown();
+        }
+    }
+
+    // Reads nothing until closed. Writes are accepted until the limit is
+    // reached, and the one that reaches it fails part-way through.
+    private static final class BrokenChannel implements ByteChannel {
+        private final Pipe pipe = Pipe.open();
+        private int writes;
+        private final int limit;
+
+        BrokenChannel(int limit) throws IOException {
+            this.limit = limit;
+        }
+
+        public final int read(ByteBuffer dst) throws IOException {
+            return pipe.source().read(dst);
+        }
+
+        public final int write(ByteBuffer src) throws IOException {
+            if (limit <= writes++) {
+                src.position(src.position() + 1);
+                throw new IOException();
+            }
+            final int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        public final boolean isOpen() {
+            return pipe.source().isOpen();
+        }
+
+        public final void close() throws IOException {
+            pipe.source().close();
+            pipe.sink().close();
+        }
+    }
+
+    private static void assertFailed(CompletableFuture<?> future)
+            throws InterruptedException {
+        try {
+            future.get();
+            fail();
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    public final void testWriteFailure() throws Exception {
+        // Each record is written as a header and a payload.
+        final BrokenChannel channel = new BrokenChannel(3);
+        final RpcClient client = new RpcClient(channel, PROG, VERS);
+        final CompletableFuture<Integer> a = client.call(DOUBLE, XdrInt.CODEC,
+                1, XdrInt.CODEC);
+        assertEquals(1, client.getPendingCount());
+        final CompletableFuture<Integer> b = client.call(DOUBLE, XdrInt.CODEC,
+                2, XdrInt.CODEC);
+        assertFailed(a);
+        assertFailed(b);
+        assertFalse(channel.isOpen());
+        assertEquals(0, client.getPendingCount());
+        assertFailed(client.call(DOUBLE, XdrInt.CODEC, 3, XdrInt.CODEC));
+        client.close();
+    }
+}